@@ -20,23 +20,23 @@ import android.app.Activity;
 import android.os.Handler;
 import android.os.Looper;
 
-import com.soomla.BusProvider;
 import com.soomla.SoomlaUtils;
 import com.soomla.profile.auth.AuthCallbacks;
 import com.soomla.profile.auth.IAuthProvider;
+import com.soomla.profile.data.ContactsStorage;
 import com.soomla.profile.data.UserProfileStorage;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.domain.UserProfile;
 import com.soomla.profile.events.auth.LoginCancelledEvent;
 import com.soomla.profile.events.auth.LoginFailedEvent;
 import com.soomla.profile.events.auth.LoginFinishedEvent;
-import com.soomla.profile.events.auth.LoginStartedEvent;
 import com.soomla.profile.events.auth.LogoutFailedEvent;
 import com.soomla.profile.events.auth.LogoutFinishedEvent;
 import com.soomla.profile.events.auth.LogoutStartedEvent;
 import com.soomla.profile.exceptions.ProviderNotFoundException;
 import com.soomla.rewards.Reward;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -56,7 +56,7 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
         if(usingExternalProvider) {
             SoomlaUtils.LogDebug(TAG, "usingExternalProvider");
         }
-        else if (!loadProviders(providerParams)) {
+        else if (!loadProviders(providerParams, Collections.<IProvider.Provider, String>emptyMap())) {
             String msg = "You don't have a IAuthProvider service attached. " +
                     "Decide which IAuthProvider you want, add it to AndroidManifest.xml " +
                     "and add its jar to the path.";
@@ -74,6 +74,10 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
         }
     }
 
+    protected void runOnMainThread(Runnable toRun, long delayMillis) {
+        mainThread.postDelayed(toRun, delayMillis);
+    }
+
     /**
      * Logs into the given provider and grants the user a reward.
      *
@@ -84,12 +88,29 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
      * @throws ProviderNotFoundException
      */
     public void login(final Activity activity, final IProvider.Provider provider, final String payload, final Reward reward) throws ProviderNotFoundException {
+        loginAsync(activity, provider, payload, reward);
+    }
+
+    /**
+     * Logs into the given provider, like <code>login</code>, and returns the
+     * future of the user's profile.
+     *
+     * @param activity The parent activity
+     * @param provider The provider to login with
+     * @param payload  a String to receive when the function returns.
+     * @param reward The reward to grant the user for logging in
+     * @return the future of the user's profile
+     * @throws ProviderNotFoundException
+     */
+    public ProfileFuture<UserProfile> loginAsync(final Activity activity, final IProvider.Provider provider,
+                                                 final String payload, final Reward reward) throws ProviderNotFoundException {
         final IAuthProvider authProvider = getProvider(provider);
+        final ProfileFuture<UserProfile> future = new ProfileFuture<UserProfile>();
 
         runOnMainThread(new Runnable() {
             @Override
             public void run() {
-                BusProvider.getInstance().post(new LoginStartedEvent(provider, payload));
+                ProfileEventDispatcher.post(ProfileEventDispatcher.loginStarted(provider, payload));
                 authProvider.login(activity, new AuthCallbacks.LoginListener() {
                     @Override
                     public void success(final IProvider.Provider provider) {
@@ -97,33 +118,38 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
                             @Override
                             public void success(UserProfile userProfile) {
                                 UserProfileStorage.setUserProfile(userProfile);
-                                BusProvider.getInstance().post(new LoginFinishedEvent(userProfile, payload));
+                                ProfileEventDispatcher.post(new LoginFinishedEvent(userProfile, payload));
 
                                 if (reward != null) {
                                     reward.give();
                                 }
+                                future.complete(userProfile);
                             }
 
                             @Override
                             public void fail(String message) {
-                                BusProvider.getInstance().post(new LoginFailedEvent(provider, message, payload));
+                                ProfileEventDispatcher.post(new LoginFailedEvent(provider, message, payload));
+                                future.fail(message);
                             }
                         });
                     }
 
                     @Override
                     public void fail(String message) {
-                        BusProvider.getInstance().post(new LoginFailedEvent(provider, message, payload));
+                        ProfileEventDispatcher.post(new LoginFailedEvent(provider, message, payload));
+                        future.fail(message);
                     }
 
                     @Override
                     public void cancel() {
-                        BusProvider.getInstance().post(new LoginCancelledEvent(provider, payload));
+                        ProfileEventDispatcher.post(new LoginCancelledEvent(provider, payload));
+                        future.cancel();
                     }
                 });
             }
         });
 
+        return future;
     }
 
 
@@ -137,21 +163,22 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
         final IAuthProvider authProvider = getProvider(provider);
         final UserProfile userProfile = getStoredUserProfile(provider);
 
-        BusProvider.getInstance().post(new LogoutStartedEvent(provider));
+        ProfileEventDispatcher.post(new LogoutStartedEvent(provider));
         authProvider.logout(new AuthCallbacks.LogoutListener() {
             @Override
             public void success() {
                 if (userProfile != null) {
                     UserProfileStorage.removeUserProfile(userProfile);
                 }
+                ContactsStorage.removeContacts(provider);
                 // if caller needs stuff from the user, they should get it before logout
                 // pass only the provider here
-                BusProvider.getInstance().post(new LogoutFinishedEvent(provider));
+                ProfileEventDispatcher.post(new LogoutFinishedEvent(provider));
             }
 
             @Override
             public void fail(String message) {
-                BusProvider.getInstance().post(new LogoutFailedEvent(provider, message));
+                ProfileEventDispatcher.post(new LogoutFailedEvent(provider, message));
             }
         });
     }
@@ -163,10 +190,6 @@ public class AuthController<T extends IAuthProvider> extends ProviderLoader<T> {
      * @return The user profile for the given provider
      */
     public UserProfile getStoredUserProfile(IProvider.Provider provider) {
-        UserProfile userProfile = UserProfileStorage.getUserProfile(provider);
-        if (userProfile == null) {
-            return null;
-        }
         return UserProfileStorage.getUserProfile(provider);
     }
 
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.soomla.BusProvider;
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.events.UserProfileUpdatedEvent;
+import com.soomla.profile.events.auth.LoginStartedEvent;
+import com.soomla.profile.events.social.GetContactsStartedEvent;
+import com.soomla.profile.events.social.GetFeedStartedEvent;
+import com.soomla.profile.events.social.SocialActionStartedEvent;
+import com.soomla.profile.social.ISocialProvider;
+
+/**
+ * Posts the profile module's events to the event bus.
+ * <p/>
+ * By default every event is posted to the bus as is. In optimized mode:
+ * <ul>
+ *     <li>started events are reused for calls with the same provider,
+ *     action and payload instead of being allocated on every call (events
+ *     are immutable, so subscribers can't tell the difference)</li>
+ *     <li>repeated <code>UserProfileUpdatedEvent</code>s of the same provider
+ *     are coalesced, only the latest one posted within a main thread loop
+ *     iteration (roughly a frame) is delivered</li>
+ *     <li><code>ProfileForeground</code> receives events through a direct
+ *     call instead of its reflective bus subscriptions</li>
+ * </ul>
+ */
+public class ProfileEventDispatcher {
+
+    /**
+     * Sets whether events are dispatched in optimized mode
+     *
+     * @param optimized true to enable optimized mode, false (the default)
+     *                  to post every event to the bus as is
+     */
+    public static void setOptimized(boolean optimized) {
+        if (Optimized == optimized) {
+            return;
+        }
+
+        Optimized = optimized;
+        ProfileForeground.get().setDirectDispatch(optimized);
+        if (!optimized) {
+            flushProfileUpdates();
+        }
+    }
+
+    /**
+     * @return true if events are dispatched in optimized mode
+     */
+    public static boolean isOptimized() {
+        return Optimized;
+    }
+
+    /**
+     * Posts the given event
+     *
+     * @param event the event to post
+     */
+    public static void post(Object event) {
+        if (!Optimized) {
+            BusProvider.getInstance().post(event);
+            return;
+        }
+
+        if (event instanceof UserProfileUpdatedEvent) {
+            coalesceProfileUpdate((UserProfileUpdatedEvent) event);
+            return;
+        }
+
+        notifyForeground(event);
+        BusProvider.getInstance().post(event);
+    }
+
+    static SocialActionStartedEvent socialActionStarted(IProvider.Provider provider,
+                                                        ISocialProvider.SocialActionType socialActionType,
+                                                        String payload) {
+        if (!Optimized) {
+            return new SocialActionStartedEvent(provider, socialActionType, payload);
+        }
+
+        SocialActionStartedEvent event = SocialActionStartedEvents[provider.ordinal()][socialActionType.ordinal()];
+        if (event == null || !equal(event.Payload, payload)) {
+            event = new SocialActionStartedEvent(provider, socialActionType, payload);
+            SocialActionStartedEvents[provider.ordinal()][socialActionType.ordinal()] = event;
+        }
+        return event;
+    }
+
+    static LoginStartedEvent loginStarted(IProvider.Provider provider, String payload) {
+        if (!Optimized) {
+            return new LoginStartedEvent(provider, payload);
+        }
+
+        LoginStartedEvent event = LoginStartedEvents[provider.ordinal()];
+        if (event == null || !equal(event.Payload, payload)) {
+            event = new LoginStartedEvent(provider, payload);
+            LoginStartedEvents[provider.ordinal()] = event;
+        }
+        return event;
+    }
+
+    static GetContactsStartedEvent getContactsStarted(IProvider.Provider provider, String payload) {
+        if (!Optimized) {
+            return new GetContactsStartedEvent(provider, ISocialProvider.SocialActionType.GET_CONTACTS, payload);
+        }
+
+        GetContactsStartedEvent event = GetContactsStartedEvents[provider.ordinal()];
+        if (event == null || !equal(event.Payload, payload)) {
+            event = new GetContactsStartedEvent(provider, ISocialProvider.SocialActionType.GET_CONTACTS, payload);
+            GetContactsStartedEvents[provider.ordinal()] = event;
+        }
+        return event;
+    }
+
+    static GetFeedStartedEvent getFeedStarted(IProvider.Provider provider, String payload) {
+        if (!Optimized) {
+            return new GetFeedStartedEvent(provider, ISocialProvider.SocialActionType.GET_FEED, payload);
+        }
+
+        GetFeedStartedEvent event = GetFeedStartedEvents[provider.ordinal()];
+        if (event == null || !equal(event.Payload, payload)) {
+            event = new GetFeedStartedEvent(provider, ISocialProvider.SocialActionType.GET_FEED, payload);
+            GetFeedStartedEvents[provider.ordinal()] = event;
+        }
+        return event;
+    }
+
+
+    /** Private Members **/
+
+    private static void notifyForeground(final Object event) {
+        // the bus subscriptions this replaces were always called on the main
+        // thread, keep it that way for events posted from background threads
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            ProfileForeground.get().onProfileEvent(event);
+            return;
+        }
+
+        MainThread.post(new Runnable() {
+            @Override
+            public void run() {
+                ProfileForeground.get().onProfileEvent(event);
+            }
+        });
+    }
+
+    private static void coalesceProfileUpdate(UserProfileUpdatedEvent event) {
+        boolean scheduleFlush;
+        synchronized (PendingProfileUpdates) {
+            PendingProfileUpdates[event.UserProfile.getProvider().ordinal()] = event;
+            scheduleFlush = !FlushScheduled;
+            FlushScheduled = true;
+        }
+
+        if (scheduleFlush) {
+            MainThread.post(FLUSH_PROFILE_UPDATES);
+        }
+    }
+
+    private static void flushProfileUpdates() {
+        UserProfileUpdatedEvent[] events = new UserProfileUpdatedEvent[PendingProfileUpdates.length];
+        synchronized (PendingProfileUpdates) {
+            for (int i = 0; i < PendingProfileUpdates.length; i++) {
+                events[i] = PendingProfileUpdates[i];
+                PendingProfileUpdates[i] = null;
+            }
+            FlushScheduled = false;
+        }
+
+        for (UserProfileUpdatedEvent event : events) {
+            if (event != null) {
+                BusProvider.getInstance().post(event);
+            }
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static final Runnable FLUSH_PROFILE_UPDATES = new Runnable() {
+        @Override
+        public void run() {
+            flushProfileUpdates();
+        }
+    };
+
+    private static final int PROVIDER_COUNT = IProvider.Provider.values().length;
+    private static final int SOCIAL_ACTION_TYPE_COUNT = ISocialProvider.SocialActionType.values().length;
+
+    // the caches are filled racily on purpose, the events are immutable so
+    // the worst case is an extra allocation
+    private static final SocialActionStartedEvent[][] SocialActionStartedEvents =
+            new SocialActionStartedEvent[PROVIDER_COUNT][SOCIAL_ACTION_TYPE_COUNT];
+    private static final LoginStartedEvent[] LoginStartedEvents = new LoginStartedEvent[PROVIDER_COUNT];
+    private static final GetContactsStartedEvent[] GetContactsStartedEvents = new GetContactsStartedEvent[PROVIDER_COUNT];
+    private static final GetFeedStartedEvent[] GetFeedStartedEvents = new GetFeedStartedEvent[PROVIDER_COUNT];
+
+    private static final UserProfileUpdatedEvent[] PendingProfileUpdates = new UserProfileUpdatedEvent[PROVIDER_COUNT];
+    private static boolean FlushScheduled;
+
+    private static final Handler MainThread = new Handler(Looper.getMainLooper());
+    private static volatile boolean Optimized;
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.soomla.SoomlaUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor which runs all of the profile module's background work
+ * (token fetching, image encoding etc.).
+ * <p/>
+ * Using a dedicated executor keeps profile work from queueing behind (or
+ * holding up) the game's own <code>AsyncTask</code>s. The executor runs a
+ * fixed number of low priority threads over a bounded queue, and keeps track
+ * of how long tasks wait in the queue and how long they run.
+ * <p/>
+ * Call <code>configure</code> before initializing <code>SoomlaProfile</code>
+ * to change the defaults.
+ */
+public class ProfileExecutor {
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+    public static final int DEFAULT_THREAD_PRIORITY = Process.THREAD_PRIORITY_BACKGROUND;
+    public static final int DEFAULT_QUEUE_BOUND = 64;
+
+    /**
+     * Configures the executor. Tasks already submitted keep running on the
+     * previous executor, new tasks go to the new one.
+     *
+     * @param poolSize the number of background threads
+     * @param threadPriority the priority of the background threads, as given to
+     *                       <code>android.os.Process.setThreadPriority</code>
+     * @param queueBound the maximum number of tasks waiting to run, tasks
+     *                   submitted when the queue is full are rejected
+     */
+    public static synchronized void configure(int poolSize, int threadPriority, int queueBound) {
+        if (poolSize <= 0 || queueBound <= 0) {
+            SoomlaUtils.LogError(TAG, "Pool size and queue bound must be positive, ignoring configuration");
+            return;
+        }
+
+        ThreadPoolExecutor previous = sExecutor;
+        sExecutor = null;
+        sPoolSize = poolSize;
+        sThreadPriority = threadPriority;
+        sQueueBound = queueBound;
+
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Fetches the executor, to be used with
+     * <code>AsyncTask.executeOnExecutor</code>
+     *
+     * @return the profile module's executor
+     */
+    public static Executor get() {
+        return TIMED_EXECUTOR;
+    }
+
+    /**
+     * Runs the given task in the background
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public static void execute(Runnable task) {
+        TIMED_EXECUTOR.execute(task);
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public static int getQueueDepth() {
+        ThreadPoolExecutor executor = sExecutor;
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * @return the number of tasks which are currently running
+     */
+    public static int getActiveCount() {
+        ThreadPoolExecutor executor = sExecutor;
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    /**
+     * @return the number of tasks which finished running
+     */
+    public static long getCompletedTaskCount() {
+        return sCompletedTasks.get();
+    }
+
+    /**
+     * @return the number of tasks which were rejected since the queue was full
+     */
+    public static long getRejectedTaskCount() {
+        return sRejectedTasks.get();
+    }
+
+    /**
+     * @return the average time tasks waited in the queue, in milliseconds
+     */
+    public static long getAverageQueueMillis() {
+        long completed = sCompletedTasks.get();
+        return completed > 0 ? sTotalQueueMillis.get() / completed : 0;
+    }
+
+    /**
+     * @return the longest time a task waited in the queue, in milliseconds
+     */
+    public static long getMaxQueueMillis() {
+        return sMaxQueueMillis.get();
+    }
+
+    /**
+     * @return the average time tasks took to run, in milliseconds
+     */
+    public static long getAverageRunMillis() {
+        long completed = sCompletedTasks.get();
+        return completed > 0 ? sTotalRunMillis.get() / completed : 0;
+    }
+
+    /**
+     * Resets all the metrics of the executor
+     */
+    public static void resetMetrics() {
+        sCompletedTasks.set(0);
+        sRejectedTasks.set(0);
+        sTotalQueueMillis.set(0);
+        sMaxQueueMillis.set(0);
+        sTotalRunMillis.set(0);
+    }
+
+
+    /** Private Members **/
+
+    private static synchronized ThreadPoolExecutor executor() {
+        if (sExecutor == null) {
+            final int threadPriority = sThreadPriority;
+            ThreadFactory threadFactory = new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(threadPriority);
+                            runnable.run();
+                        }
+                    }, "SoomlaProfile #" + sThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+
+            RejectedExecutionHandler rejectedHandler = new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    sRejectedTasks.incrementAndGet();
+                    SoomlaUtils.LogWarning(TAG, "Queue is full (" + executor.getQueue().size() + "), rejecting task");
+                    throw new RejectedExecutionException("Profile executor queue is full");
+                }
+            };
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(sPoolSize, sPoolSize, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(sQueueBound), threadFactory, rejectedHandler);
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    private static final Executor TIMED_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable task) {
+            final long queuedAt = SystemClock.uptimeMillis();
+            executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startedAt = SystemClock.uptimeMillis();
+                    try {
+                        task.run();
+                    } finally {
+                        long queueMillis = startedAt - queuedAt;
+                        sTotalQueueMillis.addAndGet(queueMillis);
+                        sTotalRunMillis.addAndGet(SystemClock.uptimeMillis() - startedAt);
+                        long max;
+                        while (queueMillis > (max = sMaxQueueMillis.get())) {
+                            if (sMaxQueueMillis.compareAndSet(max, queueMillis)) {
+                                break;
+                            }
+                        }
+                        sCompletedTasks.incrementAndGet();
+                    }
+                }
+            });
+        }
+    };
+
+    private static final String TAG = "SOOMLA ProfileExecutor";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // written under the class lock, read without it by the metrics getters
+    private static volatile ThreadPoolExecutor sExecutor;
+    private static int sPoolSize = DEFAULT_POOL_SIZE;
+    private static int sThreadPriority = DEFAULT_THREAD_PRIORITY;
+    private static int sQueueBound = DEFAULT_QUEUE_BOUND;
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+    private static final AtomicLong sCompletedTasks = new AtomicLong();
+    private static final AtomicLong sRejectedTasks = new AtomicLong();
+    private static final AtomicLong sTotalQueueMillis = new AtomicLong();
+    private static final AtomicLong sMaxQueueMillis = new AtomicLong();
+    private static final AtomicLong sTotalRunMillis = new AtomicLong();
+}
@@ -20,6 +20,7 @@ public class ProfileForeground {
     private ProfileForeground() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
             BusProvider.getInstance().register(this);
+            mRegistered = true;
         }
     }
 
@@ -32,6 +33,52 @@ public class ProfileForeground {
 
     private static ProfileForeground sInstance;
 
+    private boolean mRegistered;
+    private volatile boolean mDirectDispatch;
+
+    /**
+     * Switches between receiving events through the bus and receiving them
+     * directly from <code>ProfileEventDispatcher</code>
+     */
+    synchronized void setDirectDispatch(boolean directDispatch) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+
+        mDirectDispatch = directDispatch;
+        if (directDispatch && mRegistered) {
+            BusProvider.getInstance().unregister(this);
+            mRegistered = false;
+        } else if (!directDispatch && !mRegistered) {
+            BusProvider.getInstance().register(this);
+            mRegistered = true;
+        }
+    }
+
+    void onProfileEvent(Object event) {
+        if (!mDirectDispatch) {
+            return;
+        }
+
+        if (event instanceof LoginStartedEvent) {
+            onLoginStartedEvent((LoginStartedEvent) event);
+        } else if (event instanceof LoginFinishedEvent) {
+            onLoginFinishedEvent((LoginFinishedEvent) event);
+        } else if (event instanceof LoginFailedEvent) {
+            onLoginFailedEvent((LoginFailedEvent) event);
+        } else if (event instanceof LoginCancelledEvent) {
+            onLoginCancelledEvent((LoginCancelledEvent) event);
+        } else if (event instanceof SocialActionStartedEvent) {
+            onSocialActionStartedEvent((SocialActionStartedEvent) event);
+        } else if (event instanceof SocialActionFinishedEvent) {
+            onSocialActionCancelledEvent((SocialActionFinishedEvent) event);
+        } else if (event instanceof SocialActionFailedEvent) {
+            onSocialActionFailedEvent((SocialActionFailedEvent) event);
+        } else if (event instanceof SocialActionCancelledEvent) {
+            onSocialActionCancelledEvent((SocialActionCancelledEvent) event);
+        }
+    }
+
 
     @Subscribe
     public void onLoginFinishedEvent(LoginFinishedEvent loginFinishedEvent) {
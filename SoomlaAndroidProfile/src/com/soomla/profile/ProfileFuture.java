@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The pending result of a profile operation.
+ * <p/>
+ * Operations which return a <code>ProfileFuture</code> still post their
+ * usual events, the future is an alternative for callers which want the
+ * result of their own call without subscribing to the event bus and matching
+ * payloads. Callbacks are invoked on the thread which completes the operation
+ * (usually the main thread), or right away if the operation already completed.
+ *
+ * @param <T> the type of the operation's result
+ */
+public class ProfileFuture<T> {
+
+    /**
+     * Receives the outcome of a <code>ProfileFuture</code>
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the operation succeeded
+         *
+         * @param result the result of the operation
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called when the operation failed or was cancelled
+         *
+         * @param message a description of the reason for failure
+         */
+        void onFailure(String message);
+    }
+
+    /**
+     * Starts a follow-up operation from the result of a previous one
+     */
+    public interface Continuation<T, R> {
+        /**
+         * @param result the result of the previous operation
+         * @return the future of the follow-up operation
+         */
+        ProfileFuture<R> then(T result);
+    }
+
+    /**
+     * @param result the result
+     * @return a future which already succeeded with the given result
+     */
+    public static <T> ProfileFuture<T> succeeded(T result) {
+        ProfileFuture<T> future = new ProfileFuture<T>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * @param message a description of the reason for failure
+     * @return a future which already failed with the given message
+     */
+    public static <T> ProfileFuture<T> failed(String message) {
+        ProfileFuture<T> future = new ProfileFuture<T>();
+        future.fail(message);
+        return future;
+    }
+
+    /**
+     * Combines the given futures into a future which succeeds with the
+     * results of all of them (in the same order) once all of them succeed, or
+     * fails as soon as one of them fails
+     *
+     * @param futures the futures to combine
+     * @return the combined future
+     */
+    public static ProfileFuture<List<Object>> all(ProfileFuture<?>... futures) {
+        return all(Arrays.asList(futures));
+    }
+
+    /**
+     * {@link #all(ProfileFuture[])}
+     */
+    public static ProfileFuture<List<Object>> all(List<? extends ProfileFuture<?>> futures) {
+        final ProfileFuture<List<Object>> combined = new ProfileFuture<List<Object>>();
+        final int count = futures.size();
+        if (count == 0) {
+            combined.complete(Collections.emptyList());
+            return combined;
+        }
+
+        final Object[] results = new Object[count];
+        final int[] pending = {count};
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            @SuppressWarnings("unchecked")
+            ProfileFuture<Object> future = (ProfileFuture<Object>) futures.get(i);
+            future.onComplete(new Callback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    boolean done;
+                    synchronized (results) {
+                        results[index] = result;
+                        done = --pending[0] == 0;
+                    }
+                    if (done) {
+                        combined.complete(Collections.unmodifiableList(new ArrayList<Object>(Arrays.asList(results))));
+                    }
+                }
+
+                @Override
+                public void onFailure(String message) {
+                    combined.fail(message);
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Completes the future successfully. Only the first completion counts.
+     *
+     * @param result the result of the operation
+     * @return true if this call completed the future
+     */
+    public boolean complete(T result) {
+        return finish(STATE_SUCCEEDED, result, null);
+    }
+
+    /**
+     * Fails the future. Only the first completion counts.
+     *
+     * @param message a description of the reason for failure
+     * @return true if this call completed the future
+     */
+    public boolean fail(String message) {
+        return finish(STATE_FAILED, null, message);
+    }
+
+    /**
+     * Cancels the future, its callbacks get a failure. Only the first
+     * completion counts. Note that this doesn't stop the operation itself.
+     *
+     * @return true if this call completed the future
+     */
+    public boolean cancel() {
+        return finish(STATE_CANCELLED, null, "Cancelled");
+    }
+
+    /**
+     * Registers a callback to receive the outcome of the operation
+     *
+     * @param callback the callback
+     * @return this future
+     */
+    public ProfileFuture<T> onComplete(Callback<T> callback) {
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        deliver(callback);
+        return this;
+    }
+
+    /**
+     * Chains a follow-up operation which starts when this one succeeds.
+     * If this operation fails, so does the returned future.
+     *
+     * @param continuation starts the follow-up operation
+     * @return the future of the follow-up operation
+     */
+    public <R> ProfileFuture<R> then(final Continuation<? super T, R> continuation) {
+        final ProfileFuture<R> next = new ProfileFuture<R>();
+        onComplete(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                ProfileFuture<R> followUp;
+                try {
+                    followUp = continuation.then(result);
+                } catch (Exception e) {
+                    next.fail(e.getMessage());
+                    return;
+                }
+                if (followUp == null) {
+                    next.complete(null);
+                    return;
+                }
+                followUp.onComplete(new Callback<R>() {
+                    @Override
+                    public void onSuccess(R result) {
+                        next.complete(result);
+                    }
+
+                    @Override
+                    public void onFailure(String message) {
+                        next.fail(message);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(String message) {
+                next.fail(message);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * @return true if the operation completed, successfully or not
+     */
+    public synchronized boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    /**
+     * @return true if the operation succeeded
+     */
+    public synchronized boolean isSuccessful() {
+        return mState == STATE_SUCCEEDED;
+    }
+
+    /**
+     * @return true if the future was cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    /**
+     * @return the result of the operation, or null if it didn't succeed (yet)
+     */
+    public synchronized T getResult() {
+        return mResult;
+    }
+
+    /**
+     * @return the reason for failure, or null if the operation didn't fail
+     */
+    public synchronized String getError() {
+        return mError;
+    }
+
+
+    /** Private Members **/
+
+    private boolean finish(int state, T result, String error) {
+        List<Callback<T>> callbacks;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mError = error;
+            callbacks = mCallbacks;
+            mCallbacks = null;
+        }
+
+        for (Callback<T> callback : callbacks) {
+            deliver(callback);
+        }
+        return true;
+    }
+
+    private void deliver(Callback<T> callback) {
+        if (mState == STATE_SUCCEEDED) {
+            callback.onSuccess(mResult);
+        } else {
+            callback.onFailure(mError);
+        }
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private int mState = STATE_PENDING;
+    private T mResult;
+    private String mError;
+    private List<Callback<T>> mCallbacks = new ArrayList<Callback<T>>();
+}
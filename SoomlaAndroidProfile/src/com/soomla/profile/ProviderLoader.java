@@ -16,59 +16,154 @@
 
 package com.soomla.profile;
 
+import android.os.SystemClock;
+
 import com.soomla.SoomlaUtils;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.exceptions.ProviderNotFoundException;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A parent class that provides functionality for dynamic loading of providers.
  */
 public abstract class ProviderLoader<T extends IProvider> {
 
-    protected boolean loadProviders(Map<IProvider.Provider, ? extends Map<String, String>> providerParams, String... providerNames) {
-        List<Class<? extends T>> providerClass = tryFetchProviders(providerNames);
-        if (providerClass == null || providerClass.size() == 0) {
-            return false;
-        }
+    /**
+     * Sets whether providers are initialized lazily. When set, loading only
+     * checks which provider classes are available, and each provider's class
+     * initialization, construction and <code>applyParams</code> are deferred
+     * until the provider is first used. This keeps provider startup work off
+     * <code>SoomlaProfile.initialize</code>. A provider is initialized on
+     * the thread which first uses it, and only calls to that provider wait
+     * for it.
+     * Must be set before providers are loaded.
+     *
+     * @param lazyLoading true to initialize providers on first use, false
+     *                    (the default) to initialize them when loaded
+     */
+    static void setLazyLoading(boolean lazyLoading) {
+        LazyLoading = lazyLoading;
+    }
+
+    protected boolean loadProviders(Map<IProvider.Provider, ? extends Map<String, String>> providerParams,
+                                    Map<IProvider.Provider, String> providerClassNames) {
+        boolean lazyLoading = LazyLoading;
+        EnumMap<IProvider.Provider, T> providers = new EnumMap<IProvider.Provider, T>(IProvider.Provider.class);
+        EnumMap<IProvider.Provider, PendingProvider<T>> pendingProviders =
+                new EnumMap<IProvider.Provider, PendingProvider<T>>(IProvider.Provider.class);
+
+        for (Map.Entry<IProvider.Provider, String> entry : providerClassNames.entrySet()) {
+            long startTime = SystemClock.uptimeMillis();
+            Class<? extends T> aClass = tryFetchProvider(entry.getValue(), !lazyLoading);
+            if (aClass == null) {
+                continue;
+            }
 
-        mProviders = new HashMap<IProvider.Provider, T>();
-        for (Class<? extends T> aClass : providerClass) {
-            try {
-                T provider = aClass.newInstance();
-                IProvider.Provider targetProvider = provider.getProvider();
-                if (providerParams != null) {
-                    provider.applyParams(providerParams.get(targetProvider));
+            Map<String, String> params = providerParams != null ? providerParams.get(entry.getKey()) : null;
+            if (lazyLoading) {
+                SoomlaUtils.LogDebug(TAG, "Deferring initialization of " + entry.getValue());
+                pendingProviders.put(entry.getKey(), new PendingProvider<T>(aClass, params));
+            } else {
+                T provider = instantiate(aClass, params, startTime);
+                if (provider != null) {
+                    providers.put(provider.getProvider(), provider);
                 }
-                mProviders.put(targetProvider, provider);
-            } catch (Exception e) {
-                String err = "Couldn't instantiate provider class. Something's totally wrong here.";
-                SoomlaUtils.LogError(TAG, err);
             }
         }
 
+        if (providers.isEmpty() && pendingProviders.isEmpty()) {
+            return false;
+        }
+
+        synchronized (mWriteLock) {
+            mProviders = Collections.unmodifiableMap(providers);
+            mPendingProviders = Collections.unmodifiableMap(pendingProviders);
+        }
         return true;
     }
 
-    private List<Class<? extends T>> tryFetchProviders(String... providerNames) {
-        List<Class<? extends T>> providers = new ArrayList<Class<? extends T>>();
-        for(String providerItem : providerNames) {
-            Class<? extends T> aClass = null;
-            try {
-                SoomlaUtils.LogDebug(TAG, "Trying to load class " + providerItem);
-                aClass = (Class<? extends T>) Class.forName(providerItem);
+    /**
+     * Fetches how long the initialization of each provider took, that is
+     * loading its class, constructing it and applying its params.
+     * Providers which are loaded lazily and weren't used yet are not listed.
+     *
+     * @return the initialization time of each provider in milliseconds
+     */
+    public Map<IProvider.Provider, Long> getProviderInitMillis() {
+        synchronized (mInitMillis) {
+            return new EnumMap<IProvider.Provider, Long>(mInitMillis);
+        }
+    }
 
-                providers.add(aClass);
-            } catch (ClassNotFoundException e) {
-                SoomlaUtils.LogDebug(TAG, "Failed loading class " + providerItem + " Exception: " + e.getLocalizedMessage());
-            }
+    /**
+     * Registers the given provider instance, replacing any provider already
+     * registered for the same <code>IProvider.Provider</code>.
+     * Use this to plug in custom providers (or test doubles) without going
+     * through reflection.
+     *
+     * @param provider the provider instance to register
+     */
+    public void registerProvider(T provider) {
+        synchronized (mWriteLock) {
+            EnumMap<IProvider.Provider, T> providers = copyProviders();
+            providers.put(provider.getProvider(), provider);
+            mProviders = Collections.unmodifiableMap(providers);
+            removePending(provider.getProvider());
         }
+        onProvidersChanged();
+    }
 
-        return providers;
+    /**
+     * Unregisters the provider instance registered for the given provider
+     *
+     * @param provider the provider to unregister
+     * @return the provider instance which was unregistered, or null if there
+     * was none
+     */
+    public T unregisterProvider(IProvider.Provider provider) {
+        T removed;
+        synchronized (mWriteLock) {
+            EnumMap<IProvider.Provider, T> providers = copyProviders();
+            removed = providers.remove(provider);
+            mProviders = Collections.unmodifiableMap(providers);
+            removePending(provider);
+        }
+        onProvidersChanged();
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<? extends T> tryFetchProvider(String providerName, boolean initialize) {
+        try {
+            SoomlaUtils.LogDebug(TAG, "Trying to load class " + providerName);
+            return (Class<? extends T>) Class.forName(providerName, initialize, ProviderLoader.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            SoomlaUtils.LogDebug(TAG, "Failed loading class " + providerName + " Exception: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private T instantiate(Class<? extends T> aClass, Map<String, String> providerParams, long startTime) {
+        try {
+            T provider = aClass.newInstance();
+            provider.applyParams(providerParams);
+
+            long initMillis = SystemClock.uptimeMillis() - startTime;
+            synchronized (mInitMillis) {
+                mInitMillis.put(provider.getProvider(), initMillis);
+            }
+            SoomlaUtils.LogDebug(TAG, "Initialized " + aClass.getName() + " in " + initMillis + "ms");
+            return provider;
+        } catch (Exception e) {
+            String err = "Couldn't instantiate provider class. Something's totally wrong here.";
+            SoomlaUtils.LogError(TAG, err);
+            return null;
+        }
     }
 
     protected void handleErrorResult(String message) {
@@ -78,7 +173,10 @@ public abstract class ProviderLoader<T extends IProvider> {
 
 
     protected T getProvider(IProvider.Provider provider) throws ProviderNotFoundException {
-        final T providerObj = mProviders.get(provider);
+        T providerObj = mProviders.get(provider);
+        if (providerObj == null && mPendingProviders.containsKey(provider)) {
+            providerObj = initPendingProvider(provider);
+        }
         if(providerObj == null) {
             throw new ProviderNotFoundException(provider);
         }
@@ -86,9 +184,110 @@ public abstract class ProviderLoader<T extends IProvider> {
         return providerObj;
     }
 
+    /**
+     * @return the providers which are loaded, including ones which are
+     * loaded lazily and weren't initialized yet
+     */
+    protected Set<IProvider.Provider> getLoadedProviders() {
+        Set<IProvider.Provider> loadedProviders = EnumSet.noneOf(IProvider.Provider.class);
+        loadedProviders.addAll(mProviders.keySet());
+        loadedProviders.addAll(mPendingProviders.keySet());
+        return loadedProviders;
+    }
+
+    /**
+     * Sets a callback to be invoked whenever a provider is registered or
+     * unregistered at runtime
+     *
+     * @param onProvidersChanged the callback to invoke
+     */
+    void setOnProvidersChanged(Runnable onProvidersChanged) {
+        mOnProvidersChanged = onProvidersChanged;
+    }
+
     /** Private Members **/
 
-    protected Map<IProvider.Provider, T> mProviders = new HashMap<IProvider.Provider, T>();
+    private EnumMap<IProvider.Provider, T> copyProviders() {
+        EnumMap<IProvider.Provider, T> providers = new EnumMap<IProvider.Provider, T>(IProvider.Provider.class);
+        providers.putAll(mProviders);
+        return providers;
+    }
+
+    private T initPendingProvider(IProvider.Provider provider) {
+        PendingProvider<T> pendingProvider = mPendingProviders.get(provider);
+        if (pendingProvider == null) {
+            return mProviders.get(provider);
+        }
+
+        // only this provider's lock is held while it initializes, so other
+        // providers (and registrations) don't wait for it
+        synchronized (pendingProvider) {
+            if (mPendingProviders.get(provider) != pendingProvider) {
+                // another thread initialized it while we were waiting
+                return mProviders.get(provider);
+            }
+
+            T providerObj = instantiate(pendingProvider.providerClass, pendingProvider.providerParams,
+                    SystemClock.uptimeMillis());
+
+            synchronized (mWriteLock) {
+                if (mPendingProviders.get(provider) != pendingProvider) {
+                    // registered or unregistered while initializing, that wins
+                    return mProviders.get(provider);
+                }
+                removePending(provider);
+                if (providerObj != null) {
+                    EnumMap<IProvider.Provider, T> providers = copyProviders();
+                    providers.put(provider, providerObj);
+                    mProviders = Collections.unmodifiableMap(providers);
+                }
+            }
+            return providerObj;
+        }
+    }
+
+    // must be called while holding mWriteLock
+    private void removePending(IProvider.Provider provider) {
+        if (!mPendingProviders.containsKey(provider)) {
+            return;
+        }
+        EnumMap<IProvider.Provider, PendingProvider<T>> pendingProviders =
+                new EnumMap<IProvider.Provider, PendingProvider<T>>(IProvider.Provider.class);
+        pendingProviders.putAll(mPendingProviders);
+        pendingProviders.remove(provider);
+        mPendingProviders = Collections.unmodifiableMap(pendingProviders);
+    }
+
+    private static class PendingProvider<T> {
+        PendingProvider(Class<? extends T> providerClass, Map<String, String> providerParams) {
+            this.providerClass = providerClass;
+            this.providerParams = providerParams;
+        }
+
+        final Class<? extends T> providerClass;
+        final Map<String, String> providerParams;
+    }
+
+    private void onProvidersChanged() {
+        Runnable onProvidersChanged = mOnProvidersChanged;
+        if (onProvidersChanged != null) {
+            onProvidersChanged.run();
+        }
+    }
+
+    // replaced as a whole on every change and never mutated, so it can be
+    // read from any thread without locking
+    protected volatile Map<IProvider.Provider, T> mProviders =
+            Collections.unmodifiableMap(new EnumMap<IProvider.Provider, T>(IProvider.Provider.class));
+
+    private volatile Map<IProvider.Provider, PendingProvider<T>> mPendingProviders =
+            Collections.unmodifiableMap(new EnumMap<IProvider.Provider, PendingProvider<T>>(IProvider.Provider.class));
+
+    private final Object mWriteLock = new Object();
+    private final EnumMap<IProvider.Provider, Long> mInitMillis =
+            new EnumMap<IProvider.Provider, Long>(IProvider.Provider.class);
+    private volatile Runnable mOnProvidersChanged;
 
     private static String TAG = "SOOMLA ProviderLoader";
+    private static volatile boolean LazyLoading;
 }
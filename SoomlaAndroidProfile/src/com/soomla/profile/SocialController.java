@@ -17,36 +17,52 @@
 package com.soomla.profile;
 
 import android.app.Activity;
-import android.content.ContextWrapper;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
-import android.os.Environment;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 
-import com.soomla.BusProvider;
 import com.soomla.SoomlaApp;
 import com.soomla.SoomlaUtils;
+import com.soomla.profile.data.ContactsStorage;
+import com.soomla.profile.data.OutboxStorage;
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.domain.UserProfile;
+import com.soomla.profile.events.social.ContactsSyncFinishedEvent;
+import com.soomla.profile.events.social.ContactsSyncPageEvent;
 import com.soomla.profile.events.social.GetContactsFailedEvent;
 import com.soomla.profile.events.social.GetContactsFinishedEvent;
-import com.soomla.profile.events.social.GetContactsStartedEvent;
 import com.soomla.profile.events.social.GetFeedFailedEvent;
 import com.soomla.profile.events.social.GetFeedFinishedEvent;
-import com.soomla.profile.events.social.GetFeedStartedEvent;
+import com.soomla.profile.events.social.MultiSocialActionFinishedEvent;
 import com.soomla.profile.events.social.SocialActionFailedEvent;
 import com.soomla.profile.events.social.SocialActionFinishedEvent;
-import com.soomla.profile.events.social.SocialActionStartedEvent;
 import com.soomla.profile.exceptions.ProviderNotFoundException;
+import com.soomla.profile.social.ISocialContactsSyncProvider;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.RateLimiter;
+import com.soomla.profile.social.RetryPolicy;
+import com.soomla.profile.social.RetryingRequest;
+import com.soomla.profile.social.RewardPolicy;
+import com.soomla.profile.social.SocialError;
 import com.soomla.profile.social.SocialCallbacks;
 import com.soomla.rewards.Reward;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that loads all social providers and performs social
@@ -67,9 +83,7 @@ public class SocialController extends AuthController<ISocialProvider> {
      */
     public SocialController(boolean usingExternalProvider, Map<IProvider.Provider, ? extends Map<String, String>> providerParams) {
         super(usingExternalProvider, providerParams);
-        if (!usingExternalProvider && !loadProviders(providerParams, "com.soomla.profile.social.facebook.SoomlaFacebook",
-                "com.soomla.profile.social.google.SoomlaGooglePlus",
-                "com.soomla.profile.social.twitter.SoomlaTwitter")) {
+        if (!usingExternalProvider && !loadProviders(providerParams, PROVIDER_CLASS_NAMES)) {
             String msg = "You don't have a ISocialProvider service attached. " +
                     "Decide which ISocialProvider you want, add it to AndroidManifest.xml " +
                     "and add its jar to the path.";
@@ -87,25 +101,28 @@ public class SocialController extends AuthController<ISocialProvider> {
      * @throws ProviderNotFoundException
      */
     public void updateStatus(final IProvider.Provider provider, String status, final String payload, final Reward reward) throws ProviderNotFoundException {
+        updateStatusAsync(provider, status, payload, reward);
+    }
+
+    /**
+     * Shares the given status to the user's feed, like <code>updateStatus</code>, and returns its future.
+     *
+     * @param provider the provider to use
+     * @param status   the text to share
+     * @param payload  a String to receive when the function returns.
+     * @param reward   the reward to grant for sharing
+     * @return a future which completes when the action does
+     * @throws ProviderNotFoundException
+     */
+    public ProfileFuture<Void> updateStatusAsync(final IProvider.Provider provider, String status, final String payload, final Reward reward) throws ProviderNotFoundException {
         final ISocialProvider socialProvider = getProvider(provider);
+        final ProfileFuture<Void> future = new ProfileFuture<Void>();
 
         final ISocialProvider.SocialActionType updateStatusType = ISocialProvider.SocialActionType.UPDATE_STATUS;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, updateStatusType, payload));
-        socialProvider.updateStatus(status, new SocialCallbacks.SocialActionListener() {
-            @Override
-            public void success() {
-                BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, updateStatusType, payload));
-
-                if (reward != null) {
-                    reward.give();
-                }
-            }
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, updateStatusType, payload));
+        sendAction(socialProvider, provider, updateStatusType, new String[]{status}, payload, reward, future);
 
-            @Override
-            public void fail(String message) {
-                BusProvider.getInstance().post(new SocialActionFailedEvent(provider, updateStatusType, message, payload));
-            }
-        });
+        return future;
     }
 
     /**
@@ -122,11 +139,11 @@ public class SocialController extends AuthController<ISocialProvider> {
         final ISocialProvider socialProvider = getProvider(provider);
 
         final ISocialProvider.SocialActionType updateStatusType = ISocialProvider.SocialActionType.UPDATE_STATUS;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, updateStatusType, payload));
-        socialProvider.updateStatusDialog(link, new SocialCallbacks.SocialActionListener() {
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, updateStatusType, payload));
+        socialProvider.updateStatusDialog(link, new ActionErrorListener() {
             @Override
             public void success() {
-                BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, updateStatusType, payload));
+                ProfileEventDispatcher.post(new SocialActionFinishedEvent(provider, updateStatusType, payload));
 
                 if (reward != null) {
                     reward.give();
@@ -134,8 +151,8 @@ public class SocialController extends AuthController<ISocialProvider> {
             }
 
             @Override
-            public void fail(String message) {
-                BusProvider.getInstance().post(new SocialActionFailedEvent(provider, updateStatusType, message, payload));
+            public void fail(SocialError error) {
+                ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, updateStatusType, error.Message, payload, error));
             }
         });
     }
@@ -164,24 +181,64 @@ public class SocialController extends AuthController<ISocialProvider> {
         final ISocialProvider socialProvider = getProvider(provider);
 
         final ISocialProvider.SocialActionType updateStoryType = ISocialProvider.SocialActionType.UPDATE_STORY;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, updateStoryType, payload));
-        socialProvider.updateStory(message, name, caption, description, link, picture,
-                new SocialCallbacks.SocialActionListener() {
-                    @Override
-                    public void success() {
-                        BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, updateStoryType, payload));
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, updateStoryType, payload));
+        sendAction(socialProvider, provider, updateStoryType,
+                new String[]{message, name, caption, description, link, picture},
+                payload, reward, new ProfileFuture<Void>());
+    }
 
-                        if (reward != null) {
-                            reward.give();
-                        }
-                    }
+    /**
+     * Shares the given status to the user's feed on several providers at once.
+     * The requests run concurrently, each posts its own started and finished
+     * (or failed) events, and a <code>MultiSocialActionFinishedEvent</code> is
+     * posted once all of them are done.
+     *
+     * @param providers    the providers to use
+     * @param status       the text to share
+     * @param payload      a String to receive when the function returns.
+     * @param reward       the reward to grant, at most once, according to
+     *                     <code>rewardPolicy</code>
+     * @param rewardPolicy decides when the reward is granted
+     */
+    public void updateStatus(Set<IProvider.Provider> providers, final String status, String payload,
+                             Reward reward, RewardPolicy rewardPolicy) {
+        final ISocialProvider.SocialActionType updateStatusType = ISocialProvider.SocialActionType.UPDATE_STATUS;
+        new MultiAction(providers, updateStatusType, payload, reward, rewardPolicy) {
+            @Override
+            protected void perform(ISocialProvider socialProvider, SocialCallbacks.SocialActionListener listener) {
+                socialProvider.updateStatus(status, listener);
+            }
+        }.start();
+    }
 
-                    @Override
-                    public void fail(String message) {
-                        BusProvider.getInstance().post(new SocialActionFailedEvent(provider, updateStoryType, message, payload));
-                    }
-                }
-        );
+    /**
+     * Shares a story to the user's feed on several providers at once.
+     * The requests run concurrently, each posts its own started and finished
+     * (or failed) events, and a <code>MultiSocialActionFinishedEvent</code> is
+     * posted once all of them are done.
+     *
+     * @param providers    the providers to use
+     * @param message      the message which will be shared with the story
+     * @param name         the headline for the link in the story
+     * @param caption      the sub-headline for the link in the story
+     * @param description  the description for the link in the story
+     * @param link         the link which will be integrated into the story
+     * @param picture      a link to a picture which will be featured in the story
+     * @param payload      a String to receive when the function returns.
+     * @param reward       the reward to grant, at most once, according to
+     *                     <code>rewardPolicy</code>
+     * @param rewardPolicy decides when the reward is granted
+     */
+    public void updateStory(Set<IProvider.Provider> providers, final String message, final String name,
+                            final String caption, final String description, final String link,
+                            final String picture, String payload, Reward reward, RewardPolicy rewardPolicy) {
+        final ISocialProvider.SocialActionType updateStoryType = ISocialProvider.SocialActionType.UPDATE_STORY;
+        new MultiAction(providers, updateStoryType, payload, reward, rewardPolicy) {
+            @Override
+            protected void perform(ISocialProvider socialProvider, SocialCallbacks.SocialActionListener listener) {
+                socialProvider.updateStory(message, name, caption, description, link, picture, listener);
+            }
+        }.start();
     }
 
     /**
@@ -208,12 +265,12 @@ public class SocialController extends AuthController<ISocialProvider> {
         final ISocialProvider socialProvider = getProvider(provider);
 
         final ISocialProvider.SocialActionType updateStoryType = ISocialProvider.SocialActionType.UPDATE_STORY;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, updateStoryType, payload));
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, updateStoryType, payload));
         socialProvider.updateStoryDialog(name, caption, description, link, picture,
-                new SocialCallbacks.SocialActionListener() {
+                new ActionErrorListener() {
                     @Override
                     public void success() {
-                        BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, updateStoryType, payload));
+                        ProfileEventDispatcher.post(new SocialActionFinishedEvent(provider, updateStoryType, payload));
 
                         if (reward != null) {
                             reward.give();
@@ -221,8 +278,8 @@ public class SocialController extends AuthController<ISocialProvider> {
                     }
 
                     @Override
-                    public void fail(String message) {
-                        BusProvider.getInstance().post(new SocialActionFailedEvent(provider, updateStoryType, message, payload));
+                    public void fail(SocialError error) {
+                        ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, updateStoryType, error.Message, payload, error));
                     }
                 }
         );
@@ -242,26 +299,32 @@ public class SocialController extends AuthController<ISocialProvider> {
     public void uploadImage(final IProvider.Provider provider,
                             String message, String filePath,
                             final String payload, final Reward reward) throws ProviderNotFoundException {
+        uploadImageAsync(provider, message, filePath, payload, reward);
+    }
+
+    /**
+     * Shares a photo to the user's feed, like <code>uploadImage</code>, and returns its future.
+     *
+     * @param provider The provider to use
+     * @param message  A text that will accompany the image
+     * @param filePath The desired image's location on the device
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant for sharing the photo
+     * @return a future which completes when the action does
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public ProfileFuture<Void> uploadImageAsync(final IProvider.Provider provider,
+                                                String message, String filePath,
+                            final String payload, final Reward reward) throws ProviderNotFoundException {
         final ISocialProvider socialProvider = getProvider(provider);
+        final ProfileFuture<Void> future = new ProfileFuture<Void>();
 
         final ISocialProvider.SocialActionType uploadImageType = ISocialProvider.SocialActionType.UPLOAD_IMAGE;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, uploadImageType, payload));
-        socialProvider.uploadImage(message, filePath, new SocialCallbacks.SocialActionListener() {
-                    @Override
-                    public void success() {
-                        BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, uploadImageType, payload));
-
-                        if (reward != null) {
-                            reward.give();
-                        }
-                    }
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, uploadImageType, payload));
+        sendAction(socialProvider, provider, uploadImageType, new String[]{message, filePath}, payload, reward, future);
 
-                    @Override
-                    public void fail(String message) {
-                        BusProvider.getInstance().post(new SocialActionFailedEvent(provider, uploadImageType, message, payload));
-                    }
-                }
-        );
+        return future;
     }
 
     /**
@@ -281,56 +344,63 @@ public class SocialController extends AuthController<ISocialProvider> {
     public void uploadImage(final IProvider.Provider provider,
                             final String message, String fileName, Bitmap bitmap, int jpegQuality,
                             final String payload, final Reward reward) throws ProviderNotFoundException {
+        uploadImageAsync(provider, message, fileName, bitmap, jpegQuality, payload, reward);
+    }
+
+    /**
+     * Uploads an image using a Bitmap, like <code>uploadImage</code>, and returns its future.
+     *
+     * @param provider    The provider to use
+     * @param message     A text that will accompany the image
+     * @param fileName    The desired image's file name
+     * @param bitmap      The image to share
+     * @param jpegQuality Image quality, number from 0 to 100. 0 meaning compress for small size, 100 meaning compress for max quality.
+                          Some formats, like PNG which is lossless, will ignore the quality setting
+     * @param payload     a String to receive when the function returns.
+     * @param reward      The reward to grant for sharing the photo
+     * @return a future which completes when the action does
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public ProfileFuture<Void> uploadImageAsync(final IProvider.Provider provider,
+                                                final String message, String fileName, Bitmap bitmap, int jpegQuality,
+                            final String payload, final Reward reward) throws ProviderNotFoundException {
         final ISocialProvider socialProvider = getProvider(provider);
+        final ProfileFuture<Void> future = new ProfileFuture<Void>();
 
         final ISocialProvider.SocialActionType uploadImageType = ISocialProvider.SocialActionType.UPLOAD_IMAGE;
-        BusProvider.getInstance().post(new SocialActionStartedEvent(provider, uploadImageType, payload));
+        ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, uploadImageType, payload));
+
+        // not sent through the outbox, since the bitmap only lives in memory
+        // and can't be persisted without writing it to a file first
+        SocialError rateLimited = checkRateLimit(provider, uploadImageType);
+        if (rateLimited != null) {
+            ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, uploadImageType,
+                    rateLimited.Message, payload, rateLimited));
+            future.fail(rateLimited.Message);
+            return future;
+        }
 
-        //Save a temp image to external storage in background and try to upload it when finished
-        new AsyncTask<TempImage, Object, File>() {
+        socialProvider.uploadImage(message, fileName, bitmap, jpegQuality, new ActionErrorListener() {
+                    @Override
+                    public void success() {
+                        ProfileEventDispatcher.post(new SocialActionFinishedEvent(provider, uploadImageType, payload));
 
-            @Override
-            protected File doInBackground(TempImage... params) {
-                try {
-                    return params[0].writeToStorage();
-                } catch (IOException e) {
-                    return null;
-                }
-            }
+                        if (reward != null) {
+                            reward.give();
+                        }
+                        future.complete(null);
+                    }
 
-            @Override
-            protected void onPostExecute(final File result){
-                if (result == null){
-                    BusProvider.getInstance().post(new SocialActionFailedEvent(provider, uploadImageType, "No image file to upload.", payload));
-                    return;
+                    @Override
+                    public void fail(SocialError error) {
+                        ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, uploadImageType, error.Message, payload, error));
+                        future.fail(error.Message);
+                    }
                 }
+        );
 
-                socialProvider.uploadImage(message, result.getAbsolutePath(), new SocialCallbacks.SocialActionListener() {
-                            @Override
-                            public void success() {
-                                BusProvider.getInstance().post(new SocialActionFinishedEvent(provider, uploadImageType, payload));
-
-                                if (reward != null) {
-                                    reward.give();
-                                }
-
-                                if (result != null){
-                                    result.delete();
-                                }
-                            }
-
-                            @Override
-                            public void fail(String message) {
-                                BusProvider.getInstance().post(new SocialActionFailedEvent(provider, uploadImageType, message, payload));
-
-                                if (result != null){
-                                    result.delete();
-                                }
-                            }
-                        }
-                );
-            }
-        }.execute(new TempImage(fileName, bitmap, jpegQuality));
+        return future;
     }
 
     /**
@@ -347,49 +417,216 @@ public class SocialController extends AuthController<ISocialProvider> {
     public void uploadImage(final IProvider.Provider provider,
                             String message, File file,
                             final String payload, final Reward reward) throws ProviderNotFoundException {
+        uploadImageAsync(provider, message, file, payload, reward);
+    }
+
+    /**
+     * Uploads an image using a File handler, like <code>uploadImage</code>, and returns its future.
+     *
+     * @param provider    The provider to use
+     * @param message     A text that will accompany the image
+     * @param file        An image file handler
+     * @param payload     a String to receive when the function returns.
+     * @param reward      The reward to grant for sharing the photo
+     * @return a future which completes when the action does
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public ProfileFuture<Void> uploadImageAsync(final IProvider.Provider provider,
+                                                String message, File file,
+                                                final String payload, final Reward reward) throws ProviderNotFoundException {
         if (file == null){
             SoomlaUtils.LogError(TAG, "(uploadImage) File is null!");
-            return;
+            return ProfileFuture.failed("File is null");
         }
 
-        uploadImage(provider, message, file.getAbsolutePath(), payload, reward);
+        return uploadImageAsync(provider, message, file.getAbsolutePath(), payload, reward);
     }
 
     /**
-     * Fetches the user's contact list
+     * Sets how long fetched contacts are served from the local cache.
+     * <p/>
+     * When set, <code>getContacts</code> first delivers the cached contacts
+     * (marked as <code>FromCache</code>). If they're older than the given
+     * time-to-live, they are refreshed from the network afterwards and a
+     * second <code>GetContactsFinishedEvent</code> is fired.
      *
-     * @param provider The provider to use
-     * @param payload  a String to receive when the function returns.
-     * @param reward   The reward to grant
-     * @throws ProviderNotFoundException if the supplied provider is not
-     *                                   supported by the framework
+     * @param ttlMillis the time-to-live of cached contacts in milliseconds,
+     *                  0 (the default) disables the cache
      */
-    public void getContacts(final IProvider.Provider provider,
-                            final String payload, final Reward reward) throws ProviderNotFoundException {
-        final ISocialProvider socialProvider = getProvider(provider);
+    public void setContactsCacheTTL(long ttlMillis) {
+        mContactsCacheTTL = Math.max(0, ttlMillis);
+    }
 
-        final ISocialProvider.SocialActionType getContactsType = ISocialProvider.SocialActionType.GET_CONTACTS;
-        BusProvider.getInstance().post(new GetContactsStartedEvent(provider, getContactsType, payload));
-        socialProvider.getContacts(new SocialCallbacks.ContactsListener() {
-                                       @Override
-                                       public void success(List<UserProfile> contacts) {
-                                           BusProvider.getInstance().post(new GetContactsFinishedEvent(provider, getContactsType, contacts, payload));
-
-                                           if (reward != null) {
-                                               reward.give();
-                                           }
-                                       }
-
-                                       @Override
-                                       public void fail(String message) {
-                                           BusProvider.getInstance().post(new GetContactsFailedEvent(provider, getContactsType, message, payload));
-                                       }
-                                   }
-        );
+    /**
+     * @return the time-to-live of cached contacts in milliseconds, 0 if the
+     * cache is disabled
+     */
+    public long getContactsCacheTTL() {
+        return mContactsCacheTTL;
     }
 
     /**
-     * Fetches the user's feed.
+     * Sets how failed requests are retried. Only requests which are safe to
+     * repeat (fetching contacts and feeds) are retried, and only when they
+     * fail for a transient reason. Posting actions (statuses, stories, images)
+     * are never retried, so they're never posted twice.
+     *
+     * @param retryPolicy the retry policy, <code>RetryPolicy.NONE</code> (the
+     *                    default) to disable retries
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+    }
+
+    /**
+     * @return the policy by which failed requests are retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Limits how often the given action may be requested from the given
+     * provider. Requests beyond the limit are not sent: reads are retried
+     * once quota is available (if the retry policy allows waiting that
+     * long) and posts fail right away with a <code>RATE_LIMITED</code> error.
+     * <p/>
+     * Providers which report their own quota (like Twitter) are limited by
+     * it as well, without setting a limit here.
+     *
+     * @param provider the provider to limit
+     * @param socialActionType the action to limit
+     * @param limit the number of requests allowed per window
+     * @param windowMillis the length of the window in milliseconds
+     */
+    public void setRateLimit(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType,
+                             int limit, long windowMillis) {
+        RateLimiter.forProvider(provider).setQuota(socialActionType, limit, windowMillis);
+    }
+
+    /**
+     * Enables or disables the offline outbox.
+     * <p/>
+     * When enabled, statuses, stories and images (shared from a file) which
+     * can't be sent because the device is offline are kept in a durable
+     * outbox instead of failing. They're sent in order once the device is
+     * back online, even after the app restarts, and each posts its
+     * <code>SocialActionFinishedEvent</code> (and grants its reward) when it
+     * finally succeeds. The same action is only queued once.
+     * <p/>
+     * Actions are only queued when the device is offline before they're
+     * sent, or when earlier actions are still waiting in the outbox, so a new
+     * action never overtakes them. An action which fails after it was sent (e.g. a timeout) fails
+     * as usual, since it may have been posted. Images shared from a Bitmap
+     * are never queued, since the bitmap can't be persisted.
+     *
+     * @param enabled true to enable the outbox, false (the default) to fail
+     *                actions when offline
+     */
+    public void setOutboxEnabled(boolean enabled) {
+        Context context = SoomlaApp.getAppContext();
+        synchronized (mOutboxLock) {
+            if (enabled == mOutboxEnabled) {
+                return;
+            }
+            mOutboxEnabled = enabled;
+
+            if (enabled) {
+                mOutbox.clear();
+                for (OutboxStorage.Entry entry : OutboxStorage.load()) {
+                    mOutbox.put(entry.Key, entry);
+                }
+                SoomlaUtils.LogDebug(TAG, "Outbox enabled with " + mOutbox.size() + " pending actions");
+            }
+        }
+
+        // registering delivers the current connectivity state, which replays
+        // actions left over from previous sessions
+        if (enabled) {
+            context.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        } else {
+            context.unregisterReceiver(mConnectivityReceiver);
+        }
+    }
+
+    /**
+     * Limits the outbox. When the outbox is full, actions fail as if there
+     * was no outbox, and actions which wait longer than the given age are
+     * dropped with a <code>SocialActionFailedEvent</code>.
+     *
+     * @param maxActions the maximum number of actions waiting in the outbox
+     * @param maxAgeMillis the maximum time an action waits in the outbox
+     */
+    public void setOutboxLimits(int maxActions, long maxAgeMillis) {
+        synchronized (mOutboxLock) {
+            mOutboxMaxActions = Math.max(0, maxActions);
+            mOutboxMaxAgeMillis = Math.max(0, maxAgeMillis);
+        }
+    }
+
+    /**
+     * @return the number of actions waiting in the outbox
+     */
+    public int getOutboxSize() {
+        synchronized (mOutboxLock) {
+            return mOutbox.size();
+        }
+    }
+
+    /**
+     * @return the number of contacts and feed reads which were sent to a
+     * provider
+     */
+    public long getIssuedReadCount() {
+        return mIssuedReads.get();
+    }
+
+    /**
+     * @return the number of contacts and feed reads which joined an identical
+     * read already in flight, instead of being sent to the provider
+     */
+    public long getSavedReadCount() {
+        return mSavedReads.get();
+    }
+
+    /**
+     * Resets the read counters
+     */
+    public void resetReadCounts() {
+        mIssuedReads.set(0);
+        mSavedReads.set(0);
+    }
+
+    /**
+     * Sends the actions waiting in the outbox, one at a time and in the order
+     * they were queued. Called automatically when the device goes online.
+     */
+    public void replayOutbox() {
+        OutboxStorage.Entry next = null;
+        synchronized (mOutboxLock) {
+            if (!mOutboxEnabled || mOutboxReplaying) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            for (OutboxStorage.Entry entry : mOutbox.values()) {
+                if (now - entry.CreatedAt <= mOutboxMaxAgeMillis) {
+                    next = entry;
+                    break;
+                }
+            }
+            mOutboxReplaying = next != null;
+        }
+
+        dropExpiredActions();
+        if (next != null) {
+            replay(next);
+        }
+    }
+
+    /**
+     * Fetches the user's contact list
      *
      * @param provider The provider to use
      * @param payload  a String to receive when the function returns.
@@ -397,108 +634,936 @@ public class SocialController extends AuthController<ISocialProvider> {
      * @throws ProviderNotFoundException if the supplied provider is not
      *                                   supported by the framework
      */
-    public void getFeed(final IProvider.Provider provider,
-                        final String payload, final Reward reward) throws ProviderNotFoundException {
-        final ISocialProvider socialProvider = getProvider(provider);
-
-        final ISocialProvider.SocialActionType getFeedType = ISocialProvider.SocialActionType.GET_FEED;
-        BusProvider.getInstance().post(new GetFeedStartedEvent(provider, getFeedType, payload));
-        socialProvider.getFeed(new SocialCallbacks.FeedListener() {
-                                   @Override
-                                   public void success(List<String> feedPosts) {
-                                       BusProvider.getInstance().post(new GetFeedFinishedEvent(provider, getFeedType, feedPosts, payload));
-
-                                       if (reward != null) {
-                                           reward.give();
-                                       }
-                                   }
-
-                                   @Override
-                                   public void fail(String message) {
-                                       BusProvider.getInstance().post(new GetFeedFailedEvent(provider, getFeedType, message, payload));
-                                   }
-                               }
-        );
+    public void getContacts(final IProvider.Provider provider,
+                            final String payload, final Reward reward) throws ProviderNotFoundException {
+        getContactsAsync(provider, payload, reward);
     }
 
     /**
-     * Opens up a provider page to "like" (external), and grants the user the supplied reward
+     * Fetches the user's contact list, like <code>getContacts</code>, and returns its future.
      *
-     * @param activity The parent activity
      * @param provider The provider to use
-     * @param pageName The page to open up
+     * @param payload  a String to receive when the function returns.
      * @param reward   The reward to grant
+     * @return the future of the contacts
      * @throws ProviderNotFoundException if the supplied provider is not
      *                                   supported by the framework
      */
-    public void like(final Activity activity, final IProvider.Provider provider,
-                     String pageName,
-                     final Reward reward) throws ProviderNotFoundException {
+    public ProfileFuture<List<UserProfile>> getContactsAsync(final IProvider.Provider provider,
+                                                             final String payload, final Reward reward) throws ProviderNotFoundException {
         final ISocialProvider socialProvider = getProvider(provider);
-        socialProvider.like(activity, pageName);
+        final ProfileFuture<List<UserProfile>> future = new ProfileFuture<List<UserProfile>>();
 
-        if (reward != null) {
-            reward.give();
-        }
-    }
+        final ISocialProvider.SocialActionType getContactsType = ISocialProvider.SocialActionType.GET_CONTACTS;
+        ProfileEventDispatcher.post(ProfileEventDispatcher.getContactsStarted(provider, payload));
+
+        final boolean cacheEnabled = mContactsCacheTTL > 0;
+        boolean servedFromCache = false;
+        if (cacheEnabled) {
+            List<UserProfile> cachedContacts = ContactsStorage.getContacts(provider);
+            if (cachedContacts != null) {
+                long age = ContactsStorage.getContactsAge(provider);
+                SoomlaUtils.LogDebug(TAG, "Serving cached contacts of " + provider + ", age:" + age);
+                ProfileEventDispatcher.post(new GetContactsFinishedEvent(provider, getContactsType,
+                        cachedContacts, null, false, true, payload));
 
-    private class TempImage {
+                if (reward != null) {
+                    reward.give();
+                }
+                future.complete(cachedContacts);
 
-        public TempImage(String aFileName, Bitmap aBitmap, int aJpegQuality){
-            this.mFileName = aFileName;
-            this.mImageBitmap = aBitmap;
-            this.mJpegQuality = aJpegQuality;
+                if (age >= 0 && age < mContactsCacheTTL) {
+                    return future;
+                }
+                servedFromCache = true;
+            }
         }
 
-        protected File writeToStorage() throws IOException {
-            SoomlaUtils.LogDebug(TAG, "Saving temp image file.");
-
-            File tempDir = new File(getTempImageDir());
-            tempDir.mkdirs();
-            BufferedOutputStream bos = null;
-
-            try{
-                File file = new File(tempDir.toString() + this.mFileName);
-                FileOutputStream fileOutputStream = new FileOutputStream(file);
-                bos = new BufferedOutputStream(fileOutputStream);
-
-                String extension = this.mFileName.substring((this.mFileName.lastIndexOf(".") + 1), this.mFileName.length());
-                Bitmap.CompressFormat format = (extension == "png" ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG);
-
-                this.mImageBitmap.compress(format, this.mJpegQuality, bos);
-
-                bos.flush();
-                return file;
-
-            } catch (Exception e){
-                SoomlaUtils.LogError(TAG, "(save) Failed saving temp image file: " + this.mFileName + " with error: " + e.getMessage());
+        // if stale cached contacts were served, this refreshes them in the background
+        final boolean revalidating = servedFromCache;
+        final String flightKey = flightKey(provider, getContactsType);
+        boolean joined = joinFlight(flightKey, new FlightWaiter<List<UserProfile>>() {
+            @Override
+            public void success(List<UserProfile> contacts) {
+                ProfileEventDispatcher.post(new GetContactsFinishedEvent(provider, getContactsType, contacts, payload));
 
-            } finally {
-                if (bos != null){
-                    bos.close();
+                if (reward != null && !revalidating) {
+                    reward.give();
                 }
+                future.complete(contacts);
             }
 
-            return null;
+            @Override
+            public void fail(SocialError error) {
+                if (revalidating) {
+                    // the caller already got the cached contacts
+                    SoomlaUtils.LogWarning(TAG, "Failed refreshing cached contacts of " + provider + ": " + error);
+                    return;
+                }
+                ProfileEventDispatcher.post(new GetContactsFailedEvent(provider, getContactsType,
+                        error.Message, payload, error));
+                future.fail(error.Message);
+            }
+        });
+        if (joined) {
+            return future;
         }
 
-        private String getTempImageDir(){
-            if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())){
-                SoomlaUtils.LogDebug(TAG, "(getTempImageDir) External storage not ready.");
-                return null;
-            }
+        new ProviderRequest(provider, getContactsType) {
+            @Override
+            protected void attempt() {
+                socialProvider.getContacts(new ContactsErrorListener() {
+                    @Override
+                    public void success(List<UserProfile> contacts) {
+                        if (cacheEnabled) {
+                            ContactsStorage.setContacts(provider, contacts);
+                        }
 
-            ContextWrapper soomContextWrapper = new ContextWrapper(SoomlaApp.getAppContext());
+                        List<FlightWaiter<List<UserProfile>>> waiters = landFlight(flightKey);
+                        for (FlightWaiter<List<UserProfile>> waiter : waiters) {
+                            waiter.success(contacts);
+                        }
+                    }
 
-            return Environment.getExternalStorageDirectory() + soomContextWrapper.getFilesDir().getPath() + "/temp/";
-        }
+                    @Override
+                    public void fail(SocialError error) {
+                        failed(error);
+                    }
+                });
+            }
+
+            @Override
+            protected void giveUp(SocialError error) {
+                List<FlightWaiter<List<UserProfile>>> waiters = landFlight(flightKey);
+                for (FlightWaiter<List<UserProfile>> waiter : waiters) {
+                    waiter.fail(error);
+                }
+            }
+        }.run();
 
-        final String TAG = "TempImageFile";
-        Bitmap mImageBitmap;
-        String mFileName;
-        int mJpegQuality;
+        return future;
     }
 
-    private static final String TAG = "SOOMLA SocialController";
+    /**
+     * Fetches a single page of the user's contact list.
+     * The reward is granted only when the first page is fetched.
+     *
+     * @param provider The provider to use
+     * @param cursor   a cursor received in a previous <code>GetContactsFinishedEvent</code>,
+     *                 or null to fetch the first page
+     * @param pageSize the preferred amount of contacts in a page (a hint for the provider)
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void getContacts(final IProvider.Provider provider, final String cursor, final int pageSize,
+                            final String payload, final Reward reward) throws ProviderNotFoundException {
+        final ISocialProvider socialProvider = getProvider(provider);
+
+        final ISocialProvider.SocialActionType getContactsType = ISocialProvider.SocialActionType.GET_CONTACTS;
+        ProfileEventDispatcher.post(ProfileEventDispatcher.getContactsStarted(provider, payload));
+
+        final String flightKey = flightKey(provider, getContactsType) + "/" + cursor + "/" + pageSize;
+        boolean joined = joinFlight(flightKey, new FlightWaiter<ContactsPage>() {
+            @Override
+            public void success(ContactsPage page) {
+                ProfileEventDispatcher.post(new GetContactsFinishedEvent(provider, getContactsType,
+                        page.Contacts, page.NextCursor, page.HasMore, payload));
+
+                if (reward != null && cursor == null) {
+                    reward.give();
+                }
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                ProfileEventDispatcher.post(new GetContactsFailedEvent(provider, getContactsType,
+                        error.Message, payload, error));
+            }
+        });
+        if (joined) {
+            return;
+        }
+
+        new ProviderRequest(provider, getContactsType) {
+            @Override
+            protected void attempt() {
+                socialProvider.getContacts(cursor, pageSize, new ContactsPageErrorListener() {
+                    @Override
+                    public void success(List<UserProfile> contacts, String nextCursor, boolean hasMore) {
+                        ContactsPage page = new ContactsPage(contacts, nextCursor, hasMore);
+                        List<FlightWaiter<ContactsPage>> waiters = landFlight(flightKey);
+                        for (FlightWaiter<ContactsPage> waiter : waiters) {
+                            waiter.success(page);
+                        }
+                    }
+
+                    @Override
+                    public void fail(SocialError error) {
+                        failed(error);
+                    }
+                });
+            }
+
+            @Override
+            protected void giveUp(SocialError error) {
+                List<FlightWaiter<ContactsPage>> waiters = landFlight(flightKey);
+                for (FlightWaiter<ContactsPage> waiter : waiters) {
+                    waiter.fail(error);
+                }
+            }
+        }.run();
+    }
+
+    /**
+     * Syncs the user's whole contact list in the background, for providers
+     * which implement <code>ISocialContactsSyncProvider</code>.
+     * Every page is delivered with a <code>ContactsSyncPageEvent</code>, and a
+     * <code>ContactsSyncFinishedEvent</code> is fired once the sync is done.
+     * The provider takes from the rate limit for every request of the sync.
+     *
+     * @param provider    The provider to use
+     * @param incremental true to deliver only the contacts added since the
+     *                    previous sync
+     * @param payload     a String to receive when the function returns.
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void syncContacts(final IProvider.Provider provider, final boolean incremental,
+                             final String payload) throws ProviderNotFoundException {
+        final ISocialProvider socialProvider = getProvider(provider);
+
+        final ISocialProvider.SocialActionType getContactsType = ISocialProvider.SocialActionType.GET_CONTACTS;
+        ProfileEventDispatcher.post(ProfileEventDispatcher.getContactsStarted(provider, payload));
+
+        if (!(socialProvider instanceof ISocialContactsSyncProvider)) {
+            String message = "Contacts sync is not supported by " + provider;
+            SoomlaUtils.LogWarning(TAG, message);
+            ProfileEventDispatcher.post(new GetContactsFailedEvent(provider, getContactsType, message, payload));
+            return;
+        }
+
+        ((ISocialContactsSyncProvider) socialProvider).syncContacts(incremental, new ContactsSyncErrorListener() {
+            // pages arrive one after the other
+            private int mContactsCount = 0;
+
+            @Override
+            public void page(List<UserProfile> contacts) {
+                mContactsCount += contacts.size();
+                ProfileEventDispatcher.post(new ContactsSyncPageEvent(provider, contacts, payload));
+            }
+
+            @Override
+            public void success(List<String> removedProfileIds) {
+                ProfileEventDispatcher.post(new ContactsSyncFinishedEvent(provider, incremental,
+                        mContactsCount, removedProfileIds, payload));
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                ProfileEventDispatcher.post(new GetContactsFailedEvent(provider, getContactsType,
+                        error.Message, payload, error));
+            }
+        });
+    }
+
+    /**
+     * Fetches the user's feed.
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void getFeed(final IProvider.Provider provider,
+                        final String payload, final Reward reward) throws ProviderNotFoundException {
+        getFeedAsync(provider, payload, reward);
+    }
+
+    /**
+     * Fetches the user's feed, like <code>getFeed</code>, and returns its future.
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @return the future of the feed posts
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public ProfileFuture<List<String>> getFeedAsync(final IProvider.Provider provider,
+                                                    final String payload, final Reward reward) throws ProviderNotFoundException {
+        return getFeedItems(provider, payload, reward).then(
+                new ProfileFuture.Continuation<List<FeedItem>, List<String>>() {
+                    @Override
+                    public ProfileFuture<List<String>> then(List<FeedItem> feedItems) {
+                        return ProfileFuture.succeeded(textsOf(feedItems));
+                    }
+                });
+    }
+
+    /**
+     * Fetches the user's feed as structured feed items.
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @return the future of the feed items
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public ProfileFuture<List<FeedItem>> getFeedItems(final IProvider.Provider provider,
+                                                      final String payload, final Reward reward) throws ProviderNotFoundException {
+        final ISocialProvider socialProvider = getProvider(provider);
+        final ProfileFuture<List<FeedItem>> future = new ProfileFuture<List<FeedItem>>();
+
+        final ISocialProvider.SocialActionType getFeedType = ISocialProvider.SocialActionType.GET_FEED;
+        ProfileEventDispatcher.post(ProfileEventDispatcher.getFeedStarted(provider, payload));
+
+        final String flightKey = flightKey(provider, getFeedType);
+        boolean joined = joinFlight(flightKey, new FlightWaiter<List<FeedItem>>() {
+            @Override
+            public void success(List<FeedItem> feedItems) {
+                ProfileEventDispatcher.post(new GetFeedFinishedEvent(provider, getFeedType,
+                        textsOf(feedItems), feedItems, payload));
+
+                if (reward != null) {
+                    reward.give();
+                }
+                future.complete(feedItems);
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                ProfileEventDispatcher.post(new GetFeedFailedEvent(provider, getFeedType,
+                        error.Message, payload, error));
+                future.fail(error.Message);
+            }
+        });
+        if (joined) {
+            return future;
+        }
+
+        new ProviderRequest(provider, getFeedType) {
+            @Override
+            protected void attempt() {
+                socialProvider.getFeedItems(new FeedItemsErrorListener() {
+                    @Override
+                    public void success(List<FeedItem> feedItems) {
+                        List<FlightWaiter<List<FeedItem>>> waiters = landFlight(flightKey);
+                        for (FlightWaiter<List<FeedItem>> waiter : waiters) {
+                            waiter.success(feedItems);
+                        }
+                    }
+
+                    @Override
+                    public void fail(SocialError error) {
+                        failed(error);
+                    }
+                });
+            }
+
+            @Override
+            protected void giveUp(SocialError error) {
+                List<FlightWaiter<List<FeedItem>>> waiters = landFlight(flightKey);
+                for (FlightWaiter<List<FeedItem>> waiter : waiters) {
+                    waiter.fail(error);
+                }
+            }
+        }.run();
+
+        return future;
+    }
+
+    /**
+     * Opens up a provider page to "like" (external), and grants the user the supplied reward
+     *
+     * @param activity The parent activity
+     * @param provider The provider to use
+     * @param pageName The page to open up
+     * @param reward   The reward to grant
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void like(final Activity activity, final IProvider.Provider provider,
+                     String pageName,
+                     final Reward reward) throws ProviderNotFoundException {
+        final ISocialProvider socialProvider = getProvider(provider);
+        socialProvider.like(activity, pageName);
+
+        if (reward != null) {
+            reward.give();
+        }
+    }
+
+    private static List<String> textsOf(List<FeedItem> feedItems) {
+        List<String> texts = new ArrayList<String>(feedItems.size());
+        for (FeedItem feedItem : feedItems) {
+            texts.add(feedItem.getText());
+        }
+        return texts;
+    }
+
+    private static String flightKey(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType) {
+        return provider + "/" + socialActionType;
+    }
+
+    /**
+     * Adds a waiter to the read with the given key. Only the first waiter of
+     * a read sends it to the provider, the others share its outcome.
+     *
+     * @return true if an identical read is already in flight, false if the
+     * caller should send the read
+     */
+    private <T> boolean joinFlight(String key, FlightWaiter<T> waiter) {
+        synchronized (mFlights) {
+            List<FlightWaiter<?>> waiters = mFlights.get(key);
+            if (waiters != null) {
+                waiters.add(waiter);
+                mSavedReads.incrementAndGet();
+                SoomlaUtils.LogDebug(TAG, "Joined in-flight read " + key + " (" + waiters.size() + " waiting)");
+                return true;
+            }
+
+            waiters = new ArrayList<FlightWaiter<?>>(2);
+            waiters.add(waiter);
+            mFlights.put(key, waiters);
+            mIssuedReads.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Ends the read with the given key
+     *
+     * @return the waiters of the read, whose type matches the read's result
+     * since every key belongs to a single kind of read
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<FlightWaiter<T>> landFlight(String key) {
+        List<FlightWaiter<?>> waiters;
+        synchronized (mFlights) {
+            waiters = mFlights.remove(key);
+        }
+        if (waiters == null) {
+            // the provider called back more than once
+            return Collections.emptyList();
+        }
+        return (List<FlightWaiter<T>>) (List<?>) waiters;
+    }
+
+    /**
+     * A caller waiting for a read
+     */
+    private interface FlightWaiter<T> {
+        void success(T result);
+
+        void fail(SocialError error);
+    }
+
+    private static class ContactsPage {
+        ContactsPage(List<UserProfile> contacts, String nextCursor, boolean hasMore) {
+            Contacts = contacts;
+            NextCursor = nextCursor;
+            HasMore = hasMore;
+        }
+
+        final List<UserProfile> Contacts;
+        final String NextCursor;
+        final boolean HasMore;
+    }
+
+    /**
+     * Takes quota for a request from the provider's rate limiter
+     *
+     * @return null if the request may be sent, otherwise a rate limited error
+     * telling when it can be
+     */
+    private static SocialError checkRateLimit(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType) {
+        long waitMillis = RateLimiter.forProvider(provider).tryAcquire(socialActionType);
+        if (waitMillis <= 0) {
+            return null;
+        }
+
+        long waitSeconds = (waitMillis + 999) / 1000;
+        SoomlaUtils.LogDebug(TAG, socialActionType + " on " + provider + " is rate limited for " + waitSeconds + "s");
+        return new SocialError(SocialError.ErrorType.RATE_LIMITED,
+                "Rate limited, retry after " + waitSeconds + "s", waitMillis);
+    }
+
+    private static void performAction(ISocialProvider socialProvider, ISocialProvider.SocialActionType socialActionType,
+                                      String[] params, SocialCallbacks.SocialActionListener listener) {
+        switch (socialActionType) {
+            case UPDATE_STATUS:
+                socialProvider.updateStatus(params[0], listener);
+                break;
+            case UPDATE_STORY:
+                socialProvider.updateStory(params[0], params[1], params[2], params[3], params[4], params[5], listener);
+                break;
+            case UPLOAD_IMAGE:
+                socialProvider.uploadImage(params[0], params[1], listener);
+                break;
+            default:
+                listener.fail("Unsupported social action: " + socialActionType);
+        }
+    }
+
+    /**
+     * Sends a social action, and when the outbox is enabled queues it instead
+     * if the device is offline or earlier actions are still waiting
+     */
+    private void sendAction(ISocialProvider socialProvider, final IProvider.Provider provider,
+                            final ISocialProvider.SocialActionType socialActionType, final String[] params,
+                            final String payload, final Reward reward, final ProfileFuture<Void> future) {
+        if (mOutboxEnabled) {
+            boolean online = isConnected();
+            if (queueAction(provider, socialActionType, params, payload, reward, future, online)) {
+                if (online) {
+                    resumeReplay();
+                }
+                return;
+            }
+        }
+
+        SocialError rateLimited = checkRateLimit(provider, socialActionType);
+        if (rateLimited != null) {
+            ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, socialActionType,
+                    rateLimited.Message, payload, rateLimited));
+            future.fail(rateLimited.Message);
+            return;
+        }
+
+        performAction(socialProvider, socialActionType, params, new ActionErrorListener() {
+            @Override
+            public void success() {
+                ProfileEventDispatcher.post(new SocialActionFinishedEvent(provider, socialActionType, payload));
+
+                if (reward != null) {
+                    reward.give();
+                }
+                future.complete(null);
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                // the action may have been posted even if the response was lost,
+                // so only actions which were never sent (see above) are queued
+                ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, socialActionType, error.Message, payload, error));
+                future.fail(error.Message);
+            }
+        });
+    }
+
+    /**
+     * Adds an action to the outbox
+     *
+     * @param online true if the device is online, in which case the action is
+     *               only queued behind actions already waiting, so it doesn't
+     *               overtake them
+     * @return true if the action is waiting in the outbox, false if it
+     * couldn't be queued
+     */
+    private boolean queueAction(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType,
+                                String[] params, String payload, Reward reward, ProfileFuture<Void> future,
+                                boolean online) {
+        OutboxStorage.Entry entry = new OutboxStorage.Entry(provider, socialActionType, params, payload,
+                reward != null ? reward.toJSONObject().toString() : null);
+
+        synchronized (mOutboxLock) {
+            if (!mOutboxEnabled || (online && mOutbox.isEmpty())) {
+                return false;
+            }
+
+            if (!mOutbox.containsKey(entry.Key)) {
+                if (mOutbox.size() >= mOutboxMaxActions) {
+                    SoomlaUtils.LogWarning(TAG, "Outbox is full, not queueing " + socialActionType + " on " + provider);
+                    return false;
+                }
+                if (!OutboxStorage.add(entry)) {
+                    return false;
+                }
+                mOutbox.put(entry.Key, entry);
+                SoomlaUtils.LogDebug(TAG, "Queued " + socialActionType + " on " + provider + " until back online");
+            } else {
+                SoomlaUtils.LogDebug(TAG, socialActionType + " on " + provider + " is already queued");
+            }
+
+            List<ProfileFuture<Void>> futures = mOutboxFutures.get(entry.Key);
+            if (futures == null) {
+                futures = new ArrayList<ProfileFuture<Void>>(1);
+                mOutboxFutures.put(entry.Key, futures);
+            }
+            futures.add(future);
+        }
+        return true;
+    }
+
+    /**
+     * Replays the outbox unless a paused replay is already waiting to resume
+     */
+    private void resumeReplay() {
+        synchronized (mOutboxLock) {
+            if (mOutboxReplayScheduled) {
+                return;
+            }
+        }
+        replayOutbox();
+    }
+
+    private void replay(final OutboxStorage.Entry entry) {
+        ISocialProvider socialProvider;
+        try {
+            socialProvider = getProvider(entry.Provider);
+        } catch (ProviderNotFoundException e) {
+            replayed(entry, new SocialError(SocialError.ErrorType.UNKNOWN, "Provider not found: " + entry.Provider));
+            return;
+        }
+
+        SocialError rateLimited = checkRateLimit(entry.Provider, entry.SocialActionType);
+        if (rateLimited != null) {
+            pauseReplay(rateLimited);
+            return;
+        }
+
+        SoomlaUtils.LogDebug(TAG, "Replaying " + entry.SocialActionType + " on " + entry.Provider);
+        performAction(socialProvider, entry.SocialActionType, entry.Params, new ActionErrorListener() {
+            @Override
+            public void success() {
+                replayed(entry, null);
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                if (!error.isTransient()) {
+                    replayed(entry, error);
+                    return;
+                }
+
+                pauseReplay(error);
+            }
+        });
+    }
+
+    /**
+     * Stops replaying, keeping the current action (and the ones after it)
+     * for a later replay. The replay resumes after the delay the provider
+     * asked for, or after a growing backoff, unless the device goes back
+     * online first.
+     */
+    private void pauseReplay(SocialError error) {
+        long delay;
+        synchronized (mOutboxLock) {
+            mOutboxReplaying = false;
+            if (mOutboxReplayScheduled) {
+                return;
+            }
+            mOutboxReplayScheduled = true;
+            delay = REPLAY_BACKOFF.getDelayMillis(error, ++mOutboxReplayPauses);
+        }
+
+        SoomlaUtils.LogDebug(TAG, "Replay stopped (" + error + "), " + getOutboxSize() +
+                " actions pending, resuming in " + delay + "ms");
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mOutboxLock) {
+                    mOutboxReplayScheduled = false;
+                }
+                replayOutbox();
+            }
+        }, delay);
+    }
+
+    /**
+     * Removes a replayed action from the outbox, reports its outcome and
+     * moves on to the next action
+     */
+    private void replayed(OutboxStorage.Entry entry, SocialError error) {
+        List<ProfileFuture<Void>> futures = removeFromOutbox(entry);
+        synchronized (mOutboxLock) {
+            mOutboxReplaying = false;
+            mOutboxReplayPauses = 0;
+        }
+
+        if (error == null) {
+            ProfileEventDispatcher.post(new SocialActionFinishedEvent(entry.Provider, entry.SocialActionType, entry.Payload));
+
+            if (entry.RewardJSON != null) {
+                Reward reward = Reward.fromJSONString(entry.RewardJSON);
+                if (reward != null) {
+                    reward.give();
+                }
+            }
+            for (ProfileFuture<Void> future : futures) {
+                future.complete(null);
+            }
+        } else {
+            failQueued(entry, futures, error);
+        }
+
+        replayOutbox();
+    }
+
+    private void dropExpiredActions() {
+        List<OutboxStorage.Entry> expired = new ArrayList<OutboxStorage.Entry>();
+        synchronized (mOutboxLock) {
+            long now = System.currentTimeMillis();
+            for (OutboxStorage.Entry entry : mOutbox.values()) {
+                if (now - entry.CreatedAt > mOutboxMaxAgeMillis) {
+                    expired.add(entry);
+                }
+            }
+        }
+
+        for (OutboxStorage.Entry entry : expired) {
+            SoomlaUtils.LogWarning(TAG, "Dropping expired " + entry.SocialActionType + " on " + entry.Provider);
+            failQueued(entry, removeFromOutbox(entry),
+                    new SocialError(SocialError.ErrorType.NETWORK, "Expired while waiting to go online"));
+        }
+    }
+
+    private List<ProfileFuture<Void>> removeFromOutbox(OutboxStorage.Entry entry) {
+        List<ProfileFuture<Void>> futures;
+        synchronized (mOutboxLock) {
+            mOutbox.remove(entry.Key);
+            futures = mOutboxFutures.remove(entry.Key);
+        }
+        OutboxStorage.remove(entry.Key);
+        return futures != null ? futures : Collections.<ProfileFuture<Void>>emptyList();
+    }
+
+    private static void failQueued(OutboxStorage.Entry entry, List<ProfileFuture<Void>> futures, SocialError error) {
+        ProfileEventDispatcher.post(new SocialActionFailedEvent(entry.Provider, entry.SocialActionType,
+                error.Message, entry.Payload, error));
+        for (ProfileFuture<Void> future : futures) {
+            future.fail(error.Message);
+        }
+    }
+
+    private static boolean isConnected() {
+        try {
+            ConnectivityManager connectivityManager = (ConnectivityManager) SoomlaApp.getAppContext()
+                    .getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            return networkInfo != null && networkInfo.isConnected();
+        } catch (SecurityException e) {
+            // no ACCESS_NETWORK_STATE permission, let the request find out
+            return true;
+        }
+    }
+
+    /**
+     * A request to a provider which is retried on the main thread according
+     * to the retry policy, and which takes from the action's rate limit
+     * before every attempt
+     */
+    private abstract class ProviderRequest extends RetryingRequest {
+
+        ProviderRequest(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType) {
+            super(mRetryPolicy);
+            mProvider = provider;
+            mSocialActionType = socialActionType;
+        }
+
+        @Override
+        protected SocialError checkLimit() {
+            return checkRateLimit(mProvider, mSocialActionType);
+        }
+
+        @Override
+        protected void schedule(Runnable attempt, long delayMillis) {
+            SoomlaUtils.LogDebug(TAG, mSocialActionType + " on " + mProvider + " failed, attempt " +
+                    getAttempt() + " in " + delayMillis + "ms");
+            runOnMainThread(attempt, delayMillis);
+        }
+
+        private final IProvider.Provider mProvider;
+        private final ISocialProvider.SocialActionType mSocialActionType;
+    }
+
+    private static abstract class ActionErrorListener
+            implements SocialCallbacks.SocialActionListener, SocialCallbacks.ErrorListener {
+        @Override
+        public void fail(String message) {
+            fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+        }
+    }
+
+    private static abstract class ContactsErrorListener
+            implements SocialCallbacks.ContactsListener, SocialCallbacks.ErrorListener {
+        @Override
+        public void fail(String message) {
+            fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+        }
+    }
+
+    private static abstract class ContactsPageErrorListener
+            implements SocialCallbacks.ContactsPageListener, SocialCallbacks.ErrorListener {
+        @Override
+        public void fail(String message) {
+            fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+        }
+    }
+
+    private static abstract class ContactsSyncErrorListener
+            implements SocialCallbacks.ContactsSyncListener, SocialCallbacks.ErrorListener {
+        @Override
+        public void fail(String message) {
+            fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+        }
+    }
+
+    private static abstract class FeedItemsErrorListener
+            implements SocialCallbacks.FeedItemsListener, SocialCallbacks.ErrorListener {
+        @Override
+        public void fail(String message) {
+            fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+        }
+    }
+
+    /**
+     * Runs a social action on several providers and aggregates the outcomes
+     */
+    private abstract class MultiAction {
+
+        MultiAction(Set<IProvider.Provider> providers, ISocialProvider.SocialActionType socialActionType,
+                    String payload, Reward reward, RewardPolicy rewardPolicy) {
+            EnumSet<IProvider.Provider> providerSet = EnumSet.noneOf(IProvider.Provider.class);
+            providerSet.addAll(providers);
+            mProviders = Collections.unmodifiableSet(providerSet);
+            mSocialActionType = socialActionType;
+            mPayload = payload;
+            mReward = reward;
+            mRewardPolicy = rewardPolicy;
+            mPending = mProviders.size();
+        }
+
+        protected abstract void perform(ISocialProvider socialProvider, SocialCallbacks.SocialActionListener listener);
+
+        void start() {
+            if (mProviders.isEmpty()) {
+                finish();
+                return;
+            }
+
+            for (final IProvider.Provider provider : mProviders) {
+                ISocialProvider socialProvider;
+                try {
+                    socialProvider = getProvider(provider);
+                } catch (ProviderNotFoundException e) {
+                    SoomlaUtils.LogWarning(TAG, "Provider not found: " + provider);
+                    completed(provider, "Provider not found: " + provider);
+                    continue;
+                }
+
+                SocialError rateLimited = checkRateLimit(provider, mSocialActionType);
+                if (rateLimited != null) {
+                    ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, mSocialActionType,
+                            rateLimited.Message, mPayload, rateLimited));
+                    completed(provider, rateLimited.Message);
+                    continue;
+                }
+
+                ProfileEventDispatcher.post(ProfileEventDispatcher.socialActionStarted(provider, mSocialActionType, mPayload));
+                perform(socialProvider, new ActionErrorListener() {
+                    @Override
+                    public void success() {
+                        ProfileEventDispatcher.post(new SocialActionFinishedEvent(provider, mSocialActionType, mPayload));
+                        completed(provider, null);
+                    }
+
+                    @Override
+                    public void fail(SocialError error) {
+                        ProfileEventDispatcher.post(new SocialActionFailedEvent(provider, mSocialActionType, error.Message, mPayload, error));
+                        completed(provider, error.Message != null ? error.Message : "");
+                    }
+                });
+            }
+        }
+
+        private void completed(IProvider.Provider provider, String error) {
+            synchronized (this) {
+                if (mSucceeded.contains(provider) || mFailed.containsKey(provider)) {
+                    // some providers call back more than once
+                    return;
+                }
+                if (error == null) {
+                    mSucceeded.add(provider);
+                } else {
+                    mFailed.put(provider, error);
+                }
+                if (--mPending > 0) {
+                    return;
+                }
+            }
+            finish();
+        }
+
+        private void finish() {
+            boolean giveReward = mReward != null && (mRewardPolicy == RewardPolicy.ALL_SUCCEED ?
+                    mFailed.isEmpty() && !mSucceeded.isEmpty() : !mSucceeded.isEmpty());
+            if (giveReward) {
+                mReward.give();
+            }
+
+            ProfileEventDispatcher.post(new MultiSocialActionFinishedEvent(mProviders,
+                    Collections.unmodifiableSet(mSucceeded), Collections.unmodifiableMap(mFailed),
+                    mSocialActionType, giveReward, mPayload));
+        }
+
+        private final Set<IProvider.Provider> mProviders;
+        private final ISocialProvider.SocialActionType mSocialActionType;
+        private final String mPayload;
+        private final Reward mReward;
+        private final RewardPolicy mRewardPolicy;
+        private final EnumSet<IProvider.Provider> mSucceeded = EnumSet.noneOf(IProvider.Provider.class);
+        private final EnumMap<IProvider.Provider, String> mFailed =
+                new EnumMap<IProvider.Provider, String>(IProvider.Provider.class);
+        private int mPending;
+    }
+
+    private static final String TAG = "SOOMLA SocialController";
+
+    private static final Map<IProvider.Provider, String> PROVIDER_CLASS_NAMES;
+    static {
+        EnumMap<IProvider.Provider, String> providerClassNames =
+                new EnumMap<IProvider.Provider, String>(IProvider.Provider.class);
+        providerClassNames.put(IProvider.Provider.FACEBOOK, "com.soomla.profile.social.facebook.SoomlaFacebook");
+        providerClassNames.put(IProvider.Provider.GOOGLE, "com.soomla.profile.social.google.SoomlaGooglePlus");
+        providerClassNames.put(IProvider.Provider.TWITTER, "com.soomla.profile.social.twitter.SoomlaTwitter");
+        PROVIDER_CLASS_NAMES = Collections.unmodifiableMap(providerClassNames);
+    }
+
+    private static final int DEFAULT_OUTBOX_MAX_ACTIONS = 50;
+    private static final long DEFAULT_OUTBOX_MAX_AGE_MILLIS = 3 * 24 * 60 * 60 * 1000L;
+    // how long a paused replay waits when the provider didn't say: 5 seconds, doubling up to 10 minutes
+    private static final RetryPolicy REPLAY_BACKOFF = new RetryPolicy(Integer.MAX_VALUE, 5000, 10 * 60 * 1000L, 0.5);
+
+    private long mContactsCacheTTL = 0;
+    private volatile RetryPolicy mRetryPolicy = RetryPolicy.NONE;
+
+    private final Map<String, List<FlightWaiter<?>>> mFlights = new HashMap<String, List<FlightWaiter<?>>>();
+    private final AtomicLong mIssuedReads = new AtomicLong();
+    private final AtomicLong mSavedReads = new AtomicLong();
+
+    private final Object mOutboxLock = new Object();
+    private final LinkedHashMap<String, OutboxStorage.Entry> mOutbox = new LinkedHashMap<String, OutboxStorage.Entry>();
+    private final Map<String, List<ProfileFuture<Void>>> mOutboxFutures = new HashMap<String, List<ProfileFuture<Void>>>();
+    private volatile boolean mOutboxEnabled = false;
+    private boolean mOutboxReplaying = false;
+    private boolean mOutboxReplayScheduled = false;
+    private int mOutboxReplayPauses = 0;
+    private int mOutboxMaxActions = DEFAULT_OUTBOX_MAX_ACTIONS;
+    private long mOutboxMaxAgeMillis = DEFAULT_OUTBOX_MAX_AGE_MILLIS;
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                replayOutbox();
+            }
+        }
+    };
 }
 
@@ -21,19 +21,26 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
-import com.soomla.BusProvider;
 import com.soomla.SoomlaMarketUtils;
+import com.soomla.profile.auth.IAuthProvider;
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.domain.UserProfile;
 import com.soomla.profile.events.UserRatingEvent;
 import com.soomla.profile.events.ProfileInitializedEvent;
 import com.soomla.profile.exceptions.ProviderNotFoundException;
 import com.soomla.profile.exceptions.UserProfileNotFoundException;
+import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.RetryPolicy;
+import com.soomla.profile.social.RewardPolicy;
 import com.soomla.rewards.Reward;
 
 import java.io.File;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This is the main class for the SOOMLA User Profile module.  This class
@@ -67,10 +74,43 @@ public class SoomlaProfile {
      */
     public void initialize(boolean usingExternalProvider, Map<IProvider.Provider, ? extends Map<String, String>> customParams) {
 
-        mAuthController = new AuthController(usingExternalProvider, customParams);
+        mAuthController = new AuthController<IAuthProvider>(usingExternalProvider, customParams);
         mSocialController = new SocialController(usingExternalProvider, customParams);
+        mRoutes = buildRoutes(mAuthController, mSocialController);
+
+        Runnable rebuildRoutes = new Runnable() {
+            @Override
+            public void run() {
+                mRoutes = buildRoutes(mAuthController, mSocialController);
+            }
+        };
+        mAuthController.setOnProvidersChanged(rebuildRoutes);
+        mSocialController.setOnProvidersChanged(rebuildRoutes);
+
+        ProfileEventDispatcher.post(new ProfileInitializedEvent());
+    }
+
+    /**
+     * Sets whether providers are initialized lazily, on their first use,
+     * instead of during <code>initialize</code>. Lazy initialization shortens
+     * app startup, at the cost of a delay on the first action of every provider.
+     * Call this before <code>initialize</code>.
+     *
+     * @param lazyProviderLoading true to initialize providers on first use
+     */
+    public void setLazyProviderLoading(boolean lazyProviderLoading) {
+        ProviderLoader.setLazyLoading(lazyProviderLoading);
+    }
 
-        BusProvider.getInstance().post(new ProfileInitializedEvent());
+    /**
+     * Fetches how long the initialization of each provider took
+     *
+     * @return the initialization time of each initialized provider in milliseconds
+     */
+    public Map<IProvider.Provider, Long> getProviderInitMillis() {
+        Map<IProvider.Provider, Long> initMillis = mSocialController.getProviderInitMillis();
+        initMillis.putAll(mAuthController.getProviderInitMillis());
+        return initMillis;
     }
 
     /**
@@ -110,11 +150,7 @@ public class SoomlaProfile {
      */
     public void login(Activity activity, final IProvider.Provider provider,
                       String payload, final Reward reward) throws ProviderNotFoundException {
-        try {
-            mAuthController.login(activity, provider, payload, reward);
-        } catch (ProviderNotFoundException e) {
-            mSocialController.login(activity, provider,  payload, reward);
-        }
+        route(provider).login(activity, provider, payload, reward);
     }
 
     /**
@@ -128,11 +164,7 @@ public class SoomlaProfile {
      *                                   supported by the framework
      */
     public boolean isLoggedIn(Activity activity, final IProvider.Provider provider) throws ProviderNotFoundException {
-        try {
-            return mAuthController.isLoggedIn(activity, provider);
-        } catch (ProviderNotFoundException e) {
-            return mSocialController.isLoggedIn(activity, provider);
-        }
+        return route(provider).isLoggedIn(activity, provider);
     }
 
     /**
@@ -143,13 +175,36 @@ public class SoomlaProfile {
      *                                   supported by the framework
      */
     public void logout(final IProvider.Provider provider) throws ProviderNotFoundException {
-        try {
-            mAuthController.logout(provider);
-        } catch (ProviderNotFoundException e) {
-            mSocialController.logout(provider);
+        route(provider).logout(provider);
+    }
+
+    /**
+     * Registers the given provider instance at runtime, replacing any provider
+     * loaded for the same <code>IProvider.Provider</code>.
+     * Call this after <code>initialize</code>.
+     *
+     * @param provider the provider instance to register, social providers
+     *                 are registered for social actions as well
+     */
+    public void registerProvider(IAuthProvider provider) {
+        if (provider instanceof ISocialProvider) {
+            mSocialController.registerProvider((ISocialProvider) provider);
+        } else {
+            mAuthController.registerProvider(provider);
         }
     }
 
+    /**
+     * Unregisters the provider instance registered for the given provider.
+     * Call this after <code>initialize</code>.
+     *
+     * @param provider the provider to unregister
+     */
+    public void unregisterProvider(IProvider.Provider provider) {
+        mAuthController.unregisterProvider(provider);
+        mSocialController.unregisterProvider(provider);
+    }
+
     /**
      * Fetches the user's profile for the given provider from the local device storage
      *
@@ -193,6 +248,23 @@ public class SoomlaProfile {
         mSocialController.updateStatus(provider, status, payload, reward);
     }
 
+    /**
+     * Shares the given status to the user's feed on several providers at once.
+     * A <code>MultiSocialActionFinishedEvent</code> with the outcome on every
+     * provider is posted once all of them are done.
+     *
+     * @param providers    The providers to use
+     * @param status       The text to share
+     * @param payload      a String to receive when the function returns.
+     * @param reward       The reward to give the user, at most once
+     * @param rewardPolicy Decides whether the reward is granted when the status was
+     *                     shared on any of the providers or only on all of them
+     */
+    public void updateStatus(Set<IProvider.Provider> providers, String status, String payload,
+                             final Reward reward, RewardPolicy rewardPolicy) {
+        mSocialController.updateStatus(providers, status, payload, reward, rewardPolicy);
+    }
+
     /**
      * Shares the given status to the user's feed and grants the user a reward.
      * Using the provider's native dialog (when available).
@@ -271,6 +343,33 @@ public class SoomlaProfile {
         mSocialController.updateStory(provider, message, name, caption, description, link, picture, payload, reward);
     }
 
+    /**
+     * Shares a story to the user's feed on several providers at once.
+     * A <code>MultiSocialActionFinishedEvent</code> with the outcome on every
+     * provider is posted once all of them are done.
+     *
+     * @param providers    The providers to use
+     * @param message      The main text which will appear in the story
+     * @param name         The headline for the link which will be integrated in the
+     *                     story
+     * @param caption      The sub-headline for the link which will be
+     *                     integrated in the story
+     * @param description  The description for the link which will be
+     *                     integrated in the story
+     * @param link         The link which will be integrated into the user's story
+     * @param picture      a Link to a picture which will be featured in the link
+     * @param payload      a String to receive when the function returns.
+     * @param reward       The reward which will be granted to the user, at most once
+     * @param rewardPolicy Decides whether the reward is granted when the story was
+     *                     shared on any of the providers or only on all of them
+     */
+    public void updateStory(Set<IProvider.Provider> providers, String message, String name, String caption,
+                            String description, String link, String picture, String payload,
+                            final Reward reward, RewardPolicy rewardPolicy) {
+        mSocialController.updateStory(providers, message, name, caption, description, link, picture,
+                payload, reward, rewardPolicy);
+    }
+
     /**
      * Shares a story to the user's feed and grants the user a reward.
      * Using the provider's native dialog (when available).
@@ -413,6 +512,131 @@ public class SoomlaProfile {
         mSocialController.getContacts(provider, payload, reward);
     }
 
+    /**
+     * Sets how long contacts fetched with <code>getContacts</code> are
+     * served from the local cache. Stale cached contacts are still delivered
+     * first, and refreshed from the network right after.
+     *
+     * @param ttlMillis the time-to-live of cached contacts in milliseconds,
+     *                  0 (the default) disables the cache
+     */
+    public void setContactsCacheTTL(long ttlMillis) {
+        mSocialController.setContactsCacheTTL(ttlMillis);
+    }
+
+    /**
+     * Sets how failed requests are retried. Only fetching contacts and feeds
+     * is retried, and only after transient (network or rate limit) failures.
+     * Requests aren't retried unless a policy is set, e.g.
+     * <code>RetryPolicy.DEFAULT</code>.
+     *
+     * @param retryPolicy the retry policy, <code>RetryPolicy.NONE</code> (the
+     *                    default) to disable retries
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mSocialController.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Limits how often the given action may be requested from the given
+     * provider. Requests beyond the limit aren't sent and fail with a
+     * rate limited error (reads are retried if the wait is short enough).
+     *
+     * @param provider the provider to limit
+     * @param socialActionType the action to limit
+     * @param limit the number of requests allowed per window
+     * @param windowMillis the length of the window in milliseconds
+     */
+    public void setRateLimit(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType,
+                             int limit, long windowMillis) {
+        mSocialController.setRateLimit(provider, socialActionType, limit, windowMillis);
+    }
+
+    /**
+     * Enables or disables the offline outbox. When enabled, statuses, stories
+     * and images (shared from a file) which can't be sent while the device is
+     * offline are kept and sent once it's back online.
+     *
+     * @param enabled true to enable the outbox, false (the default) to fail
+     *                actions when offline
+     */
+    public void setOutboxEnabled(boolean enabled) {
+        mSocialController.setOutboxEnabled(enabled);
+    }
+
+    /**
+     * Limits the number of actions waiting in the offline outbox and how long
+     * they wait before they're dropped
+     *
+     * @param maxActions the maximum number of actions waiting in the outbox
+     * @param maxAgeMillis the maximum time an action waits in the outbox
+     */
+    public void setOutboxLimits(int maxActions, long maxAgeMillis) {
+        mSocialController.setOutboxLimits(maxActions, maxAgeMillis);
+    }
+
+    /**
+     * @return the number of actions waiting in the offline outbox
+     */
+    public int getOutboxSize() {
+        return mSocialController.getOutboxSize();
+    }
+
+    /**
+     * Identical contacts and feed reads made while one is already in flight
+     * share its outcome instead of going to the network again.
+     *
+     * @return the number of reads which were saved that way
+     */
+    public long getSavedReadCount() {
+        return mSocialController.getSavedReadCount();
+    }
+
+    /**
+     * @return the number of contacts and feed reads which were sent to a
+     * provider
+     */
+    public long getIssuedReadCount() {
+        return mSocialController.getIssuedReadCount();
+    }
+
+    /**
+     * Fetches a single page of the user's contact list and grants the user a
+     * reward when the first page is fetched.
+     * Use the <code>NextCursor</code> of the received <code>GetContactsFinishedEvent</code>
+     * to fetch the next page, as long as its <code>HasMore</code> is true.
+     *
+     * @param provider The provider to use
+     * @param cursor   The cursor of the page to fetch, null for the first page
+     * @param pageSize The preferred amount of contacts in a page
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void getContacts(IProvider.Provider provider, String cursor, int pageSize,
+                            String payload, final Reward reward) throws ProviderNotFoundException {
+        mSocialController.getContacts(provider, cursor, pageSize, payload, reward);
+    }
+
+    /**
+     * Syncs the user's whole contact list in the background, for providers
+     * which support it (currently Twitter). Every page is delivered with a
+     * <code>ContactsSyncPageEvent</code>, and a <code>ContactsSyncFinishedEvent</code>
+     * is fired when the sync is done. An interrupted sync resumes where it
+     * stopped the next time it's called.
+     *
+     * @param provider    The provider to use
+     * @param incremental true to deliver only the contacts added since the
+     *                    previous sync
+     * @param payload     a String to receive when the function returns.
+     * @throws ProviderNotFoundException if the supplied provider is not
+     *                                   supported by the framework
+     */
+    public void syncContacts(IProvider.Provider provider, boolean incremental, String payload) throws ProviderNotFoundException {
+        mSocialController.syncContacts(provider, incremental, payload);
+    }
+
     /**
      * Fetches the user's feed and grants the user a reward.
      *
@@ -438,6 +662,147 @@ public class SoomlaProfile {
         mSocialController.getFeed(provider, payload, reward);
     }
 
+    /**
+     * Logs in to the given provider, like <code>login</code>, and returns the
+     * future of the user's profile
+     *
+     * @param activity The parent activity
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to give the user for logging in.
+     * @return the future of the user's profile, failed if the provider is
+     * not supported by the framework
+     */
+    public ProfileFuture<UserProfile> loginAsync(Activity activity, final IProvider.Provider provider,
+                                                 String payload, final Reward reward) {
+        try {
+            return route(provider).loginAsync(activity, provider, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Shares the given status to the user's feed, like <code>updateStatus</code>,
+     * and returns its future
+     *
+     * @param provider The provider to use
+     * @param status   The text to share
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to give the user
+     * @return a future which completes when the status is shared, failed if
+     * the provider is not supported by the framework
+     */
+    public ProfileFuture<Void> updateStatusAsync(IProvider.Provider provider, String status,
+                                                 String payload, final Reward reward) {
+        try {
+            return mSocialController.updateStatusAsync(provider, status, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Shares a photo to the user's feed, like <code>uploadImage</code>, and
+     * returns its future
+     *
+     * @param provider The provider to use
+     * @param message  A text that will accompany the image
+     * @param filePath The desired image's location on the device
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to give the user
+     * @return a future which completes when the photo is shared, failed if
+     * the provider is not supported by the framework
+     */
+    public ProfileFuture<Void> uploadImageAsync(IProvider.Provider provider, String message, String filePath,
+                                                String payload, final Reward reward) {
+        try {
+            return mSocialController.uploadImageAsync(provider, message, filePath, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Shares a photo to the user's feed, like <code>uploadImage</code>, and
+     * returns its future
+     *
+     * @param provider    The provider to use
+     * @param message     A text that will accompany the image
+     * @param fileName    The desired image's file name
+     * @param bitmap      The image to share
+     * @param jpegQuality Image quality, number from 0 to 100
+     * @param payload     a String to receive when the function returns.
+     * @param reward      The reward to give the user
+     * @return a future which completes when the photo is shared, failed if
+     * the provider is not supported by the framework
+     */
+    public ProfileFuture<Void> uploadImageAsync(IProvider.Provider provider, String message, String fileName,
+                                                Bitmap bitmap, int jpegQuality, String payload, final Reward reward) {
+        try {
+            return mSocialController.uploadImageAsync(provider, message, fileName, bitmap, jpegQuality, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Fetches the user's contact list, like <code>getContacts</code>, and
+     * returns its future. When the contacts cache is enabled the future
+     * completes with the first contacts delivered.
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @return the future of the contacts, failed if the provider is not
+     * supported by the framework
+     */
+    public ProfileFuture<List<UserProfile>> getContactsAsync(IProvider.Provider provider,
+                                                             String payload, final Reward reward) {
+        try {
+            return mSocialController.getContactsAsync(provider, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Fetches the user's feed, like <code>getFeed</code>, and returns its future
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @return the future of the feed posts, failed if the provider is not
+     * supported by the framework
+     */
+    public ProfileFuture<List<String>> getFeedAsync(IProvider.Provider provider,
+                                                    String payload, final Reward reward) {
+        try {
+            return mSocialController.getFeedAsync(provider, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
+    /**
+     * Fetches the user's feed as structured feed items, and grants the user a
+     * reward
+     *
+     * @param provider The provider to use
+     * @param payload  a String to receive when the function returns.
+     * @param reward   The reward to grant
+     * @return the future of the feed items, failed if the provider is not
+     * supported by the framework
+     */
+    public ProfileFuture<List<FeedItem>> getFeedItems(IProvider.Provider provider,
+                                                      String payload, final Reward reward) {
+        try {
+            return mSocialController.getFeedItems(provider, payload, reward);
+        } catch (ProviderNotFoundException e) {
+            return providerNotFound(provider);
+        }
+    }
+
     /**
      * Opens up a provider page to "like" (external), and grants the user the supplied reward
      *
@@ -462,15 +827,47 @@ public class SoomlaProfile {
     public void openAppRatingPage(Context context) {
         SoomlaMarketUtils.openMarketAppPage(context);
 
-        BusProvider.getInstance().post(new UserRatingEvent());
+        ProfileEventDispatcher.post(new UserRatingEvent());
     }
 
     /**
      * Private Members *
      */
 
-    private AuthController mAuthController;
+    /**
+     * Maps every loaded provider to the controller which handles it, so
+     * dispatching a call is a single lookup. Auth providers take precedence,
+     * since social providers are auth providers as well.
+     */
+    private static EnumMap<IProvider.Provider, AuthController<?>> buildRoutes(
+            AuthController<?> authController, SocialController socialController) {
+        EnumMap<IProvider.Provider, AuthController<?>> routes =
+                new EnumMap<IProvider.Provider, AuthController<?>>(IProvider.Provider.class);
+        for (IProvider.Provider provider : socialController.getLoadedProviders()) {
+            routes.put(provider, socialController);
+        }
+        for (IProvider.Provider provider : authController.getLoadedProviders()) {
+            routes.put(provider, authController);
+        }
+        return routes;
+    }
+
+    private static <T> ProfileFuture<T> providerNotFound(IProvider.Provider provider) {
+        return ProfileFuture.failed("Provider not found: " + provider);
+    }
+
+    private AuthController<?> route(IProvider.Provider provider) throws ProviderNotFoundException {
+        AuthController<?> controller = mRoutes.get(provider);
+        if (controller == null) {
+            throw new ProviderNotFoundException(provider);
+        }
+        return controller;
+    }
+
+    private AuthController<IAuthProvider> mAuthController;
     private SocialController mSocialController;
+    private volatile EnumMap<IProvider.Provider, AuthController<?>> mRoutes =
+            new EnumMap<IProvider.Provider, AuthController<?>>(IProvider.Provider.class);
 
 
     /**
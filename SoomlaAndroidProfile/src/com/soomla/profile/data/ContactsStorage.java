@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.data;
+
+import android.text.TextUtils;
+
+import com.soomla.data.KeyValueStorage;
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.domain.UserProfile;
+
+import java.util.List;
+
+/**
+ * A utility class for caching the user's contacts locally on the device.
+ * <p/>
+ * Contacts are kept per provider together with the time they were fetched
+ * and the ID of the user they belong to, so contacts of a user who logged out
+ * (or switched accounts) are never returned.
+ */
+public class ContactsStorage {
+
+    /**
+     * Persists the given contacts as the current contacts of the logged in
+     * user of the given provider
+     *
+     * @param provider the provider the contacts were fetched from
+     * @param contacts the contacts to save
+     */
+    public static void setContacts(IProvider.Provider provider, List<UserProfile> contacts) {
+        UserProfile owner = UserProfileStorage.getUserProfile(provider);
+        if (owner == null) {
+            return;
+        }
+
+        KeyValueStorage.setValue(keyContacts(provider), UserProfileCodec.encodeListToString(contacts));
+        KeyValueStorage.setValue(keyContactsOwner(provider), owner.getProfileId());
+        KeyValueStorage.setValue(keyContactsUpdated(provider), String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the contacts cached for the given provider
+     *
+     * @param provider the provider to remove the contacts of
+     */
+    public static void removeContacts(IProvider.Provider provider) {
+        KeyValueStorage.deleteKeyValue(keyContacts(provider));
+        KeyValueStorage.deleteKeyValue(keyContactsOwner(provider));
+        KeyValueStorage.deleteKeyValue(keyContactsUpdated(provider));
+    }
+
+    /**
+     * Fetches the contacts cached for the logged in user of the given provider
+     *
+     * @param provider the provider to fetch the contacts of
+     * @return the cached contacts, or null if there are none
+     */
+    public static List<UserProfile> getContacts(IProvider.Provider provider) {
+        if (!isOwnedByStoredUser(provider)) {
+            return null;
+        }
+        return UserProfileCodec.decodeListFromString(KeyValueStorage.getValue(keyContacts(provider)));
+    }
+
+    /**
+     * Checks how long ago the contacts of the given provider were cached
+     *
+     * @param provider the provider to check
+     * @return the age of the cached contacts in milliseconds, or -1 if there
+     * are no cached contacts
+     */
+    public static long getContactsAge(IProvider.Provider provider) {
+        String updated = KeyValueStorage.getValue(keyContactsUpdated(provider));
+        if (TextUtils.isEmpty(updated)) {
+            return -1;
+        }
+
+        try {
+            return Math.max(0, System.currentTimeMillis() - Long.parseLong(updated));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+    /** Private Members **/
+
+    private static boolean isOwnedByStoredUser(IProvider.Provider provider) {
+        UserProfile owner = UserProfileStorage.getUserProfile(provider);
+        String ownerId = KeyValueStorage.getValue(keyContactsOwner(provider));
+        return owner != null && !TextUtils.isEmpty(ownerId) && ownerId.equals(owner.getProfileId());
+    }
+
+    private static String keyContacts(IProvider.Provider provider) {
+        return DB_KEY_PREFIX + "contacts." + provider.toString();
+    }
+
+    private static String keyContactsOwner(IProvider.Provider provider) {
+        return keyContacts(provider) + ".owner";
+    }
+
+    private static String keyContactsUpdated(IProvider.Provider provider) {
+        return keyContacts(provider) + ".updated";
+    }
+
+    private static final String DB_KEY_PREFIX = "soomla.profile.";
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.data;
+
+import com.soomla.SoomlaApp;
+import com.soomla.SoomlaUtils;
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.social.ISocialProvider;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A durable, append-only log of social actions waiting to be sent.
+ * <p/>
+ * Every change is appended to the log as a small binary record: adding an
+ * entry writes the whole entry, removing one writes only its key. Loading
+ * replays the records in order, so the pending entries come back in the order
+ * they were added. A record cut short by a crash is ignored, and the log is
+ * rewritten (compacted) once it's mostly made of removed entries.
+ */
+public class OutboxStorage {
+
+    /**
+     * A social action waiting in the outbox
+     */
+    public static class Entry {
+
+        public final String Key;
+        public final long CreatedAt;
+        public final IProvider.Provider Provider;
+        public final ISocialProvider.SocialActionType SocialActionType;
+        public final String[] Params;
+        public final String Payload;
+        public final String RewardJSON;
+
+        /**
+         * Constructor, the key of the entry is derived from its contents so
+         * the same action is never queued twice
+         *
+         * @param provider the provider to send the action to
+         * @param socialActionType the type of the action
+         * @param params the parameters of the action, in the order the
+         *               provider expects them
+         * @param payload the payload of the action
+         * @param rewardJSON the reward to grant when the action succeeds, as
+         *                   JSON, or null
+         */
+        public Entry(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType,
+                     String[] params, String payload, String rewardJSON) {
+            this(keyOf(provider, socialActionType, params, payload), System.currentTimeMillis(),
+                    provider, socialActionType, params, payload, rewardJSON);
+        }
+
+        Entry(String key, long createdAt, IProvider.Provider provider,
+              ISocialProvider.SocialActionType socialActionType,
+              String[] params, String payload, String rewardJSON) {
+            Key = key;
+            CreatedAt = createdAt;
+            Provider = provider;
+            SocialActionType = socialActionType;
+            Params = params;
+            Payload = payload;
+            RewardJSON = rewardJSON;
+        }
+    }
+
+    /**
+     * Loads the pending entries, oldest first
+     *
+     * @return the pending entries
+     */
+    public static synchronized List<Entry> load() {
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        File file = outboxFile();
+        if (!file.exists()) {
+            return new ArrayList<Entry>();
+        }
+
+        int records = 0;
+        int version = VERSION;
+        boolean truncated = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            version = checkVersion(in.readUnsignedByte());
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+
+                if (op == OP_ADD) {
+                    Entry entry = readEntry(in, version);
+                    if (!entries.containsKey(entry.Key)) {
+                        entries.put(entry.Key, entry);
+                    }
+                } else if (op == OP_REMOVE) {
+                    entries.remove(readString(in, version));
+                } else {
+                    throw new IOException("Unknown outbox record: " + op);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            SoomlaUtils.LogWarning(TAG, "Outbox ends with a partial record, ignoring it");
+            truncated = true;
+        } catch (IOException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't read outbox: " + e.getMessage());
+            truncated = true;
+        } finally {
+            closeQuietly(in);
+        }
+
+        List<Entry> result = new ArrayList<Entry>(entries.values());
+        // an outbox in the old format is rewritten before anything is appended to it
+        if (truncated || version != VERSION || records > COMPACT_MIN_RECORDS && records > result.size() * 2) {
+            compact(result);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the given entry to the outbox
+     *
+     * @param entry the entry to add
+     * @return true if the entry was persisted
+     */
+    public static synchronized boolean add(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(OP_ADD);
+            writeEntry(out, entry);
+            out.flush();
+        } catch (IOException e) {
+            // never thrown when writing to memory
+            SoomlaUtils.LogError(TAG, "Couldn't encode outbox entry: " + e.getMessage());
+            return false;
+        }
+        return append(bytes.toByteArray());
+    }
+
+    /**
+     * Marks the entry with the given key as sent (or dropped)
+     *
+     * @param key the key of the entry to remove
+     */
+    public static synchronized void remove(String key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(OP_REMOVE);
+            writeString(out, key);
+            out.flush();
+        } catch (IOException e) {
+            // never thrown when writing to memory
+            SoomlaUtils.LogError(TAG, "Couldn't encode outbox removal: " + e.getMessage());
+            return;
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Rewrites the outbox so that it holds only the given entries
+     *
+     * @param entries the entries to keep, oldest first
+     */
+    public static synchronized void compact(List<Entry> entries) {
+        File file = outboxFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tempFile));
+            out.writeByte(VERSION);
+            for (Entry entry : entries) {
+                out.writeByte(OP_ADD);
+                writeEntry(out, entry);
+            }
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Couldn't replace " + file);
+            }
+        } catch (IOException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't compact outbox: " + e.getMessage());
+            tempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Computes the key of an action, actions with the same provider, type,
+     * parameters and payload have the same key
+     *
+     * @return the key of the action
+     */
+    public static String keyOf(IProvider.Provider provider, ISocialProvider.SocialActionType socialActionType,
+                               String[] params, String payload) {
+        StringBuilder contents = new StringBuilder();
+        contents.append(provider.getValue()).append('|').append(socialActionType.getValue());
+        for (String param : params) {
+            // lengths keep ("ab", "c") and ("a", "bc") apart
+            contents.append('|').append(param != null ? param.length() + ":" + param : "-");
+        }
+        contents.append('|').append(payload != null ? payload.length() + ":" + payload : "-");
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(contents.toString().getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(contents.toString().hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(contents.toString().hashCode());
+        }
+    }
+
+
+    /** Private Members **/
+
+    private static boolean append(byte[] record) {
+        File file = outboxFile();
+        boolean isNew = !file.exists() || file.length() == 0;
+        FileOutputStream out = null;
+        try {
+            if (!isNew && readVersion(file) != VERSION) {
+                throw new IOException("Outbox is in an older format and wasn't loaded yet");
+            }
+            out = new FileOutputStream(file, true);
+            if (isNew) {
+                out.write(VERSION);
+            }
+            out.write(record);
+            out.getFD().sync();
+            return true;
+        } catch (FileNotFoundException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't open outbox: " + e.getMessage());
+        } catch (IOException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't write to outbox: " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+        return false;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeString(out, entry.Key);
+        out.writeLong(entry.CreatedAt);
+        out.writeByte(entry.Provider.getValue());
+        out.writeByte(entry.SocialActionType.getValue());
+        out.writeByte(entry.Params.length);
+        for (String param : entry.Params) {
+            writeNullableString(out, param);
+        }
+        writeNullableString(out, entry.Payload);
+        writeNullableString(out, entry.RewardJSON);
+    }
+
+    private static Entry readEntry(DataInputStream in, int version) throws IOException {
+        String key = readString(in, version);
+        long createdAt = in.readLong();
+        IProvider.Provider provider = providerOf(in.readUnsignedByte());
+        ISocialProvider.SocialActionType socialActionType = socialActionTypeOf(in.readUnsignedByte());
+        String[] params = new String[in.readUnsignedByte()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = readNullableString(in, version);
+        }
+        String payload = readNullableString(in, version);
+        String rewardJSON = readNullableString(in, version);
+        return new Entry(key, createdAt, provider, socialActionType, params, payload, rewardJSON);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in, int version) throws IOException {
+        return in.readBoolean() ? readString(in, version) : null;
+    }
+
+    /**
+     * Writes a string as its UTF-8 bytes after their length, unlike
+     * <code>writeUTF</code> it isn't limited to 64KB
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(UTF_8);
+        writeLength(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in, int version) throws IOException {
+        if (version == VERSION_WRITE_UTF) {
+            return in.readUTF();
+        }
+
+        byte[] utf8 = new byte[readLength(in)];
+        in.readFully(utf8);
+        return new String(utf8, UTF_8);
+    }
+
+    /**
+     * Writes a length 7 bits at a time, so short strings take one byte
+     */
+    private static void writeLength(DataOutputStream out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length < 0) {
+                    break;
+                }
+                return length;
+            }
+        }
+        throw new IOException("Corrupt string length");
+    }
+
+    private static int readVersion(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return in.read();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static int checkVersion(int version) throws IOException {
+        if (version != VERSION && version != VERSION_WRITE_UTF) {
+            throw new IOException("Unsupported outbox format version: " + version);
+        }
+        return version;
+    }
+
+    private static IProvider.Provider providerOf(int value) throws IOException {
+        for (IProvider.Provider provider : IProvider.Provider.values()) {
+            if (provider.getValue() == value) {
+                return provider;
+            }
+        }
+        throw new IOException("Unknown provider value: " + value);
+    }
+
+    private static ISocialProvider.SocialActionType socialActionTypeOf(int value) throws IOException {
+        for (ISocialProvider.SocialActionType socialActionType : ISocialProvider.SocialActionType.values()) {
+            if (socialActionType.getValue() == value) {
+                return socialActionType;
+            }
+        }
+        throw new IOException("Unknown social action type value: " + value);
+    }
+
+    private static File outboxFile() {
+        return new File(SoomlaApp.getAppContext().getFilesDir(), OUTBOX_FILE_NAME);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static final String TAG = "SOOMLA OutboxStorage";
+    private static final String OUTBOX_FILE_NAME = "soomla.profile.outbox";
+    private static final int VERSION = 2;
+    // strings were written with writeUTF, limited to 64KB
+    private static final int VERSION_WRITE_UTF = 1;
+    private static final String UTF_8 = "UTF-8";
+    private static final int OP_ADD = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int COMPACT_MIN_RECORDS = 32;
+    private static final int INITIAL_RECORD_SIZE = 256;
+}
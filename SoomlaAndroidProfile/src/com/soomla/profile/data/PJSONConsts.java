@@ -18,7 +18,8 @@ package com.soomla.profile.data;
 
 /**
  * a Utility class which contains definitions for String consts
- * which allow for JSON conversion from/to <code>UserProfile</code>
+ * which allow for JSON conversion from/to <code>UserProfile</code> and
+ * <code>FeedItem</code>
  */
 public class PJSONConsts {
 
@@ -37,4 +38,15 @@ public class PJSONConsts {
     public static final String UP_BIRTHDAY         = "birthday";
     public static final String UP_ACCESSTOKEN      = "accessToken";
     public static final String UP_SECRETKEY        = "secretKey";
+
+
+    /** Feed Item **/
+
+    public static final String FI_PROVIDER         = "provider";
+    public static final String FI_ID               = "id";
+    public static final String FI_CREATEDAT        = "createdAt";
+    public static final String FI_AUTHORID         = "authorId";
+    public static final String FI_AUTHORNAME       = "authorName";
+    public static final String FI_TEXT             = "text";
+    public static final String FI_MEDIAURLS        = "mediaUrls";
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.data;
+
+import android.text.TextUtils;
+import android.util.Base64;
+
+import com.soomla.SoomlaUtils;
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.domain.UserProfile;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, versioned binary format for <code>UserProfile</code> and lists
+ * of them, to be used where profiles are persisted or passed around in bulk.
+ * <p/>
+ * A profile is written as a bit mask of the non-null fields followed by those
+ * fields, each as a length prefixed UTF-8 string. Version 1 wrote the fields
+ * with <code>writeUTF</code>, which can't hold more than 64KB, and is still
+ * read. When stored as a string the bytes are Base64 encoded and prefixed,
+ * so strings written before this format existed (plain JSON) can still be
+ * told apart and read.
+ */
+public class UserProfileCodec {
+
+    /**
+     * The version of the binary format written by this codec
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Encodes the given user profile
+     *
+     * @param userProfile the user profile to encode
+     * @return the binary representation of the user profile
+     */
+    public static byte[] encode(UserProfile userProfile) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_PROFILE_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            writeProfile(out, userProfile);
+            out.flush();
+        } catch (IOException e) {
+            // writing to memory only fails on a bug, never return a partial profile
+            throw new IllegalStateException("Couldn't encode UserProfile", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the given list of user profiles
+     *
+     * @param userProfiles the user profiles to encode
+     * @return the binary representation of the user profiles
+     */
+    public static byte[] encodeList(List<UserProfile> userProfiles) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_PROFILE_SIZE * userProfiles.size() + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeInt(userProfiles.size());
+            for (UserProfile userProfile : userProfiles) {
+                writeProfile(out, userProfile);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // writing to memory only fails on a bug, never return a partial list
+            throw new IllegalStateException("Couldn't encode UserProfile list", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a user profile encoded with <code>encode</code>
+     *
+     * @param data the binary representation of the user profile
+     * @return the decoded user profile
+     * @throws IOException if the data is corrupt or of an unknown version
+     */
+    public static UserProfile decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = checkVersion(in.readUnsignedByte());
+        return readProfile(in, version);
+    }
+
+    /**
+     * Decodes a list of user profiles encoded with <code>encodeList</code>
+     *
+     * @param data the binary representation of the user profiles
+     * @return the decoded user profiles
+     * @throws IOException if the data is corrupt or of an unknown version
+     */
+    public static List<UserProfile> decodeList(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = checkVersion(in.readUnsignedByte());
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative UserProfile count: " + count);
+        }
+
+        List<UserProfile> userProfiles = new ArrayList<UserProfile>(count);
+        for (int i = 0; i < count; i++) {
+            userProfiles.add(readProfile(in, version));
+        }
+        return userProfiles;
+    }
+
+    /**
+     * Encodes the given user profile into a string which can be kept in
+     * <code>KeyValueStorage</code>
+     *
+     * @param userProfile the user profile to encode
+     * @return the string representation of the user profile
+     */
+    public static String encodeToString(UserProfile userProfile) {
+        return STRING_PREFIX + Base64.encodeToString(encode(userProfile), Base64.NO_WRAP);
+    }
+
+    /**
+     * Encodes the given list of user profiles into a string which can be
+     * kept in <code>KeyValueStorage</code>
+     *
+     * @param userProfiles the user profiles to encode
+     * @return the string representation of the user profiles
+     */
+    public static String encodeListToString(List<UserProfile> userProfiles) {
+        return STRING_PREFIX + Base64.encodeToString(encodeList(userProfiles), Base64.NO_WRAP);
+    }
+
+    /**
+     * Decodes a user profile from a string created by <code>encodeToString</code>,
+     * or from a legacy JSON string created by <code>UserProfile.toJSONObject</code>
+     *
+     * @param value the string representation of the user profile
+     * @return the decoded user profile, or null if it can't be decoded
+     */
+    public static UserProfile decodeFromString(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return null;
+        }
+
+        try {
+            if (value.startsWith(STRING_PREFIX)) {
+                return decode(Base64.decode(value.substring(STRING_PREFIX.length()), Base64.NO_WRAP));
+            }
+            if (value.charAt(0) == '{') {
+                return new UserProfile(new JSONObject(value));
+            }
+            SoomlaUtils.LogError(TAG, "Unknown UserProfile format: " + value);
+        } catch (IOException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't decode UserProfile: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't decode UserProfile: " + e.getMessage());
+        } catch (JSONException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't create UserProfile from json: " + value);
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes a list of user profiles from a string created by
+     * <code>encodeListToString</code>
+     *
+     * @param value the string representation of the user profiles
+     * @return the decoded user profiles, or null if they can't be decoded
+     */
+    public static List<UserProfile> decodeListFromString(String value) {
+        if (TextUtils.isEmpty(value) || !value.startsWith(STRING_PREFIX)) {
+            return null;
+        }
+
+        try {
+            return decodeList(Base64.decode(value.substring(STRING_PREFIX.length()), Base64.NO_WRAP));
+        } catch (IOException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't decode UserProfile list: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't decode UserProfile list: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+
+    /** Private Members **/
+
+    private static int checkVersion(int version) throws IOException {
+        if (version != VERSION && version != VERSION_WRITE_UTF) {
+            throw new IOException("Unsupported UserProfile format version: " + version);
+        }
+        return version;
+    }
+
+    private static void writeProfile(DataOutputStream out, UserProfile userProfile) throws IOException {
+        String[] fields = {
+                userProfile.getProfileId(),
+                userProfile.getUsername(),
+                userProfile.getEmail(),
+                userProfile.getFirstName(),
+                userProfile.getLastName(),
+                userProfile.getAvatarLink(),
+                userProfile.getLocation(),
+                userProfile.getGender(),
+                userProfile.getLanguage(),
+                userProfile.getBirthday(),
+                userProfile.getAccessToken(),
+                userProfile.getSecretKey()
+        };
+
+        int presentFields = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                presentFields |= 1 << i;
+            }
+        }
+
+        out.writeByte(userProfile.getProvider().getValue());
+        out.writeShort(presentFields);
+        for (String field : fields) {
+            if (field != null) {
+                writeString(out, field);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(UTF_8);
+        writeLength(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[readLength(in)];
+        in.readFully(utf8);
+        return new String(utf8, UTF_8);
+    }
+
+    /**
+     * Writes a length 7 bits at a time, so short strings take one byte
+     */
+    private static void writeLength(DataOutputStream out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length < 0) {
+                    break;
+                }
+                return length;
+            }
+        }
+        throw new IOException("Corrupt string length");
+    }
+
+    private static UserProfile readProfile(DataInputStream in, int version) throws IOException {
+        IProvider.Provider provider = providerOf(in.readUnsignedByte());
+        int presentFields = in.readUnsignedShort();
+
+        String[] fields = new String[FIELD_COUNT];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if ((presentFields & (1 << i)) != 0) {
+                fields[i] = version == VERSION_WRITE_UTF ? in.readUTF() : readString(in);
+            }
+        }
+
+        UserProfile userProfile = new UserProfile(provider,
+                fields[0], fields[1], fields[2], fields[3], fields[4]);
+        userProfile.setAvatarLink(fields[5]);
+        userProfile.setLocation(fields[6]);
+        userProfile.setGender(fields[7]);
+        userProfile.setLanguage(fields[8]);
+        userProfile.setBirthday(fields[9]);
+        userProfile.setAccessToken(fields[10]);
+        userProfile.setSecretKey(fields[11]);
+        return userProfile;
+    }
+
+    private static IProvider.Provider providerOf(int value) throws IOException {
+        for (IProvider.Provider provider : IProvider.Provider.values()) {
+            if (provider.getValue() == value) {
+                return provider;
+            }
+        }
+        throw new IOException("Unknown provider value: " + value);
+    }
+
+    private static final String TAG = "SOOMLA UserProfileCodec";
+    private static final String STRING_PREFIX = "soomla.up1:";
+    private static final int VERSION_WRITE_UTF = 1;
+    private static final String UTF_8 = "UTF-8";
+    private static final int FIELD_COUNT = 12;
+    private static final int INITIAL_PROFILE_SIZE = 256;
+}
@@ -16,22 +16,25 @@
 
 package com.soomla.profile.data;
 
-import android.text.TextUtils;
-
-import com.soomla.BusProvider;
-import com.soomla.SoomlaUtils;
 import com.soomla.data.KeyValueStorage;
+import com.soomla.profile.ProfileEventDispatcher;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.domain.UserProfile;
 import com.soomla.profile.events.UserProfileUpdatedEvent;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.EnumMap;
+import java.util.Map;
 
 
 /**
  * A utility class for fetching and storing user profile info locally on
  * the device.
+ * <p/>
+ * Profiles are cached in memory per provider. The cache is written through
+ * on save and invalidated on removal, so the stored JSON is only read and
+ * decoded on the first lookup of each provider. The cache keeps its own
+ * copies, so changing a saved or fetched profile doesn't change what later
+ * lookups return.
  */
 public class UserProfileStorage {
 
@@ -53,13 +56,17 @@ public class UserProfileStorage {
      * @param notify should an event regarding the save be fired
      */
     public static void setUserProfile(UserProfile userProfile, boolean notify) {
-        String userProfileJSON = userProfile.toJSONObject().toString();
+        String userProfileValue = UserProfileCodec.encodeToString(userProfile);
         String key = keyUserProfile(userProfile.getProvider());
 
-        KeyValueStorage.setValue(key, userProfileJSON);
+        KeyValueStorage.setValue(key, userProfileValue);
+
+        synchronized (PROFILE_CACHE) {
+            PROFILE_CACHE.put(userProfile.getProvider(), new UserProfile(userProfile));
+        }
 
         if (notify) {
-            BusProvider.getInstance().post(new UserProfileUpdatedEvent(userProfile));
+            ProfileEventDispatcher.post(new UserProfileUpdatedEvent(userProfile));
         }
     }
 
@@ -72,37 +79,92 @@ public class UserProfileStorage {
         String key = keyUserProfile(userProfile.getProvider());
 
         KeyValueStorage.deleteKeyValue(key);
+
+        synchronized (PROFILE_CACHE) {
+            // keep a negative entry, there's nothing to read back for this provider
+            PROFILE_CACHE.put(userProfile.getProvider(), null);
+        }
     }
 
     /**
-     * Fetches the user profile stored for the given provider
+     * Fetches the user profile stored for the given provider.
+     * The returned instance is a copy, use <code>setUserProfile</code> to
+     * save changes to it.
      *
      * @param provider the provider which will be used to fetch the user profile
      * @return a user profile
      */
     public static UserProfile getUserProfile(IProvider.Provider provider) {
-        String userProfileJSON = KeyValueStorage.getValue(keyUserProfile(provider));
-        if (TextUtils.isEmpty(userProfileJSON)) {
-            return null;
+        synchronized (PROFILE_CACHE) {
+            if (PROFILE_CACHE.containsKey(provider)) {
+                sCacheHits++;
+                return copyOf(PROFILE_CACHE.get(provider));
+            }
+            sCacheMisses++;
         }
 
-        try {
-            JSONObject upJSON = new JSONObject(userProfileJSON);
-            return new UserProfile(upJSON);
-        } catch (JSONException e) {
-            SoomlaUtils.LogError(TAG, "Couldn't create UserProfile from json: " + userProfileJSON);
+        UserProfile userProfile = loadUserProfile(provider);
+
+        synchronized (PROFILE_CACHE) {
+            // a save or removal which raced with the load wins
+            if (!PROFILE_CACHE.containsKey(provider)) {
+                PROFILE_CACHE.put(provider, userProfile);
+            }
+            return copyOf(PROFILE_CACHE.get(provider));
         }
+    }
 
-        return null;
+    /**
+     * Drops all cached user profiles, the next lookups will read the device
+     * storage again
+     */
+    public static void clearCache() {
+        synchronized (PROFILE_CACHE) {
+            PROFILE_CACHE.clear();
+        }
+    }
+
+    /**
+     * @return the number of user profile lookups served from memory
+     */
+    public static long getCacheHits() {
+        synchronized (PROFILE_CACHE) {
+            return sCacheHits;
+        }
+    }
+
+    /**
+     * @return the number of user profile lookups which had to read the
+     * device storage
+     */
+    public static long getCacheMisses() {
+        synchronized (PROFILE_CACHE) {
+            return sCacheMisses;
+        }
     }
 
 
     /** Private Members **/
 
+    private static UserProfile loadUserProfile(IProvider.Provider provider) {
+        // profiles saved by older versions are JSON, the codec reads both
+        return UserProfileCodec.decodeFromString(KeyValueStorage.getValue(keyUserProfile(provider)));
+    }
+
+    private static UserProfile copyOf(UserProfile userProfile) {
+        return userProfile != null ? new UserProfile(userProfile) : null;
+    }
+
     private static String keyUserProfile(IProvider.Provider provider) {
         return DB_KEY_PREFIX + "userprofile." + provider.toString();
     }
 
     private static final String DB_KEY_PREFIX = "soomla.profile.";
     private static final String TAG = "SOOMLA UserProfileStorage";
+
+    // null values are cached too, they mark providers with no stored profile
+    private static final Map<IProvider.Provider, UserProfile> PROFILE_CACHE =
+            new EnumMap<IProvider.Provider, UserProfile>(IProvider.Provider.class);
+    private static long sCacheHits = 0;
+    private static long sCacheMisses = 0;
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.domain;
+
+import com.soomla.SoomlaUtils;
+import com.soomla.data.JSONConsts;
+import com.soomla.profile.data.PJSONConsts;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A domain object that represents a single post in the user's feed.
+ * <p/>
+ * Unlike the plain text feeds return, feed items keep the provider's ID of
+ * every post, so feeds can be cached, deduplicated and merged incrementally.
+ */
+public class FeedItem {
+
+    private static final String TAG = "SOOMLA FeedItem";
+
+    /**
+     * Constructor
+     *
+     * @param provider the provider the post was fetched from
+     * @param id the provider's ID of the post
+     * @param createdAt the time the post was created, in milliseconds since
+     *                  the epoch, or 0 if unknown
+     * @param authorId the profile ID of the post's author, or null if unknown
+     * @param authorName the display name of the post's author, or null if unknown
+     * @param text the text of the post
+     * @param mediaUrls links to the media (pictures, videos) attached to the post
+     */
+    public FeedItem(IProvider.Provider provider, String id, long createdAt, String authorId,
+                    String authorName, String text, List<String> mediaUrls) {
+        mProvider = provider;
+        mId = id;
+        mCreatedAt = createdAt;
+        mAuthorId = authorId;
+        mAuthorName = authorName;
+        mText = text;
+        mMediaUrls = mediaUrls != null ?
+                Collections.unmodifiableList(new ArrayList<String>(mediaUrls)) :
+                Collections.<String>emptyList();
+    }
+
+    /**
+     * Constructor.
+     * Generates an instance of <code>FeedItem</code> from the given
+     * <code>JSONObject</code>.
+     *
+     * @param jsonObject A JSONObject representation of the wanted
+     *                   <code>FeedItem</code>.
+     * @throws JSONException if the provided JSON is missing some of the data
+     */
+    public FeedItem(JSONObject jsonObject) throws JSONException {
+        this(IProvider.Provider.getEnum(jsonObject.getString(PJSONConsts.FI_PROVIDER)),
+                jsonObject.getString(PJSONConsts.FI_ID),
+                jsonObject.optLong(PJSONConsts.FI_CREATEDAT, 0),
+                jsonObject.optString(PJSONConsts.FI_AUTHORID, null),
+                jsonObject.optString(PJSONConsts.FI_AUTHORNAME, null),
+                jsonObject.optString(PJSONConsts.FI_TEXT, null),
+                mediaUrlsFromJSON(jsonObject.optJSONArray(PJSONConsts.FI_MEDIAURLS)));
+    }
+
+    /**
+     * Converts the current <code>FeedItem</code> to a JSONObject.
+     *
+     * @return A <code>JSONObject</code> representation of the current
+     * <code>FeedItem</code>.
+     */
+    public JSONObject toJSONObject() {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            jsonObject.put(JSONConsts.SOOM_CLASSNAME, SoomlaUtils.getClassName(this));
+            jsonObject.put(PJSONConsts.FI_PROVIDER, mProvider.toString());
+            jsonObject.put(PJSONConsts.FI_ID, mId);
+            jsonObject.put(PJSONConsts.FI_CREATEDAT, mCreatedAt);
+            jsonObject.put(PJSONConsts.FI_AUTHORID, mAuthorId);
+            jsonObject.put(PJSONConsts.FI_AUTHORNAME, mAuthorName);
+            jsonObject.put(PJSONConsts.FI_TEXT, mText);
+
+            JSONArray mediaUrls = new JSONArray();
+            for (String mediaUrl : mMediaUrls) {
+                mediaUrls.put(mediaUrl);
+            }
+            jsonObject.put(PJSONConsts.FI_MEDIAURLS, mediaUrls);
+        } catch (JSONException e) {
+            SoomlaUtils.LogError(TAG, "An error occurred while generating JSON object.");
+        }
+
+        return jsonObject;
+    }
+
+
+    /** Setters and Getters **/
+
+    public IProvider.Provider getProvider() {
+        return mProvider;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    public String getAuthorId() {
+        return mAuthorId;
+    }
+
+    public String getAuthorName() {
+        return mAuthorName;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    public List<String> getMediaUrls() {
+        return mMediaUrls;
+    }
+
+
+    /** Private Members **/
+
+    private static List<String> mediaUrlsFromJSON(JSONArray jsonArray) throws JSONException {
+        List<String> mediaUrls = new ArrayList<String>();
+        if (jsonArray != null) {
+            for (int i = 0; i < jsonArray.length(); i++) {
+                mediaUrls.add(jsonArray.getString(i));
+            }
+        }
+        return mediaUrls;
+    }
+
+    private final IProvider.Provider mProvider;
+    private final String mId;
+    private final long mCreatedAt;
+    private final String mAuthorId;
+    private final String mAuthorName;
+    private final String mText;
+    private final List<String> mMediaUrls;
+}
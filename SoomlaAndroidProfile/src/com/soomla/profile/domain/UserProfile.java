@@ -50,6 +50,27 @@ public class UserProfile {
         mLastName = lastName;
     }
 
+    /**
+     * Copy constructor
+     *
+     * @param userProfile the user profile to copy
+     */
+    public UserProfile(UserProfile userProfile) {
+        mProvider = userProfile.mProvider;
+        mProfileId = userProfile.mProfileId;
+        mUsername = userProfile.mUsername;
+        mEmail = userProfile.mEmail;
+        mFirstName = userProfile.mFirstName;
+        mLastName = userProfile.mLastName;
+        mAvatarLink = userProfile.mAvatarLink;
+        mLocation = userProfile.mLocation;
+        mGender = userProfile.mGender;
+        mLanguage = userProfile.mLanguage;
+        mBirthday = userProfile.mBirthday;
+        mAccessToken = userProfile.mAccessToken;
+        mSecretKey = userProfile.mSecretKey;
+    }
+
     /**
      * Constructor.
      * Generates an instance of <code>UserProfile</code> from the given
@@ -66,30 +87,14 @@ public class UserProfile {
         this.mEmail = jsonObject.getString(PJSONConsts.UP_EMAIL);
         this.mFirstName = jsonObject.getString(PJSONConsts.UP_FIRSTNAME);
         this.mLastName = jsonObject.getString(PJSONConsts.UP_LASTNAME);
-        try {
-            this.mAvatarLink = jsonObject.getString(PJSONConsts.UP_AVATAR);
-        } catch (JSONException ignored) {}
-        try {
-        this.mLocation = jsonObject.getString(PJSONConsts.UP_LOCATION);
-        } catch (JSONException ignored) {}
-        try {
-        this.mGender = jsonObject.getString(PJSONConsts.UP_GENDER);
-        } catch (JSONException ignored) {}
-        try {
-        this.mLanguage = jsonObject.getString(PJSONConsts.UP_LANGUAGE);
-        } catch (JSONException ignored) {}
-        try {
-        this.mBirthday = jsonObject.getString(PJSONConsts.UP_BIRTHDAY);
-        } catch (JSONException ignored) {}
-
-        try {
-            this.mAccessToken = jsonObject.getString(PJSONConsts.UP_ACCESSTOKEN);
-        } catch (JSONException e) {}
-
-
-        try {
-            this.mSecretKey= jsonObject.getString(PJSONConsts.UP_SECRETKEY);
-        } catch (JSONException e) {}
+        // optional fields, missing ones stay null
+        this.mAvatarLink = jsonObject.optString(PJSONConsts.UP_AVATAR, null);
+        this.mLocation = jsonObject.optString(PJSONConsts.UP_LOCATION, null);
+        this.mGender = jsonObject.optString(PJSONConsts.UP_GENDER, null);
+        this.mLanguage = jsonObject.optString(PJSONConsts.UP_LANGUAGE, null);
+        this.mBirthday = jsonObject.optString(PJSONConsts.UP_BIRTHDAY, null);
+        this.mAccessToken = jsonObject.optString(PJSONConsts.UP_ACCESSTOKEN, null);
+        this.mSecretKey = jsonObject.optString(PJSONConsts.UP_SECRETKEY, null);
     }
 
     /**
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.events.social;
+
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.social.ISocialProvider;
+
+import java.util.List;
+
+/**
+ * This event is fired when a contacts sync has delivered all of its pages.
+ * The pages themselves are delivered by <code>ContactsSyncPageEvent</code>s.
+ */
+public class ContactsSyncFinishedEvent extends BaseSocialActionEvent {
+
+    /**
+     * true if only contacts added since the previous sync were delivered
+     */
+    public final boolean Incremental;
+
+    /**
+     * the number of contacts delivered by the sync
+     */
+    public final int ContactsCount;
+
+    /**
+     * the profile IDs of contacts removed since the previous sync
+     */
+    public final List<String> RemovedProfileIds;
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the sync finished
+     * @param incremental true if the sync was incremental
+     * @param contactsCount the number of contacts delivered by the sync
+     * @param removedProfileIds the profile IDs of removed contacts
+     * @param payload an identification String sent from the caller of the action
+     */
+    public ContactsSyncFinishedEvent(IProvider.Provider provider, boolean incremental, int contactsCount,
+                                     List<String> removedProfileIds, String payload) {
+        super(provider, ISocialProvider.SocialActionType.GET_CONTACTS, payload);
+        this.Incremental = incremental;
+        this.ContactsCount = contactsCount;
+        this.RemovedProfileIds = removedProfileIds;
+    }
+}
@@ -32,6 +32,23 @@ public class GetContactsFinishedEvent extends BaseSocialActionEvent {
      */
     public final List<UserProfile> Contacts;
 
+    /**
+     * an opaque cursor which can be used to fetch the next page of contacts,
+     * null if there are no more pages
+     */
+    public final String NextCursor;
+
+    /**
+     * true if there are more pages of contacts to fetch
+     */
+    public final boolean HasMore;
+
+    /**
+     * true if the contacts were read from the local contacts cache rather
+     * than fetched from the provider
+     */
+    public final boolean FromCache;
+
     /**
      * Constructor
      *
@@ -43,7 +60,47 @@ public class GetContactsFinishedEvent extends BaseSocialActionEvent {
     public GetContactsFinishedEvent(IProvider.Provider provider,
                                     ISocialProvider.SocialActionType socialActionType,
                                     List<UserProfile> contacts, String payload) {
+        this(provider, socialActionType, contacts, null, false, payload);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the get contacts process finished
+     * @param socialActionType The social action preformed
+     * @param contacts an Array of contacts represented by <code>UserProfile</code>
+     * @param nextCursor a cursor to fetch the next page with, null if there are
+     *                   no more pages
+     * @param hasMore true if there are more pages of contacts to fetch
+     * @param payload an identification String sent from the caller of the action
+     */
+    public GetContactsFinishedEvent(IProvider.Provider provider,
+                                    ISocialProvider.SocialActionType socialActionType,
+                                    List<UserProfile> contacts, String nextCursor,
+                                    boolean hasMore, String payload) {
+        this(provider, socialActionType, contacts, nextCursor, hasMore, false, payload);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the get contacts process finished
+     * @param socialActionType The social action preformed
+     * @param contacts an Array of contacts represented by <code>UserProfile</code>
+     * @param nextCursor a cursor to fetch the next page with, null if there are
+     *                   no more pages
+     * @param hasMore true if there are more pages of contacts to fetch
+     * @param fromCache true if the contacts were read from the local cache
+     * @param payload an identification String sent from the caller of the action
+     */
+    public GetContactsFinishedEvent(IProvider.Provider provider,
+                                    ISocialProvider.SocialActionType socialActionType,
+                                    List<UserProfile> contacts, String nextCursor,
+                                    boolean hasMore, boolean fromCache, String payload) {
         super(provider, socialActionType, payload);
         this.Contacts = contacts;
+        this.NextCursor = nextCursor;
+        this.HasMore = hasMore;
+        this.FromCache = fromCache;
     }
 }
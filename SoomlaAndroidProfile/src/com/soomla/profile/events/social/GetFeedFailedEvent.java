@@ -18,6 +18,7 @@ package com.soomla.profile.events.social;
 
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.SocialError;
 
 /**
  * This event is fired when the get feed process from a provider has failed
@@ -28,6 +29,11 @@ public class GetFeedFailedEvent extends BaseSocialActionEvent {
      */
     public final String ErrorDescription;
 
+    /**
+     * The structured reason for failure
+     */
+    public final SocialError Error;
+
     /**
      * Constructor
      *
@@ -39,7 +45,25 @@ public class GetFeedFailedEvent extends BaseSocialActionEvent {
     public GetFeedFailedEvent(IProvider.Provider provider,
                               ISocialProvider.SocialActionType getFeedType,
                               String errorDescription, String payload) {
+        this(provider, getFeedType, errorDescription, payload,
+                new SocialError(SocialError.ErrorType.UNKNOWN, errorDescription));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the get feed process has
+     * @param getFeedType The social action preformed
+     * @param errorDescription a Description of the reason for failure
+     * @param payload an identification String sent from the caller of the action
+     * @param error the structured reason for failure
+     */
+    public GetFeedFailedEvent(IProvider.Provider provider,
+                              ISocialProvider.SocialActionType getFeedType,
+                              String errorDescription, String payload,
+                              SocialError error) {
         super(provider, getFeedType, payload);
         ErrorDescription = errorDescription;
+        Error = error;
     }
 }
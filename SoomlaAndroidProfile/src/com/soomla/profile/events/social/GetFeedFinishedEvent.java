@@ -16,6 +16,7 @@
 
 package com.soomla.profile.events.social;
 
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.social.ISocialProvider;
 
@@ -30,6 +31,12 @@ public class GetFeedFinishedEvent extends BaseSocialActionEvent {
      */
     public final List<String> Posts;
 
+    /**
+     * the feed entries as structured feed items, in the same order as
+     * <code>Posts</code>, or null if they are not available
+     */
+    public final List<FeedItem> Items;
+
     /**
      * Constructor
      *
@@ -41,7 +48,23 @@ public class GetFeedFinishedEvent extends BaseSocialActionEvent {
     public GetFeedFinishedEvent(IProvider.Provider provider,
                                 ISocialProvider.SocialActionType getFeedType,
                                 List<String> feedPosts, String payload) {
+        this(provider, getFeedType, feedPosts, null, payload);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the get feed process finished
+     * @param getFeedType The social action preformed
+     * @param feedPosts an Array of feed entries represented by strings
+     * @param feedItems the feed entries as structured feed items
+     * @param payload an identification String sent from the caller of the action
+     */
+    public GetFeedFinishedEvent(IProvider.Provider provider,
+                                ISocialProvider.SocialActionType getFeedType,
+                                List<String> feedPosts, List<FeedItem> feedItems, String payload) {
         super(provider, getFeedType, payload);
         Posts = feedPosts;
+        Items = feedItems;
     }
 }
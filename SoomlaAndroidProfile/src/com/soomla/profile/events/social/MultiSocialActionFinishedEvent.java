@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.events.social;
+
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.social.ISocialProvider;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This event is fired when a social action which was performed on several
+ * providers at once has finished on all of them, whether it succeeded or not
+ */
+public class MultiSocialActionFinishedEvent {
+    /**
+     * The providers on which the social action was performed
+     */
+    public final Set<IProvider.Provider> Providers;
+
+    /**
+     * The providers on which the social action succeeded
+     */
+    public final Set<IProvider.Provider> Succeeded;
+
+    /**
+     * The providers on which the social action failed, mapped to a
+     * description of the reason for failure
+     */
+    public final Map<IProvider.Provider, String> Failed;
+
+    /**
+     * The social action which the event represents
+     */
+    public final ISocialProvider.SocialActionType SocialActionType;
+
+    /**
+     * true if the reward of the action was granted
+     */
+    public final boolean RewardGiven;
+
+    /**
+     * an identification String sent from the caller of the action
+     */
+    public final String Payload;
+
+    /**
+     * Constructor
+     *
+     * @param providers The providers on which the social action was performed
+     * @param succeeded The providers on which the social action succeeded
+     * @param failed The providers on which the social action failed, mapped to
+     *               a description of the reason for failure
+     * @param socialActionType The social action which finished
+     * @param rewardGiven true if the reward of the action was granted
+     * @param payload an identification String sent from the caller of the action
+     */
+    public MultiSocialActionFinishedEvent(Set<IProvider.Provider> providers,
+                                          Set<IProvider.Provider> succeeded,
+                                          Map<IProvider.Provider, String> failed,
+                                          ISocialProvider.SocialActionType socialActionType,
+                                          boolean rewardGiven, String payload) {
+        Providers = providers;
+        Succeeded = succeeded;
+        Failed = failed;
+        SocialActionType = socialActionType;
+        RewardGiven = rewardGiven;
+        Payload = payload;
+    }
+}
@@ -18,6 +18,7 @@ package com.soomla.profile.events.social;
 
 import com.soomla.profile.domain.IProvider;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.SocialError;
 
 /**
  * This event is fired when a generic social action on a provider has failed
@@ -28,6 +29,11 @@ public class SocialActionFailedEvent extends BaseSocialActionEvent {
      */
     public final String ErrorDescription;
 
+    /**
+     * The structured reason for failure
+     */
+    public final SocialError Error;
+
     /**
      * Constructor
      *
@@ -39,7 +45,25 @@ public class SocialActionFailedEvent extends BaseSocialActionEvent {
     public SocialActionFailedEvent(IProvider.Provider provider,
                                    ISocialProvider.SocialActionType socialActionType,
                                    String errorDescription, String payload) {
+        this(provider, socialActionType, errorDescription, payload,
+                new SocialError(SocialError.ErrorType.UNKNOWN, errorDescription));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param provider The provider on which the social action has failed
+     * @param socialActionType The social action which failed
+     * @param errorDescription a Description of the reason for failure
+     * @param payload an identification String sent from the caller of the action
+     * @param error the structured reason for failure
+     */
+    public SocialActionFailedEvent(IProvider.Provider provider,
+                                   ISocialProvider.SocialActionType socialActionType,
+                                   String errorDescription, String payload,
+                                   SocialError error) {
         super(provider, socialActionType, payload);
         ErrorDescription = errorDescription;
+        Error = error;
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+/**
+ * A social provider which can sync the user's whole contact list, following
+ * the provider's paging cursors in the background.
+ * <p/>
+ * The sync state is persisted, so an interrupted sync resumes where it
+ * stopped, and an incremental sync fetches only the contacts which were
+ * added since the previous one.
+ */
+public interface ISocialContactsSyncProvider extends ISocialProvider {
+
+    /**
+     * Syncs the user's contact list, delivering it page by page.
+     * The sync may send many requests, so the provider takes quota from its
+     * <code>RateLimiter</code> before each of them, and fails the sync as
+     * <code>RATE_LIMITED</code> when there's none left.
+     *
+     * @param incremental true to deliver only the contacts added since the
+     *                    previous sync, false to deliver all of them
+     * @param contactsSyncListener the listener of the sync
+     */
+    void syncContacts(boolean incremental, SocialCallbacks.ContactsSyncListener contactsSyncListener);
+
+    /**
+     * Forgets the persisted sync state, so the next sync starts over
+     */
+    void resetContactsSync();
+}
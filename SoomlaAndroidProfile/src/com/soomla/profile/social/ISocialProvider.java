@@ -86,6 +86,17 @@ public interface ISocialProvider extends IAuthProvider {
      */
     void getContacts(SocialCallbacks.ContactsListener contactsListener);
 
+    /**
+     * Fetches a single page of the user's contact list
+     *
+     * @param cursor           an opaque cursor received with the previous page,
+     *                         or null to fetch the first page
+     * @param pageSize         the preferred amount of contacts in a page. This is
+     *                         only a hint, providers may return a different amount
+     * @param contactsListener a callback for this action
+     */
+    void getContacts(String cursor, int pageSize, SocialCallbacks.ContactsPageListener contactsListener);
+
     /**
      * Fetches the user's feed.
      *
@@ -93,6 +104,13 @@ public interface ISocialProvider extends IAuthProvider {
      */
     void getFeed(SocialCallbacks.FeedListener feedsListener);
 
+    /**
+     * Fetches the user's feed as structured feed items
+     *
+     * @param feedItemsListener a callback for this action
+     */
+    void getFeedItems(SocialCallbacks.FeedItemsListener feedItemsListener);
+
     /**
      * Shares a photo to the user's feed
      *
@@ -103,6 +121,20 @@ public interface ISocialProvider extends IAuthProvider {
     void uploadImage(String message, String filePath,
                      SocialCallbacks.SocialActionListener socialActionListener);
 
+    /**
+     * Shares a photo to the user's feed straight from memory, without
+     * writing it to a file first
+     *
+     * @param message              A text that will accompany the image
+     * @param fileName             The image's file name, its extension decides
+     *                             the format the image is encoded with (png or jpeg)
+     * @param bitmap               The image to share
+     * @param jpegQuality          Image quality, number from 0 to 100 (ignored for png)
+     * @param socialActionListener a callback for this action
+     */
+    void uploadImage(String message, String fileName, Bitmap bitmap, int jpegQuality,
+                     SocialCallbacks.SocialActionListener socialActionListener);
+
     /**
      * Opens up a "like" page for current provider (external)
      *
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+import android.os.SystemClock;
+
+import com.soomla.profile.domain.IProvider;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the API quota of a provider, per social action type, so
+ * requests which are bound to be rejected are not sent at all.
+ * <p/>
+ * Two kinds of limits are combined:
+ * <ul>
+ * <li>A client side token bucket, set with <code>setQuota</code>, which
+ * allows bursts of up to <code>limit</code> requests and refills evenly over
+ * the window.</li>
+ * <li>The quota the provider itself reports (for example from Twitter's
+ * rate limit headers) with <code>report</code>. Once the reported quota is
+ * used up, requests are held back until the provider's window resets.</li>
+ * </ul>
+ * Action types with neither kind of limit are never held back.
+ */
+public class RateLimiter {
+
+    /**
+     * Fetches the rate limiter of the given provider
+     *
+     * @param provider the provider
+     * @return the rate limiter of the provider
+     */
+    public static RateLimiter forProvider(IProvider.Provider provider) {
+        return LIMITERS.get(provider);
+    }
+
+    /**
+     * Sets a client side quota for the given action type
+     *
+     * @param socialActionType the action type to limit
+     * @param limit the number of requests allowed per window
+     * @param windowMillis the length of the window in milliseconds
+     */
+    public synchronized void setQuota(ISocialProvider.SocialActionType socialActionType, int limit, long windowMillis) {
+        if (limit <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Limit and window must be positive");
+        }
+
+        Bucket bucket = bucket(socialActionType);
+        bucket.mCapacity = limit;
+        bucket.mTokens = limit;
+        bucket.mRefillPerMilli = (double) limit / windowMillis;
+        bucket.mLastRefill = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Removes the client side quota of the given action type
+     *
+     * @param socialActionType the action type to stop limiting
+     */
+    public synchronized void removeQuota(ISocialProvider.SocialActionType socialActionType) {
+        Bucket bucket = bucket(socialActionType);
+        bucket.mCapacity = 0;
+        bucket.mRefillPerMilli = 0;
+    }
+
+    /**
+     * Reports the quota status the provider returned with a response, to be
+     * called by providers
+     *
+     * @param socialActionType the action type the response belongs to
+     * @param remaining the number of requests left in the current window
+     * @param resetInMillis the time until the window resets in milliseconds
+     */
+    public synchronized void report(ISocialProvider.SocialActionType socialActionType, int remaining, long resetInMillis) {
+        if (resetInMillis <= 0) {
+            return;
+        }
+
+        Bucket bucket = bucket(socialActionType);
+        bucket.mReportedRemaining = Math.max(0, remaining);
+        bucket.mReportedResetAt = SystemClock.elapsedRealtime() + resetInMillis;
+    }
+
+    /**
+     * Takes a request's worth of quota for the given action type
+     *
+     * @param socialActionType the action type of the request
+     * @return 0 if the request may be sent, otherwise how long to wait (in
+     * milliseconds) before it can be
+     */
+    public synchronized long tryAcquire(ISocialProvider.SocialActionType socialActionType) {
+        Bucket bucket = mBuckets.get(socialActionType);
+        if (bucket == null) {
+            return 0;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (bucket.mReportedResetAt > 0 && now >= bucket.mReportedResetAt) {
+            // a new window began, the reported quota is unknown until the next report
+            bucket.mReportedResetAt = 0;
+        }
+        if (bucket.mReportedResetAt > 0 && bucket.mReportedRemaining <= 0) {
+            return bucket.mReportedResetAt - now;
+        }
+
+        if (bucket.mRefillPerMilli > 0) {
+            bucket.mTokens = Math.min(bucket.mCapacity,
+                    bucket.mTokens + (now - bucket.mLastRefill) * bucket.mRefillPerMilli);
+            bucket.mLastRefill = now;
+            if (bucket.mTokens < 1) {
+                return Math.max(1, (long) Math.ceil((1 - bucket.mTokens) / bucket.mRefillPerMilli));
+            }
+            bucket.mTokens -= 1;
+        }
+
+        if (bucket.mReportedResetAt > 0) {
+            bucket.mReportedRemaining--;
+        }
+        return 0;
+    }
+
+
+    /** Private Members **/
+
+    private RateLimiter() {
+    }
+
+    private static class Bucket {
+        double mCapacity;
+        double mTokens;
+        double mRefillPerMilli;
+        long mLastRefill;
+        int mReportedRemaining;
+        long mReportedResetAt;
+    }
+
+    private Bucket bucket(ISocialProvider.SocialActionType socialActionType) {
+        Bucket bucket = mBuckets.get(socialActionType);
+        if (bucket == null) {
+            bucket = new Bucket();
+            mBuckets.put(socialActionType, bucket);
+        }
+        return bucket;
+    }
+
+    private static final Map<IProvider.Provider, RateLimiter> LIMITERS;
+    static {
+        EnumMap<IProvider.Provider, RateLimiter> limiters =
+                new EnumMap<IProvider.Provider, RateLimiter>(IProvider.Provider.class);
+        for (IProvider.Provider provider : IProvider.Provider.values()) {
+            limiters.put(provider, new RateLimiter());
+        }
+        LIMITERS = Collections.unmodifiableMap(limiters);
+    }
+
+    private final EnumMap<ISocialProvider.SocialActionType, Bucket> mBuckets =
+            new EnumMap<ISocialProvider.SocialActionType, Bucket>(ISocialProvider.SocialActionType.class);
+}
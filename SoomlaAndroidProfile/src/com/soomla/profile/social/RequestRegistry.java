@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.social;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the callbacks of in-flight provider requests, keyed by a generated
+ * request ID.
+ * <p/>
+ * Providers which hand work over to an activity (or any other context which
+ * can't hold a reference to the caller's listener) register the listener here,
+ * pass the request ID along, and take the listener back when the request
+ * completes. Since every request gets its own ID, any number of requests can be
+ * in flight at the same time without overwriting each other's listeners.
+ */
+public class RequestRegistry {
+
+    /**
+     * Constructor
+     *
+     * @param prefix a prefix for the generated request IDs, useful for logging
+     */
+    public RequestRegistry(String prefix) {
+        mPrefix = prefix;
+    }
+
+    /**
+     * Registers the given listener as a new in-flight request
+     *
+     * @param listener the callback of the request
+     * @return the ID of the new request
+     */
+    public String register(Object listener) {
+        String requestId = mPrefix + "-" + mCounter.incrementAndGet();
+        mListeners.put(requestId, listener);
+        return requestId;
+    }
+
+    /**
+     * Fetches the listener of an in-flight request without completing it
+     *
+     * @param requestId the ID of the request
+     * @return the listener of the request, or null if there is no such request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String requestId) {
+        if (requestId == null) {
+            return null;
+        }
+        return (T) mListeners.get(requestId);
+    }
+
+    /**
+     * Completes an in-flight request and returns its listener.
+     * A request can only be completed once, later calls return null.
+     *
+     * @param requestId the ID of the request
+     * @return the listener of the request, or null if there is no such request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T remove(String requestId) {
+        if (requestId == null) {
+            return null;
+        }
+        return (T) mListeners.remove(requestId);
+    }
+
+    /**
+     * @return the number of in-flight requests
+     */
+    public int size() {
+        return mListeners.size();
+    }
+
+
+    /** Private Members **/
+
+    private final String mPrefix;
+    private final AtomicInteger mCounter = new AtomicInteger();
+    private final ConcurrentHashMap<String, Object> mListeners = new ConcurrentHashMap<String, Object>();
+}
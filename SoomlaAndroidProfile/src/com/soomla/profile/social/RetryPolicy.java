@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.social;
+
+import java.util.Random;
+
+/**
+ * Decides whether and when a failed provider request is retried.
+ * <p/>
+ * Only transient failures (see <code>SocialError.isTransient</code>) are
+ * retried. The delay before each retry grows exponentially up to a maximum,
+ * and is randomly shortened by up to the jitter fraction so many clients
+ * failing together don't retry together. A delay the provider asked for
+ * (like a rate limit reset) is always respected, and if it's longer than the
+ * maximum delay the request fails right away instead of waiting.
+ */
+public class RetryPolicy {
+
+    /**
+     * A policy which never retries
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0);
+
+    /**
+     * Up to 3 attempts, 1 second before the first retry, at most 30 seconds
+     * between attempts and 50% jitter
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 1000, 30000, 0.5);
+
+    /**
+     * Constructor
+     *
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param initialDelayMillis the delay before the first retry in milliseconds,
+     *                           doubled for every further retry
+     * @param maxDelayMillis the maximum delay between attempts in milliseconds
+     * @param jitter the fraction (0 to 1) by which a delay may be randomly shortened
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis, double jitter) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mInitialDelayMillis = Math.max(0, initialDelayMillis);
+        mMaxDelayMillis = Math.max(mInitialDelayMillis, maxDelayMillis);
+        mJitter = Math.min(1, Math.max(0, jitter));
+    }
+
+    /**
+     * Checks whether a request should be retried
+     *
+     * @param error the error the request failed with
+     * @param attempt the number of the attempt which failed, starting from 1
+     * @return true if the request should be retried
+     */
+    public boolean shouldRetry(SocialError error, int attempt) {
+        return error != null && error.isTransient() && attempt < mMaxAttempts &&
+                error.RetryAfterMillis <= mMaxDelayMillis;
+    }
+
+    /**
+     * Calculates how long to wait before retrying a request
+     *
+     * @param error the error the request failed with
+     * @param attempt the number of the attempt which failed, starting from 1
+     * @return the delay before the next attempt in milliseconds
+     */
+    public long getDelayMillis(SocialError error, int attempt) {
+        long delay = mInitialDelayMillis;
+        for (int i = 1; i < attempt && delay < mMaxDelayMillis; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, mMaxDelayMillis);
+        delay -= (long) (delay * mJitter * RANDOM.nextDouble());
+
+        return Math.max(delay, error != null ? error.RetryAfterMillis : 0);
+    }
+
+    /**
+     * @return the maximum number of attempts, including the first one
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+
+    /** Private Members **/
+
+    private static final Random RANDOM = new Random();
+
+    private final int mMaxAttempts;
+    private final long mInitialDelayMillis;
+    private final long mMaxDelayMillis;
+    private final double mJitter;
+}
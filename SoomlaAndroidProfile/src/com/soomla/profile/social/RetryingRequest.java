@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+/**
+ * A provider request which is attempted again according to a
+ * <code>RetryPolicy</code> when it fails for a transient reason.
+ * <p/>
+ * Subclasses send the request in <code>attempt</code>, call
+ * <code>failed</code> when it fails and decide in <code>schedule</code>
+ * where a retry runs (e.g. on the main thread after the delay).
+ */
+public abstract class RetryingRequest implements Runnable {
+
+    /**
+     * Constructor
+     *
+     * @param policy the policy by which the request is retried
+     */
+    protected RetryingRequest(RetryPolicy policy) {
+        mPolicy = policy != null ? policy : RetryPolicy.NONE;
+    }
+
+    /**
+     * Sends the request to the provider
+     */
+    protected abstract void attempt();
+
+    /**
+     * Reports the final failure of the request
+     *
+     * @param error the error of the last attempt
+     */
+    protected abstract void giveUp(SocialError error);
+
+    /**
+     * Runs the given attempt after a delay
+     *
+     * @param attempt the attempt to run
+     * @param delayMillis the delay in milliseconds
+     */
+    protected abstract void schedule(Runnable attempt, long delayMillis);
+
+    /**
+     * Checks whether the request may be sent now. Called before every
+     * attempt; a returned error fails the attempt without sending it.
+     *
+     * @return an error if the request may not be sent, null otherwise
+     */
+    protected SocialError checkLimit() {
+        return null;
+    }
+
+    /**
+     * Retries the request if the policy allows, otherwise gives up
+     *
+     * @param error the error the last attempt failed with
+     */
+    protected void failed(SocialError error) {
+        if (!retry(error)) {
+            giveUp(error);
+        }
+    }
+
+    /**
+     * Schedules another attempt if the policy allows
+     *
+     * @param error the error the last attempt failed with
+     * @return true if another attempt was scheduled
+     */
+    protected boolean retry(SocialError error) {
+        if (!mPolicy.shouldRetry(error, mAttempt)) {
+            return false;
+        }
+
+        long delay = mPolicy.getDelayMillis(error, mAttempt);
+        mAttempt++;
+        schedule(this, delay);
+        return true;
+    }
+
+    /**
+     * @return the number of the current attempt, starting from 1
+     */
+    public int getAttempt() {
+        return mAttempt;
+    }
+
+    @Override
+    public void run() {
+        SocialError limited = checkLimit();
+        if (limited != null) {
+            failed(limited);
+            return;
+        }
+        attempt();
+    }
+
+
+    /** Private Members **/
+
+    private final RetryPolicy mPolicy;
+    private int mAttempt = 1;
+}
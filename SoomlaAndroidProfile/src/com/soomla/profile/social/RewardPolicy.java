@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.social;
+
+/**
+ * Decides when the reward of a social action which is performed on several
+ * providers at once is granted. The reward is granted at most once.
+ */
+public enum RewardPolicy {
+    /**
+     * Grant the reward if the action succeeded on at least one provider
+     */
+    ANY_SUCCESS,
+
+    /**
+     * Grant the reward only if the action succeeded on all providers
+     */
+    ALL_SUCCEED
+}
@@ -16,6 +16,7 @@
 
 package com.soomla.profile.social;
 
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.UserProfile;
 
 import java.util.List;
@@ -80,14 +81,37 @@ public class SocialCallbacks {
     }
 
     /**
-     * Listens for fetching feed event
+     * Listens for fetching a single page of contacts event
+     */
+    public interface ContactsPageListener {
+
+        /**
+         * Performs the following function upon success.
+         *
+         * @param userProfiles the contacts in the fetched page
+         * @param nextCursor an opaque cursor to fetch the next page with, null
+         *                   if there are no more pages
+         * @param hasMore true if there are more pages to fetch
+         */
+        public void success(List<UserProfile> userProfiles, String nextCursor, boolean hasMore);
+
+        /**
+         * Performs the following function upon failure and prints the given message.
+         *
+         * @param message reason for failure
+         */
+        public void fail(String message);
+    }
+
+    /**
+     * Listens for fetching feed event, receiving the text of the feed entries
+     * only. See <code>FeedItemsListener</code> for the full feed items.
      */
     public interface FeedListener {
 
         /**
          * Performs the following function upon success.
          */
-        //todo: model feed
         public void success(List<String> feeds);
 
         /**
@@ -97,4 +121,97 @@ public class SocialCallbacks {
          */
         public void fail(String message);
     }
+
+    /**
+     * Listens for fetching feed event, receiving structured feed items
+     */
+    public interface FeedItemsListener {
+
+        /**
+         * Performs the following function upon success.
+         *
+         * @param items the feed items, newest first
+         */
+        public void success(List<FeedItem> items);
+
+        /**
+         * Performs the following function upon failure and prints the given message.
+         *
+         * @param message reason for failure
+         */
+        public void fail(String message);
+    }
+
+    /**
+     * Listens for a contacts sync, which delivers the contact list in pages
+     */
+    public interface ContactsSyncListener {
+
+        /**
+         * Performs the following function for every page of contacts.
+         *
+         * @param contacts the contacts in the page, new contacts only when
+         *                 the sync is incremental
+         */
+        public void page(List<UserProfile> contacts);
+
+        /**
+         * Performs the following function once all pages were delivered.
+         *
+         * @param removedProfileIds the profile IDs of contacts which were
+         *                          removed since the previous sync
+         */
+        public void success(List<String> removedProfileIds);
+
+        /**
+         * Performs the following function upon failure and prints the given message.
+         *
+         * @param message reason for failure
+         */
+        public void fail(String message);
+    }
+
+    /**
+     * Implemented by listeners which can receive a structured
+     * <code>SocialError</code> rather than just a failure message
+     */
+    public interface ErrorListener {
+
+        /**
+         * Performs the following function upon failure.
+         *
+         * @param error the reason for failure
+         */
+        public void fail(SocialError error);
+    }
+
+    /**
+     * Fails the given listener with a structured error. Listeners which
+     * implement <code>ErrorListener</code> get the error itself, others get
+     * its message.
+     *
+     * @param listener the listener to fail, one of the listeners defined here
+     * @param error the reason for failure
+     */
+    public static void fail(Object listener, SocialError error) {
+        if (listener instanceof ErrorListener) {
+            ((ErrorListener) listener).fail(error);
+        } else if (listener instanceof SocialActionListener) {
+            ((SocialActionListener) listener).fail(error.Message);
+        } else if (listener instanceof ContactsListener) {
+            ((ContactsListener) listener).fail(error.Message);
+        } else if (listener instanceof ContactsPageListener) {
+            ((ContactsPageListener) listener).fail(error.Message);
+        } else if (listener instanceof FeedListener) {
+            ((FeedListener) listener).fail(error.Message);
+        } else if (listener instanceof FeedItemsListener) {
+            ((FeedItemsListener) listener).fail(error.Message);
+        } else if (listener instanceof ContactsSyncListener) {
+            ((ContactsSyncListener) listener).fail(error.Message);
+        } else if (listener instanceof UserProfileListener) {
+            ((UserProfileListener) listener).fail(error.Message);
+        } else {
+            throw new IllegalArgumentException("Unknown listener type: " + listener);
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.soomla.profile.social;
+
+/**
+ * A structured description of a failed provider request, which tells
+ * transient failures (worth retrying) apart from permanent ones.
+ */
+public class SocialError {
+
+    /**
+     * The kinds of failures a provider request can end with
+     */
+    public enum ErrorType {
+        /**
+         * The request didn't reach the provider or the provider had a
+         * temporary server error
+         */
+        NETWORK,
+
+        /**
+         * The provider rejected the request since too many requests were made
+         */
+        RATE_LIMITED,
+
+        /**
+         * The user isn't logged in or the session expired
+         */
+        AUTH,
+
+        /**
+         * The user didn't grant a permission the request needs
+         */
+        PERMISSION,
+
+        /**
+         * The request was cancelled
+         */
+        CANCELLED,
+
+        /**
+         * Any other failure
+         */
+        UNKNOWN
+    }
+
+    /**
+     * The kind of the failure
+     */
+    public final ErrorType Type;
+
+    /**
+     * a Description of the reason for failure
+     */
+    public final String Message;
+
+    /**
+     * How long the provider asked to wait before retrying in milliseconds,
+     * or 0 if it didn't say
+     */
+    public final long RetryAfterMillis;
+
+    /**
+     * Constructor
+     *
+     * @param type the kind of the failure
+     * @param message a description of the reason for failure
+     */
+    public SocialError(ErrorType type, String message) {
+        this(type, message, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param type the kind of the failure
+     * @param message a description of the reason for failure
+     * @param retryAfterMillis how long the provider asked to wait before
+     *                         retrying in milliseconds, or 0 if it didn't say
+     */
+    public SocialError(ErrorType type, String message, long retryAfterMillis) {
+        Type = type;
+        Message = message;
+        RetryAfterMillis = Math.max(0, retryAfterMillis);
+    }
+
+    /**
+     * @return true if the same request may succeed when retried later
+     */
+    public boolean isTransient() {
+        return Type == ErrorType.NETWORK || Type == ErrorType.RATE_LIMITED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return Type + ": " + Message;
+    }
+}
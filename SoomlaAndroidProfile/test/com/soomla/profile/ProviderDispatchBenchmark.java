@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile;
+
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.exceptions.ProviderNotFoundException;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the cost of the two ways <code>SoomlaProfile</code> has dispatched
+ * <code>isLoggedIn</code> to a social provider:
+ * <ul>
+ * <li>exception fallback: ask the auth controller, which throws
+ * <code>ProviderNotFoundException</code> for social providers, then ask the
+ * social controller</li>
+ * <li>routing table: a single <code>EnumMap</code> lookup, as done since
+ * <code>initialize</code> builds the table</li>
+ * </ul>
+ * The controllers need a running Android app, so both strategies are
+ * reproduced here over plain maps, with the same exception and the same
+ * lookups the controllers do.
+ * <p/>
+ * Run with <code>ant -buildfile android-profile.xml benchmark</code>.
+ */
+public class ProviderDispatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        ProviderDispatchBenchmark benchmark = new ProviderDispatchBenchmark();
+        IProvider.Provider provider = IProvider.Provider.TWITTER;
+
+        // warm up both paths so the JIT compiles them before they're timed
+        for (int i = 0; i < iterations / 10; i++) {
+            benchmark.isLoggedInByException(provider);
+            benchmark.isLoggedInByRoute(provider);
+        }
+
+        long exceptionNanos = time(benchmark, provider, iterations, true);
+        long routeNanos = time(benchmark, provider, iterations, false);
+
+        System.out.println(String.format("isLoggedIn x %d on a social provider", iterations));
+        System.out.println(String.format("  exception fallback: %8.1f ns/call", (double) exceptionNanos / iterations));
+        System.out.println(String.format("  routing table:      %8.1f ns/call", (double) routeNanos / iterations));
+        System.out.println(String.format("  speedup:            %8.1fx", (double) exceptionNanos / routeNanos));
+    }
+
+
+    /** Private Members **/
+
+    private ProviderDispatchBenchmark() {
+        // the only loaded provider is a social one, as with SoomlaTwitter
+        mSocialProviders.put(IProvider.Provider.TWITTER, Boolean.TRUE);
+
+        mRoutes.put(IProvider.Provider.TWITTER, mSocialProviders);
+    }
+
+    private static long time(ProviderDispatchBenchmark benchmark, IProvider.Provider provider,
+                             int iterations, boolean byException) throws ProviderNotFoundException {
+        boolean loggedIn = false;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            loggedIn ^= byException ?
+                    benchmark.isLoggedInByException(provider) :
+                    benchmark.isLoggedInByRoute(provider);
+        }
+        long nanos = System.nanoTime() - start;
+
+        // use the result so the loop isn't optimized away
+        if (loggedIn && iterations < 0) {
+            System.out.println();
+        }
+        return nanos;
+    }
+
+    private boolean isLoggedInByException(IProvider.Provider provider) throws ProviderNotFoundException {
+        try {
+            return lookup(mAuthProviders, provider);
+        } catch (ProviderNotFoundException e) {
+            return lookup(mSocialProviders, provider);
+        }
+    }
+
+    private boolean isLoggedInByRoute(IProvider.Provider provider) throws ProviderNotFoundException {
+        Map<IProvider.Provider, Boolean> controller = mRoutes.get(provider);
+        if (controller == null) {
+            throw new ProviderNotFoundException(provider);
+        }
+        return lookup(controller, provider);
+    }
+
+    // what ProviderLoader.getProvider does
+    private static boolean lookup(Map<IProvider.Provider, Boolean> providers,
+                                  IProvider.Provider provider) throws ProviderNotFoundException {
+        Boolean loggedIn = providers.get(provider);
+        if (loggedIn == null) {
+            throw new ProviderNotFoundException(provider);
+        }
+        return loggedIn;
+    }
+
+    private final Map<IProvider.Provider, Boolean> mAuthProviders = new HashMap<IProvider.Provider, Boolean>();
+    private final Map<IProvider.Provider, Boolean> mSocialProviders = new HashMap<IProvider.Provider, Boolean>();
+    private final EnumMap<IProvider.Provider, Map<IProvider.Provider, Boolean>> mRoutes =
+            new EnumMap<IProvider.Provider, Map<IProvider.Provider, Boolean>>(IProvider.Provider.class);
+}
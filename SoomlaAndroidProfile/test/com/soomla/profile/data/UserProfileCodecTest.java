@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.data;
+
+import com.soomla.profile.domain.IProvider;
+import com.soomla.profile.domain.UserProfile;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserProfileCodecTest {
+
+    @Test
+    public void roundTripsAllFields() throws Exception {
+        UserProfile userProfile = fullProfile(0);
+
+        assertSameProfile(userProfile, UserProfileCodec.decode(UserProfileCodec.encode(userProfile)));
+    }
+
+    @Test
+    public void roundTripsMissingOptionalFields() throws Exception {
+        UserProfile userProfile = new UserProfile(IProvider.Provider.TWITTER, "42", "user", null, "First", null);
+
+        UserProfile decoded = UserProfileCodec.decode(UserProfileCodec.encode(userProfile));
+        assertSameProfile(userProfile, decoded);
+        assertNull(decoded.getEmail());
+        assertNull(decoded.getAvatarLink());
+    }
+
+    @Test
+    public void roundTripsNonAsciiText() throws Exception {
+        UserProfile userProfile = new UserProfile(IProvider.Provider.GOOGLE, "7", "שלום",
+                "a@b.c", "Élodie", "😀\u0000");
+
+        assertSameProfile(userProfile, UserProfileCodec.decode(UserProfileCodec.encode(userProfile)));
+    }
+
+    @Test
+    public void roundTripsFieldsOver64KB() throws Exception {
+        char[] chars = new char[70 * 1024];
+        Arrays.fill(chars, 'x');
+        UserProfile userProfile = fullProfile(0);
+        userProfile.setAccessToken(new String(chars));
+
+        UserProfile decoded = UserProfileCodec.decode(UserProfileCodec.encode(userProfile));
+        assertSameProfile(userProfile, decoded);
+        assertEquals(chars.length, decoded.getAccessToken().length());
+    }
+
+    @Test
+    public void roundTripsLists() throws Exception {
+        List<UserProfile> userProfiles = profiles(50);
+
+        List<UserProfile> decoded = UserProfileCodec.decodeList(UserProfileCodec.encodeList(userProfiles));
+        assertEquals(userProfiles.size(), decoded.size());
+        for (int i = 0; i < userProfiles.size(); i++) {
+            assertSameProfile(userProfiles.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyList() throws Exception {
+        assertTrue(UserProfileCodec.decodeList(
+                UserProfileCodec.encodeList(new ArrayList<UserProfile>())).isEmpty());
+    }
+
+    @Test
+    public void readsVersion1() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeByte(IProvider.Provider.FACEBOOK.getValue());
+        out.writeShort(0x3); // profile ID and username only
+        out.writeUTF("1001");
+        out.writeUTF("legacy");
+        out.flush();
+
+        UserProfile decoded = UserProfileCodec.decode(bytes.toByteArray());
+        assertEquals(IProvider.Provider.FACEBOOK, decoded.getProvider());
+        assertEquals("1001", decoded.getProfileId());
+        assertEquals("legacy", decoded.getUsername());
+        assertNull(decoded.getEmail());
+    }
+
+    @Test
+    public void rejectsUnknownVersions() {
+        byte[] data = UserProfileCodec.encode(fullProfile(0));
+        data[0] = 99;
+        try {
+            UserProfileCodec.decode(data);
+            fail("decoded an unknown version");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedData() {
+        byte[] data = UserProfileCodec.encode(fullProfile(0));
+        try {
+            UserProfileCodec.decode(Arrays.copyOf(data, data.length - 3));
+            fail("decoded truncated data");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void isSmallerThanJSON() {
+        List<UserProfile> userProfiles = profiles(200);
+
+        int binarySize = UserProfileCodec.encodeList(userProfiles).length;
+        int jsonSize = 0;
+        for (UserProfile userProfile : userProfiles) {
+            jsonSize += userProfile.toJSONObject().toString().getBytes().length;
+        }
+
+        System.out.println("UserProfileCodec: 200 profiles, binary " + binarySize + " bytes, JSON " + jsonSize + " bytes");
+        assertTrue("binary (" + binarySize + ") should be at most half of JSON (" + jsonSize + ")",
+                binarySize * 2 <= jsonSize);
+    }
+
+    @Test
+    public void comparesSpeedWithJSON() throws Exception {
+        List<UserProfile> userProfiles = profiles(200);
+        int rounds = 50;
+
+        // warm up both paths before timing them
+        for (int i = 0; i < rounds; i++) {
+            binaryRoundTrip(userProfiles);
+            jsonRoundTrip(userProfiles);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            binaryRoundTrip(userProfiles);
+        }
+        long binaryNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            jsonRoundTrip(userProfiles);
+        }
+        long jsonNanos = System.nanoTime() - start;
+
+        // timings are only reported, asserting on them would make the test flaky
+        System.out.println("UserProfileCodec: " + rounds + " round trips of 200 profiles, binary " +
+                binaryNanos / 1000000 + "ms, JSON " + jsonNanos / 1000000 + "ms");
+    }
+
+
+    /** Private Members **/
+
+    private static void binaryRoundTrip(List<UserProfile> userProfiles) throws IOException {
+        UserProfileCodec.decodeList(UserProfileCodec.encodeList(userProfiles));
+    }
+
+    private static void jsonRoundTrip(List<UserProfile> userProfiles) throws Exception {
+        for (UserProfile userProfile : userProfiles) {
+            new UserProfile(new JSONObject(userProfile.toJSONObject().toString()));
+        }
+    }
+
+    private static List<UserProfile> profiles(int count) {
+        List<UserProfile> userProfiles = new ArrayList<UserProfile>(count);
+        for (int i = 0; i < count; i++) {
+            userProfiles.add(fullProfile(i));
+        }
+        return userProfiles;
+    }
+
+    private static UserProfile fullProfile(int i) {
+        UserProfile userProfile = new UserProfile(IProvider.Provider.FACEBOOK, "10000" + i, "user" + i,
+                "user" + i + "@example.com", "First" + i, "Last" + i);
+        userProfile.setAvatarLink("https://graph.facebook.com/10000" + i + "/picture");
+        userProfile.setLocation("Tel Aviv");
+        userProfile.setGender("female");
+        userProfile.setLanguage("en");
+        userProfile.setBirthday("01/01/1990");
+        userProfile.setAccessToken("token" + i);
+        userProfile.setSecretKey("secret" + i);
+        return userProfile;
+    }
+
+    private static void assertSameProfile(UserProfile expected, UserProfile actual) {
+        assertEquals(expected.getProvider(), actual.getProvider());
+        assertEquals(expected.getProfileId(), actual.getProfileId());
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getEmail(), actual.getEmail());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getAvatarLink(), actual.getAvatarLink());
+        assertEquals(expected.getLocation(), actual.getLocation());
+        assertEquals(expected.getGender(), actual.getGender());
+        assertEquals(expected.getLanguage(), actual.getLanguage());
+        assertEquals(expected.getBirthday(), actual.getBirthday());
+        assertEquals(expected.getAccessToken(), actual.getAccessToken());
+        assertEquals(expected.getSecretKey(), actual.getSecretKey());
+    }
+}
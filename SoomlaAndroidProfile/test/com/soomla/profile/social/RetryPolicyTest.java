@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static final SocialError NETWORK = new SocialError(SocialError.ErrorType.NETWORK, "timeout");
+    private static final SocialError AUTH = new SocialError(SocialError.ErrorType.AUTH, "expired");
+
+    @Test
+    public void noneNeverRetries() {
+        assertEquals(1, RetryPolicy.NONE.getMaxAttempts());
+        assertFalse(RetryPolicy.NONE.shouldRetry(NETWORK, 1));
+    }
+
+    @Test
+    public void retriesTransientErrorsUpToMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0);
+
+        assertTrue(policy.shouldRetry(NETWORK, 1));
+        assertTrue(policy.shouldRetry(NETWORK, 2));
+        assertFalse(policy.shouldRetry(NETWORK, 3));
+    }
+
+    @Test
+    public void neverRetriesPermanentErrors() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0);
+
+        assertFalse(policy.shouldRetry(AUTH, 1));
+        assertFalse(policy.shouldRetry(null, 1));
+    }
+
+    @Test
+    public void delayGrowsExponentiallyUpToMax() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0);
+
+        assertEquals(100, policy.getDelayMillis(NETWORK, 1));
+        assertEquals(200, policy.getDelayMillis(NETWORK, 2));
+        assertEquals(400, policy.getDelayMillis(NETWORK, 3));
+        assertEquals(800, policy.getDelayMillis(NETWORK, 4));
+        assertEquals(1000, policy.getDelayMillis(NETWORK, 5));
+        assertEquals(1000, policy.getDelayMillis(NETWORK, 9));
+    }
+
+    @Test
+    public void jitterOnlyShortensDelay() {
+        RetryPolicy policy = new RetryPolicy(3, 1000, 1000, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.getDelayMillis(NETWORK, 1);
+            assertTrue(String.valueOf(delay), delay >= 500 && delay <= 1000);
+        }
+    }
+
+    @Test
+    public void respectsRetryAfter() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 5000, 0);
+        SocialError rateLimited = new SocialError(SocialError.ErrorType.RATE_LIMITED, "slow down", 3000);
+
+        assertTrue(policy.shouldRetry(rateLimited, 1));
+        assertEquals(3000, policy.getDelayMillis(rateLimited, 1));
+    }
+
+    @Test
+    public void givesUpWhenRetryAfterExceedsMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0);
+        SocialError rateLimited = new SocialError(SocialError.ErrorType.RATE_LIMITED, "slow down", 60000);
+
+        assertFalse(policy.shouldRetry(rateLimited, 1));
+    }
+
+    @Test
+    public void clampsInvalidArguments() {
+        RetryPolicy policy = new RetryPolicy(0, -1, -1, 2);
+
+        assertEquals(1, policy.getMaxAttempts());
+        assertEquals(0, policy.getDelayMillis(NETWORK, 1));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RetryingRequestTest {
+
+    @Test
+    public void succeedsAfterTransientFailures() {
+        FakeProvider provider = new FakeProvider(2, SocialError.ErrorType.NETWORK);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 1000, 0), provider);
+
+        request.run();
+
+        assertEquals(3, provider.mCalls);
+        assertTrue(request.mSucceeded);
+        assertNull(request.mGaveUpWith);
+        assertEquals(listOf(100L, 200L), request.mDelays);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        FakeProvider provider = new FakeProvider(5, SocialError.ErrorType.NETWORK);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 1000, 0), provider);
+
+        request.run();
+
+        assertEquals(3, provider.mCalls);
+        assertEquals(SocialError.ErrorType.NETWORK, request.mGaveUpWith.Type);
+        assertEquals(3, request.getAttempt());
+    }
+
+    @Test
+    public void doesNotRetryPermanentErrors() {
+        FakeProvider provider = new FakeProvider(1, SocialError.ErrorType.AUTH);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 1000, 0), provider);
+
+        request.run();
+
+        assertEquals(1, provider.mCalls);
+        assertEquals(SocialError.ErrorType.AUTH, request.mGaveUpWith.Type);
+        assertTrue(request.mDelays.isEmpty());
+    }
+
+    @Test
+    public void noPolicyMeansOneAttempt() {
+        FakeProvider provider = new FakeProvider(1, SocialError.ErrorType.NETWORK);
+        FakeRequest request = new FakeRequest(null, provider);
+
+        request.run();
+
+        assertEquals(1, provider.mCalls);
+        assertEquals(SocialError.ErrorType.NETWORK, request.mGaveUpWith.Type);
+    }
+
+    @Test
+    public void waitsForRetryAfter() {
+        FakeProvider provider = new FakeProvider(1, SocialError.ErrorType.RATE_LIMITED, 2500);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 5000, 0), provider);
+
+        request.run();
+
+        assertTrue(request.mSucceeded);
+        assertEquals(listOf(2500L), request.mDelays);
+    }
+
+    @Test
+    public void givesUpWhenRetryAfterIsTooLong() {
+        FakeProvider provider = new FakeProvider(1, SocialError.ErrorType.RATE_LIMITED, 60000);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 5000, 0), provider);
+
+        request.run();
+
+        assertEquals(1, provider.mCalls);
+        assertEquals(SocialError.ErrorType.RATE_LIMITED, request.mGaveUpWith.Type);
+    }
+
+    @Test
+    public void limitFailsAttemptWithoutSendingIt() {
+        FakeProvider provider = new FakeProvider(0, SocialError.ErrorType.NETWORK);
+        final SocialError limited = new SocialError(SocialError.ErrorType.RATE_LIMITED, "limited", 60000);
+        FakeRequest request = new FakeRequest(new RetryPolicy(3, 100, 5000, 0), provider) {
+            @Override
+            protected SocialError checkLimit() {
+                return limited;
+            }
+        };
+
+        request.run();
+
+        assertEquals(0, provider.mCalls);
+        assertSame(limited, request.mGaveUpWith);
+    }
+
+
+    private static List<Long> listOf(Long... delays) {
+        List<Long> list = new ArrayList<Long>();
+        for (Long delay : delays) {
+            list.add(delay);
+        }
+        return list;
+    }
+
+    /**
+     * A provider which fails a set number of times, then succeeds
+     */
+    private static class FakeProvider {
+
+        FakeProvider(int failures, SocialError.ErrorType type) {
+            this(failures, type, 0);
+        }
+
+        FakeProvider(int failures, SocialError.ErrorType type, long retryAfterMillis) {
+            mFailures = failures;
+            mType = type;
+            mRetryAfterMillis = retryAfterMillis;
+        }
+
+        SocialError call() {
+            mCalls++;
+            if (mCalls <= mFailures) {
+                return new SocialError(mType, "failure " + mCalls, mRetryAfterMillis);
+            }
+            return null;
+        }
+
+        private final int mFailures;
+        private final SocialError.ErrorType mType;
+        private final long mRetryAfterMillis;
+        private int mCalls;
+    }
+
+    /**
+     * A request which runs retries right away and records their delays
+     */
+    private static class FakeRequest extends RetryingRequest {
+
+        FakeRequest(RetryPolicy policy, FakeProvider provider) {
+            super(policy);
+            mProvider = provider;
+        }
+
+        @Override
+        protected void attempt() {
+            SocialError error = mProvider.call();
+            if (error != null) {
+                failed(error);
+            } else {
+                mSucceeded = true;
+            }
+        }
+
+        @Override
+        protected void giveUp(SocialError error) {
+            mGaveUpWith = error;
+        }
+
+        @Override
+        protected void schedule(Runnable attempt, long delayMillis) {
+            mDelays.add(delayMillis);
+            attempt.run();
+        }
+
+        private final FakeProvider mProvider;
+        private final List<Long> mDelays = new ArrayList<Long>();
+        private boolean mSucceeded;
+        private SocialError mGaveUpWith;
+    }
+}
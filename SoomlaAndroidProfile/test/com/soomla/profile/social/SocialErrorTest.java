@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SocialErrorTest {
+
+    @Test
+    public void networkAndRateLimitErrorsAreTransient() {
+        assertTrue(new SocialError(SocialError.ErrorType.NETWORK, "timeout").isTransient());
+        assertTrue(new SocialError(SocialError.ErrorType.RATE_LIMITED, "slow down").isTransient());
+    }
+
+    @Test
+    public void otherErrorsAreNotTransient() {
+        SocialError.ErrorType[] permanent = {
+                SocialError.ErrorType.AUTH,
+                SocialError.ErrorType.PERMISSION,
+                SocialError.ErrorType.CANCELLED,
+                SocialError.ErrorType.UNKNOWN
+        };
+        for (SocialError.ErrorType type : permanent) {
+            assertFalse(type.toString(), new SocialError(type, "failed").isTransient());
+        }
+    }
+
+    @Test
+    public void retryAfterIsNeverNegative() {
+        assertEquals(0, new SocialError(SocialError.ErrorType.NETWORK, "failed").RetryAfterMillis);
+        assertEquals(0, new SocialError(SocialError.ErrorType.RATE_LIMITED, "failed", -5).RetryAfterMillis);
+        assertEquals(900, new SocialError(SocialError.ErrorType.RATE_LIMITED, "failed", 900).RetryAfterMillis);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social.facebook;
+
+/**
+ * The size limits for images uploaded by <code>SoomlaFacebook</code>.
+ * <p/>
+ * An image within the limits is uploaded from its file as is. A larger image
+ * is decoded sampled down by the smallest power of two which fits it, so
+ * the decoded bitmap never takes more than the byte budget of memory.
+ */
+class ImageLimits {
+
+    /**
+     * The memory an ARGB_8888 bitmap takes per pixel
+     */
+    static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Constructor
+     *
+     * @param maxDimension the maximum width and height of an uploaded image,
+     *                     at least 1
+     * @param maxBytes the maximum memory a decoded image may take, at least
+     *                 a single pixel
+     */
+    ImageLimits(int maxDimension, long maxBytes) {
+        // any image can be sampled down to a single pixel, so these limits always fit
+        mMaxDimension = Math.max(1, maxDimension);
+        mMaxBytes = Math.max(BYTES_PER_PIXEL, maxBytes);
+    }
+
+    int getMaxDimension() {
+        return mMaxDimension;
+    }
+
+    long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Checks if an image fits the limits when decoded with the given sample size
+     *
+     * @param width the image's width
+     * @param height the image's height
+     * @param sampleSize the <code>inSampleSize</code> it would be decoded with
+     * @return true if the decoded image fits the limits
+     */
+    boolean fits(int width, int height, int sampleSize) {
+        return Math.max(sampledDimension(width, sampleSize), sampledDimension(height, sampleSize)) <= mMaxDimension &&
+                decodedBytes(width, height, sampleSize) <= mMaxBytes;
+    }
+
+    /**
+     * @param width the image's width
+     * @param height the image's height
+     * @return the smallest power of two sample size which fits the image
+     * into the limits
+     */
+    int sampleSizeFor(int width, int height) {
+        int sampleSize = 1;
+        while (!fits(width, height, sampleSize)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @param width the image's width
+     * @param height the image's height
+     * @param sampleSize the <code>inSampleSize</code> it would be decoded with
+     * @return the memory the decoded image would take, in bytes
+     */
+    static long decodedBytes(int width, int height, int sampleSize) {
+        return sampledDimension(width, sampleSize) * sampledDimension(height, sampleSize) * BYTES_PER_PIXEL;
+    }
+
+
+    /** Private Members **/
+
+    // rounded up, so the estimate is never below the actual decoded size
+    private static long sampledDimension(int dimension, int sampleSize) {
+        return (dimension + sampleSize - 1) / sampleSize;
+    }
+
+    private final int mMaxDimension;
+    private final long mMaxBytes;
+}
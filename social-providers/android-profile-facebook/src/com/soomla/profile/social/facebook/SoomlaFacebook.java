@@ -23,16 +23,23 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.net.Uri;
 import android.text.TextUtils;
 
 import com.soomla.SoomlaApp;
 import com.soomla.SoomlaUtils;
+import com.soomla.profile.ProfileExecutor;
 import com.soomla.profile.auth.AuthCallbacks;
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.UserProfile;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.RequestRegistry;
 import com.soomla.profile.social.SocialCallbacks;
+import com.soomla.profile.social.SocialError;
 import com.sromku.simple.fb.Permission;
 import com.sromku.simple.fb.SimpleFacebook;
 import com.sromku.simple.fb.SimpleFacebookConfiguration;
@@ -41,6 +48,7 @@ import com.sromku.simple.fb.entities.Photo;
 import com.sromku.simple.fb.entities.Post;
 import com.sromku.simple.fb.entities.Profile;
 import com.sromku.simple.fb.entities.Story;
+import com.sromku.simple.fb.entities.User;
 import com.sromku.simple.fb.listeners.OnFriendsListener;
 import com.sromku.simple.fb.listeners.OnLoginListener;
 import com.sromku.simple.fb.listeners.OnLogoutListener;
@@ -48,16 +56,25 @@ import com.sromku.simple.fb.listeners.OnPostsListener;
 import com.sromku.simple.fb.listeners.OnProfileListener;
 import com.sromku.simple.fb.listeners.OnPublishListener;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Soomla wrapper for SimpleFacebook (itself a wrapper to Android FB SDK).
  * <p/>
  * This class works by creating a transparent activity (SoomlaFBActivity) and working through it.
  * This is required to correctly integrate with FB activity lifecycle events
+ * <p/>
+ * When the <code>activityLessActions</code> param is set to <code>true</code>, actions which
+ * don't need any UI (status, story, image upload, feed and contacts) run directly against
+ * the logged in session and only login and dialogs go through the activity. Once the
+ * parent activity is gone, actions go through the activity again.
  */
 public class SoomlaFacebook implements ISocialProvider {
 
@@ -67,10 +84,22 @@ public class SoomlaFacebook implements ISocialProvider {
     // (need to be accessed by static context)
     private static WeakReference<Activity> WeakRefParentActivity;
     private static Provider RefProvider;
-    private static AuthCallbacks.LoginListener RefLoginListener;
-    private static SocialCallbacks.SocialActionListener RefSocialActionListener;
-    private static SocialCallbacks.FeedListener RefFeedListener;
-    private static SocialCallbacks.ContactsListener RefContactsListener;
+
+    // listeners of requests handed over to SoomlaFBActivity, the request ID
+    // travels with the intent
+    private static final RequestRegistry Requests = new RequestRegistry("fb");
+
+    // friends cursors waiting for their next page to be requested, keyed by
+    // the cursor string handed to the caller
+    private static final int MAX_CONTACTS_PAGERS = 8;
+    private static int ContactsPagerCounter = 0;
+    private static final Map<String, ContactsPager> ContactsPagers =
+            new LinkedHashMap<String, ContactsPager>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ContactsPager> eldest) {
+                    return size() > MAX_CONTACTS_PAGERS;
+                }
+            };
 
     public static final int ACTION_LOGIN = 0;
 
@@ -81,6 +110,20 @@ public class SoomlaFacebook implements ISocialProvider {
     public static final int ACTION_GET_CONTACTS = 14;
     public static final int ACTION_PUBLISH_STATUS_DIALOG = 15;
     public static final int ACTION_PUBLISH_STORY_DIALOG = 16;
+    public static final int ACTION_GET_CONTACTS_PAGE = 17;
+    public static final int ACTION_UPLOAD_BITMAP = 18;
+
+    private static final String PUBLISH_ACTIONS_PERMISSION = "publish_actions";
+
+    // limits for images uploaded by uploadImage, larger images are sampled down
+    private static final int DEFAULT_MAX_IMAGE_DIMENSION = 2048;
+    private static final long DEFAULT_MAX_IMAGE_BYTES = 8 * 1024 * 1024;
+
+    // when enabled, actions which don't need any UI run directly against the
+    // open session instead of going through SoomlaFBActivity
+    private boolean activityLessActions = false;
+    private ImageLimits imageLimits = new ImageLimits(DEFAULT_MAX_IMAGE_DIMENSION, DEFAULT_MAX_IMAGE_BYTES);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     static {
         String fbAppId = "<fbAppId>";
@@ -126,16 +169,47 @@ public class SoomlaFacebook implements ISocialProvider {
 
     }
 
+    /**
+     * Whatever runs a Facebook action and needs to know when it's done.
+     * This is either a <code>SoomlaFBActivity</code> or, for actions which
+     * don't need any UI, the long-lived <code>DIRECT_HOST</code>.
+     */
+    private interface ActionHost {
+
+        /**
+         * Called once the action delivered its result to its listener
+         */
+        void onActionDone();
+    }
+
+    private static final ActionHost DIRECT_HOST = new ActionHost() {
+        @Override
+        public void onActionDone() {
+            // nothing to tear down, the session outlives the action
+        }
+    };
+
     /**
      * The main SOOMLA Facebook activity
      * <p/>
      * This activity allows the framework to popup a window which in turns
      * communicates with Facebook to use the SDK
      */
-    public static class SoomlaFBActivity extends Activity {
+    public static class SoomlaFBActivity extends Activity implements ActionHost {
 
         private static final String TAG = "SOOMLA SoomlaFacebook$SoomlaFBActivity";
         private int preformingAction;
+        private String mRequestId;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onActionDone() {
+            SoomlaUtils.LogDebug(TAG, "Request done " + mRequestId);
+            Requests.remove(mRequestId);
+            finish();
+        }
 
         /**
          * {@inheritDoc}
@@ -151,19 +225,27 @@ public class SoomlaFacebook implements ISocialProvider {
 
             Intent intent = getIntent();
             preformingAction = intent.getIntExtra("action", -1);
+            mRequestId = intent.getStringExtra("requestId");
+            Object listener = Requests.get(mRequestId);
+            if (listener == null) {
+                SoomlaUtils.LogWarning(TAG, "no listener for request " + mRequestId + ", action:" + preformingAction);
+                finish();
+                return;
+            }
+
             switch (preformingAction) {
                 case ACTION_LOGIN: {
-                    login(this, RefLoginListener);
+                    login(this, (AuthCallbacks.LoginListener) listener);
                     break;
                 }
                 case ACTION_PUBLISH_STATUS: {
                     String status = intent.getStringExtra("status");
-                    updateStatus(status, RefSocialActionListener);
+                    updateStatus(this, status, (SocialCallbacks.SocialActionListener) listener);
                     break;
                 }
                 case ACTION_PUBLISH_STATUS_DIALOG: {
                     String link = intent.getStringExtra("link");
-                    updateStatusDialog(link, RefSocialActionListener);
+                    updateStatusDialog(link, (SocialCallbacks.SocialActionListener) listener);
                     break;
                 }
                 case ACTION_PUBLISH_STORY: {
@@ -173,7 +255,8 @@ public class SoomlaFacebook implements ISocialProvider {
                     String description = intent.getStringExtra("description");
                     String link = intent.getStringExtra("link");
                     String picture = intent.getStringExtra("picture");
-                    updateStory(message, name, caption, description, link, picture, RefSocialActionListener);
+                    updateStory(this, message, name, caption, description, link, picture,
+                            (SocialCallbacks.SocialActionListener) listener);
                     break;
                 }
                 case ACTION_PUBLISH_STORY_DIALOG: {
@@ -182,68 +265,37 @@ public class SoomlaFacebook implements ISocialProvider {
                     String description = intent.getStringExtra("description");
                     String link = intent.getStringExtra("link");
                     String picture = intent.getStringExtra("picture");
-                    updateStoryDialog(name, caption, description, link, picture, RefSocialActionListener);
+                    updateStoryDialog(name, caption, description, link, picture,
+                            (SocialCallbacks.SocialActionListener) listener);
                     break;
                 }
                 case ACTION_UPLOAD_IMAGE: {
-                    String message = intent.getStringExtra("message");
-                    String filePath = intent.getStringExtra("filePath");
-                    uploadImage(message, filePath, RefSocialActionListener);
+                    FileUpload fileUpload = (FileUpload) listener;
+                    uploadImage(this, fileUpload.message, fileUpload.filePath, fileUpload.imageLimits,
+                            fileUpload.socialActionListener);
                     break;
                 }
-                case ACTION_GET_FEED: {
-                    getFeed(RefFeedListener);
-                    break;
-                }
-                case ACTION_GET_CONTACTS: {
-                    getContacts(RefContactsListener);
-                    break;
-                }
-                default: {
-                    SoomlaUtils.LogWarning(TAG, "action unknown:" + preformingAction);
-                    break;
-                }
-            }
-        }
-
-        private void clearListeners() {
-            SoomlaUtils.LogDebug(TAG, "Clearing Listeners");
-
-            switch (preformingAction) {
-                case ACTION_LOGIN: {
-                    RefLoginListener = null;
-                    break;
-                }
-                case ACTION_PUBLISH_STATUS: {
-                    RefSocialActionListener = null;
-                    break;
-                }
-                case ACTION_PUBLISH_STATUS_DIALOG: {
-                    RefSocialActionListener = null;
-                    break;
-                }
-                case ACTION_PUBLISH_STORY: {
-                    RefSocialActionListener = null;
-                    break;
-                }
-                case ACTION_PUBLISH_STORY_DIALOG: {
-                    RefSocialActionListener = null;
-                    break;
-                }
-                case ACTION_UPLOAD_IMAGE: {
-                    RefSocialActionListener = null;
+                case ACTION_UPLOAD_BITMAP: {
+                    BitmapUpload bitmapUpload = (BitmapUpload) listener;
+                    uploadImage(this, bitmapUpload.message, bitmapUpload.bitmap, bitmapUpload.socialActionListener);
                     break;
                 }
                 case ACTION_GET_FEED: {
-                    RefFeedListener = null;
+                    getFeed(this, listener);
                     break;
                 }
                 case ACTION_GET_CONTACTS: {
-                    RefContactsListener = null;
+                    getContacts(this, (SocialCallbacks.ContactsListener) listener);
+                    break;
+                }
+                case ACTION_GET_CONTACTS_PAGE: {
+                    String cursor = intent.getStringExtra("cursor");
+                    getContacts(this, cursor, (SocialCallbacks.ContactsPageListener) listener);
                     break;
                 }
                 default: {
                     SoomlaUtils.LogWarning(TAG, "action unknown:" + preformingAction);
+                    onActionDone();
                     break;
                 }
             }
@@ -282,16 +334,14 @@ public class SoomlaFacebook implements ISocialProvider {
                         SoomlaUtils.LogError(TAG, "There was an error running success handler for login success. error: " + ex.getLocalizedMessage());
                         ex.printStackTrace();
                     }
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
 
                 @Override
                 public void onNotAcceptingPermissions(Permission.Type type) {
                     SoomlaUtils.LogDebug(TAG, "login/onNotAcceptingPermissions:" + type + " [" + loginListener + "]");
                     loginListener.fail("onNotAcceptingPermissions: " + type);
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
 
                 @Override
@@ -303,16 +353,14 @@ public class SoomlaFacebook implements ISocialProvider {
                 public void onException(Throwable throwable) {
                     SoomlaUtils.LogDebug(TAG, "login/onException:" + throwable.getLocalizedMessage() + " [" + loginListener + "]");
                     loginListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
 
                 @Override
                 public void onFail(String s) {
                     SoomlaUtils.LogDebug(TAG, "login/onFail:" + s + " [" + loginListener + "]");
                     loginListener.fail("onFail: " + s);
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
             });
         }
@@ -334,17 +382,15 @@ public class SoomlaFacebook implements ISocialProvider {
                     super.onComplete(postId);
                     SoomlaUtils.LogDebug(TAG, "updateStatus/onComplete" + " [" + socialActionListener + "]");
                     socialActionListener.success();
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
 
                 @Override
                 public void onException(Throwable throwable) {
                     super.onException(throwable);
                     SoomlaUtils.LogWarning(TAG, "updateStatus/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
+                    SocialCallbacks.fail(socialActionListener, toSocialError("onException: ", throwable));
+                    onActionDone();
                 }
 
                 @Override
@@ -352,89 +398,7 @@ public class SoomlaFacebook implements ISocialProvider {
                     super.onFail(reason);
                     SoomlaUtils.LogWarning(TAG, "updateStatus/onFail: " + reason + " [" + socialActionListener + "]");
                     socialActionListener.fail("onFail: " + reason);
-                    clearListeners();
-                    finish();
-                }
-            });
-        }
-
-        private void updateStatus(String status, final SocialCallbacks.SocialActionListener socialActionListener) {
-            SoomlaUtils.LogDebug(TAG, "updateStatus -- " + SimpleFacebook.getInstance().toString());
-            Feed feed = new Feed.Builder()
-                    .setMessage(status)
-                    .build();
-
-            boolean withDialog = false;//todo: give another API with dialog
-            SimpleFacebook.getInstance().publish(feed, withDialog, new OnPublishListener() {
-
-                @Override
-                public void onComplete(String postId) {
-                    super.onComplete(postId);
-                    SoomlaUtils.LogDebug(TAG, "updateStatus/onComplete" + " [" + socialActionListener + "]");
-                    socialActionListener.success();
-                    clearListeners();
-                    finish();
-                }
-
-                @Override
-                public void onException(Throwable throwable) {
-                    super.onException(throwable);
-                    SoomlaUtils.LogWarning(TAG, "updateStatus/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
-                }
-
-                @Override
-                public void onFail(String reason) {
-                    super.onFail(reason);
-                    SoomlaUtils.LogWarning(TAG, "updateStatus/onFail: " + reason + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onFail: " + reason);
-                    clearListeners();
-                    finish();
-                }
-            });
-        }
-
-        private void updateStory(String message, String name, String caption, String description, String link, String picture,
-                                 final SocialCallbacks.SocialActionListener socialActionListener) {
-            SoomlaUtils.LogDebug(TAG, "updateStory -- " + SimpleFacebook.getInstance().toString());
-            Feed feed = new Feed.Builder()
-                    .setMessage(message)
-                    .setName(name)
-                    .setCaption(caption)
-                    .setDescription(description)
-                    .setLink(link)
-                    .setPicture(picture)
-                    .build();
-
-            boolean withDialog = false;//todo: give another API with dialog
-            SimpleFacebook.getInstance().publish(feed, withDialog, new OnPublishListener() {
-
-                @Override
-                public void onComplete(String postId) {
-                    SoomlaUtils.LogDebug(TAG, "innerUpdateStory/onComplete" + " [" + socialActionListener + "]");
-                    socialActionListener.success();
-                    clearListeners();
-                    finish();
-                }
-
-                @Override
-                public void onException(Throwable throwable) {
-                    super.onException(throwable);
-                    SoomlaUtils.LogWarning(TAG, "innerUpdateStory/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
-                }
-
-                @Override
-                public void onFail(String reason) {
-                    super.onFail(reason);
-                    SoomlaUtils.LogWarning(TAG, "innerUpdateStory/onFail: " + reason + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onFail: " + reason);
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
             });
         }
@@ -468,17 +432,15 @@ public class SoomlaFacebook implements ISocialProvider {
                 public void onComplete(String postId) {
                     SoomlaUtils.LogDebug(TAG, "innerUpdateStoryDialog/onComplete" + " [" + socialActionListener + "]");
                     socialActionListener.success();
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
 
                 @Override
                 public void onException(Throwable throwable) {
                     super.onException(throwable);
                     SoomlaUtils.LogWarning(TAG, "innerUpdateStoryDialog/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
+                    SocialCallbacks.fail(socialActionListener, toSocialError("onException: ", throwable));
+                    onActionDone();
                 }
 
                 @Override
@@ -486,139 +448,352 @@ public class SoomlaFacebook implements ISocialProvider {
                     super.onFail(reason);
                     SoomlaUtils.LogWarning(TAG, "innerUpdateStoryDialog/onFail: " + reason + " [" + socialActionListener + "]");
                     socialActionListener.fail("onFail: " + reason);
-                    clearListeners();
-                    finish();
+                    onActionDone();
                 }
             });
         }
+    }
 
-        private void uploadImage(String message, String filePath, final SocialCallbacks.SocialActionListener socialActionListener) {
-            SoomlaUtils.LogDebug(TAG, "uploadImage -- " + SimpleFacebook.getInstance().toString());
-            Bitmap bitmap = BitmapFactory.decodeFile(filePath);
-            Photo photo = new Photo.Builder()
-                    .setImage(bitmap)
-                    .setName(message)
-                    .build();
+    private static void updateStatus(final ActionHost host, String status, final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "updateStatus -- " + SimpleFacebook.getInstance().toString());
+        Feed feed = new Feed.Builder()
+                .setMessage(status)
+                .build();
 
-            SimpleFacebook.getInstance().publish(photo, new OnPublishListener() {
+        boolean withDialog = false;//todo: give another API with dialog
+        SimpleFacebook.getInstance().publish(feed, withDialog, new OnPublishListener() {
 
-                @Override
-                public void onComplete(String response) {
-                    super.onComplete(response);
-                    SoomlaUtils.LogDebug(TAG, "uploadImage/onComplete" + " [" + socialActionListener + "]");
-                    socialActionListener.success();
-                    clearListeners();
-                    finish();
-                }
+            @Override
+            public void onComplete(String postId) {
+                super.onComplete(postId);
+                SoomlaUtils.LogDebug(TAG, "updateStatus/onComplete" + " [" + socialActionListener + "]");
+                socialActionListener.success();
+                host.onActionDone();
+            }
 
-                @Override
-                public void onException(Throwable throwable) {
-                    super.onException(throwable);
-                    SoomlaUtils.LogWarning(TAG, "uploadImage/onException:" + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
-                    socialActionListener.fail("onException:" + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
-                }
+            @Override
+            public void onException(Throwable throwable) {
+                super.onException(throwable);
+                SoomlaUtils.LogWarning(TAG, "updateStatus/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
+                SocialCallbacks.fail(socialActionListener, toSocialError("onException: ", throwable));
+                host.onActionDone();
+            }
 
-                @Override
-                public void onFail(String reason) {
-                    super.onFail(reason);
-                    SoomlaUtils.LogWarning(TAG, "uploadImage/onFail:" + reason + " [" + socialActionListener + "]");
-                    socialActionListener.fail("fail:" + reason);
-                    clearListeners();
-                    finish();
-                }
+            @Override
+            public void onFail(String reason) {
+                super.onFail(reason);
+                SoomlaUtils.LogWarning(TAG, "updateStatus/onFail: " + reason + " [" + socialActionListener + "]");
+                socialActionListener.fail("onFail: " + reason);
+                host.onActionDone();
+            }
+        });
+    }
 
-                @Override
-                public void onThinking() {
-                    super.onThinking();
-                }
-            });
-        }
+    private static void updateStory(final ActionHost host, String message, String name, String caption, String description, String link, String picture,
+                             final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "updateStory -- " + SimpleFacebook.getInstance().toString());
+        Feed feed = new Feed.Builder()
+                .setMessage(message)
+                .setName(name)
+                .setCaption(caption)
+                .setDescription(description)
+                .setLink(link)
+                .setPicture(picture)
+                .build();
 
-        private void getContacts(final SocialCallbacks.ContactsListener contactsListener) {
-            Profile.Properties properties = new Profile.Properties.Builder()
-                    .add(Profile.Properties.ID)
-//                    .add(Profile.Properties.USER_NAME) //deprecated in v2
-                    .add(Profile.Properties.NAME)
-                    .add(Profile.Properties.EMAIL)
-                    .add(Profile.Properties.FIRST_NAME)
-                    .add(Profile.Properties.LAST_NAME)
-                    .add(Profile.Properties.PICTURE)
-                    .build();
-            SimpleFacebook.getInstance().getFriends(properties, new OnFriendsListener() {
+        boolean withDialog = false;//todo: give another API with dialog
+        SimpleFacebook.getInstance().publish(feed, withDialog, new OnPublishListener() {
+
+            @Override
+            public void onComplete(String postId) {
+                SoomlaUtils.LogDebug(TAG, "innerUpdateStory/onComplete" + " [" + socialActionListener + "]");
+                socialActionListener.success();
+                host.onActionDone();
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                super.onException(throwable);
+                SoomlaUtils.LogWarning(TAG, "innerUpdateStory/onException: " + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
+                SocialCallbacks.fail(socialActionListener, toSocialError("onException: ", throwable));
+                host.onActionDone();
+            }
+
+            @Override
+            public void onFail(String reason) {
+                super.onFail(reason);
+                SoomlaUtils.LogWarning(TAG, "innerUpdateStory/onFail: " + reason + " [" + socialActionListener + "]");
+                socialActionListener.fail("onFail: " + reason);
+                host.onActionDone();
+            }
+        });
+    }
+
+    private static void uploadImage(final ActionHost host, final String message, final String filePath,
+                                    final ImageLimits imageLimits,
+                                    final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "uploadImage -- " + SimpleFacebook.getInstance().toString());
+
+        // decoding may take a while for big images, keep it off the main thread
+        try {
+            new AsyncTask<Void, Void, Boolean>() {
+                // set when the image had to be decoded at a reduced size
+                private Bitmap mDecoded;
 
                 @Override
-                public void onComplete(List<Profile> response) {
-                    super.onComplete(response);
-                    SoomlaUtils.LogDebug(TAG, "getContacts/onComplete " + response.size());
-
-                    List<UserProfile> userProfiles = new ArrayList<UserProfile>();
-                    for (Profile profile : response) {
-                        userProfiles.add(new UserProfile(
-                                RefProvider, profile.getId(), profile.getUsername(), profile.getEmail(),
-                                profile.getFirstName(), profile.getLastName()));
+                protected Boolean doInBackground(Void... params) {
+                    // images within the limits are streamed from the file as is, larger
+                    // ones are decoded at a reduced size
+                    BitmapFactory.Options bounds = decodeImageBounds(filePath);
+                    if (bounds == null) {
+                        return false;
                     }
-                    contactsListener.success(userProfiles);
-                    clearListeners();
-                    finish();
+                    if (imageLimits.fits(bounds.outWidth, bounds.outHeight, 1)) {
+                        return true;
+                    }
+                    mDecoded = decodeSampledImage(filePath, bounds, imageLimits);
+                    return mDecoded != null;
                 }
 
                 @Override
-                public void onException(Throwable throwable) {
-                    super.onException(throwable);
-                    SoomlaUtils.LogWarning(TAG, "getContacts/onException:" + throwable.getLocalizedMessage() + " [" + contactsListener + "]");
-                    contactsListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
-                }
+                protected void onPostExecute(Boolean hasImage) {
+                    if (!hasImage) {
+                        SoomlaUtils.LogWarning(TAG, "uploadImage: can't read image " + filePath + " [" + socialActionListener + "]");
+                        socialActionListener.fail("Can't read image: " + filePath);
+                        host.onActionDone();
+                        return;
+                    }
 
-                @Override
-                public void onFail(String reason) {
-                    contactsListener.fail("onFail: " + reason);
-                    SoomlaUtils.LogWarning(TAG, "getContacts/onFail:" + reason + " [" + contactsListener + "]");
-                    clearListeners();
-                    finish();
+                    Photo.Builder photoBuilder = new Photo.Builder()
+                            .setName(message);
+                    if (mDecoded != null) {
+                        photoBuilder.setImage(mDecoded);
+                    } else {
+                        photoBuilder.setImage(new File(filePath));
+                    }
+                    publishPhoto(host, photoBuilder.build(), mDecoded, socialActionListener);
                 }
-            });
+            }.executeOnExecutor(ProfileExecutor.get());
+        } catch (RejectedExecutionException e) {
+            SoomlaUtils.LogWarning(TAG, "uploadImage: " + e.getMessage() + " [" + socialActionListener + "]");
+            socialActionListener.fail("Can't decode image: " + e.getMessage());
+            host.onActionDone();
         }
+    }
 
-        public void getFeed(final SocialCallbacks.FeedListener feedListener) {
-            SimpleFacebook.getInstance().getPosts(Post.PostType.ALL, new OnPostsListener() {
+    private static void uploadImage(final ActionHost host, String message, Bitmap bitmap, final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "uploadImage bitmap -- " + SimpleFacebook.getInstance().toString());
+        Photo photo = new Photo.Builder()
+                .setName(message)
+                .setImage(bitmap)
+                .build();
 
-                @Override
-                public void onComplete(List<Post> posts) {
-                    super.onComplete(posts);
-                    SoomlaUtils.LogDebug(TAG, "getFeed/onComplete" + " [" + feedListener + "]");
+        // the bitmap belongs to the caller, don't recycle it
+        publishPhoto(host, photo, null, socialActionListener);
+    }
+
+    /**
+     * Publishes the given photo
+     *
+     * @param host the host of the action
+     * @param photo the photo to publish
+     * @param bitmap a bitmap to recycle once the photo was published (can be null)
+     * @param socialActionListener a callback for this action
+     */
+    private static void publishPhoto(final ActionHost host, Photo photo, final Bitmap bitmap,
+                                     final SocialCallbacks.SocialActionListener socialActionListener) {
+        SimpleFacebook.getInstance().publish(photo, new OnPublishListener() {
 
+            @Override
+            public void onComplete(String response) {
+                super.onComplete(response);
+                SoomlaUtils.LogDebug(TAG, "uploadImage/onComplete" + " [" + socialActionListener + "]");
+                recycle(bitmap);
+                socialActionListener.success();
+                host.onActionDone();
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                super.onException(throwable);
+                SoomlaUtils.LogWarning(TAG, "uploadImage/onException:" + throwable.getLocalizedMessage() + " [" + socialActionListener + "]");
+                recycle(bitmap);
+                SocialCallbacks.fail(socialActionListener, toSocialError("onException:", throwable));
+                host.onActionDone();
+            }
+
+            @Override
+            public void onFail(String reason) {
+                super.onFail(reason);
+                SoomlaUtils.LogWarning(TAG, "uploadImage/onFail:" + reason + " [" + socialActionListener + "]");
+                recycle(bitmap);
+                socialActionListener.fail("fail:" + reason);
+                host.onActionDone();
+            }
+
+            @Override
+            public void onThinking() {
+                super.onThinking();
+            }
+        });
+    }
+
+    /**
+     * Reads the dimensions of the given image without decoding it
+     *
+     * @param filePath the image's location on the device
+     * @return the image's bounds, or null if it's not a readable image
+     */
+    private static BitmapFactory.Options decodeImageBounds(String filePath) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        return bounds;
+    }
+
+    /**
+     * Decodes the given image, sampled down by the smallest power of two
+     * which fits it into the image limits
+     *
+     * @param filePath the image's location on the device
+     * @param bounds the image's bounds
+     * @param imageLimits the limits to fit the image into
+     * @return the decoded image, or null if it couldn't be decoded
+     */
+    private static Bitmap decodeSampledImage(String filePath, BitmapFactory.Options bounds, ImageLimits imageLimits) {
+        int sampleSize = imageLimits.sampleSizeFor(bounds.outWidth, bounds.outHeight);
+
+        SoomlaUtils.LogDebug(TAG, "decoding " + bounds.outWidth + "x" + bounds.outHeight +
+                " image with sample size " + sampleSize);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        try {
+            return BitmapFactory.decodeFile(filePath, options);
+        } catch (OutOfMemoryError e) {
+            SoomlaUtils.LogError(TAG, "Out of memory decoding image " + filePath);
+            return null;
+        }
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.recycle();
+        }
+    }
+
+    private static void getContacts(final ActionHost host, final SocialCallbacks.ContactsListener contactsListener) {
+        SimpleFacebook.getInstance().getFriends(createContactsProperties(), new OnFriendsListener() {
+
+            @Override
+            public void onComplete(List<Profile> response) {
+                super.onComplete(response);
+                SoomlaUtils.LogDebug(TAG, "getContacts/onComplete " + response.size());
+
+                contactsListener.success(createUserProfiles(response));
+                host.onActionDone();
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                super.onException(throwable);
+                SoomlaUtils.LogWarning(TAG, "getContacts/onException:" + throwable.getLocalizedMessage() + " [" + contactsListener + "]");
+                SocialCallbacks.fail(contactsListener, toSocialError("onException: ", throwable));
+                host.onActionDone();
+            }
+
+            @Override
+            public void onFail(String reason) {
+                contactsListener.fail("onFail: " + reason);
+                SoomlaUtils.LogWarning(TAG, "getContacts/onFail:" + reason + " [" + contactsListener + "]");
+                host.onActionDone();
+            }
+        });
+    }
+
+    private static void getContacts(final ActionHost host, String cursor, final SocialCallbacks.ContactsPageListener contactsListener) {
+        if (TextUtils.isEmpty(cursor)) {
+            SimpleFacebook.getInstance().getFriends(createContactsProperties(), new ContactsPager(host, contactsListener));
+            return;
+        }
+
+        ContactsPager pager;
+        synchronized (ContactsPagers) {
+            pager = ContactsPagers.remove(cursor);
+        }
+        if (pager == null) {
+            SoomlaUtils.LogWarning(TAG, "getContacts: unknown or expired cursor " + cursor);
+            contactsListener.fail("Unknown or expired cursor: " + cursor);
+            host.onActionDone();
+            return;
+        }
+
+        pager.attach(host, contactsListener);
+        pager.getNext();
+    }
+
+    private static void getFeed(final ActionHost host, final Object feedListener) {
+        SimpleFacebook.getInstance().getPosts(Post.PostType.ALL, new OnPostsListener() {
+
+            @Override
+            public void onComplete(List<Post> posts) {
+                super.onComplete(posts);
+                SoomlaUtils.LogDebug(TAG, "getFeed/onComplete" + " [" + feedListener + "]");
+
+                if (feedListener instanceof SocialCallbacks.FeedItemsListener) {
+                    List<FeedItem> feedItems = new ArrayList<FeedItem>(posts.size());
+                    for (Post post : posts) {
+                        feedItems.add(toFeedItem(post));
+                    }
+                    ((SocialCallbacks.FeedItemsListener) feedListener).success(feedItems);
+                } else {
                     List<String> feeds = new ArrayList<String>();
                     for (Post post : posts) {
                         feeds.add(post.getMessage());
                     }
-                    feedListener.success(feeds);
-                    clearListeners();
-                    finish();
+                    ((SocialCallbacks.FeedListener) feedListener).success(feeds);
                 }
+                host.onActionDone();
+            }
 
-                @Override
-                public void onException(Throwable throwable) {
-                    super.onException(throwable);
-                    SoomlaUtils.LogWarning(TAG, "getFeed/onException:" + throwable.getLocalizedMessage() + " [" + feedListener + "]");
-                    feedListener.fail("onException: " + throwable.getLocalizedMessage());
-                    clearListeners();
-                    finish();
-                }
+            @Override
+            public void onException(Throwable throwable) {
+                super.onException(throwable);
+                SoomlaUtils.LogWarning(TAG, "getFeed/onException:" + throwable.getLocalizedMessage() + " [" + feedListener + "]");
+                SocialCallbacks.fail(feedListener, toSocialError("onException: ", throwable));
+                host.onActionDone();
+            }
 
-                @Override
-                public void onFail(String reason) {
-                    super.onFail(reason);
-                    SoomlaUtils.LogWarning(TAG, "getFeed/onFail:" + reason + " [" + feedListener + "]");
-                    feedListener.fail("onFail: " + reason);
-                    clearListeners();
-                    finish();
-                }
-            });
+            @Override
+            public void onFail(String reason) {
+                super.onFail(reason);
+                SoomlaUtils.LogWarning(TAG, "getFeed/onFail:" + reason + " [" + feedListener + "]");
+                SocialCallbacks.fail(feedListener,
+                        new SocialError(SocialError.ErrorType.UNKNOWN, "onFail: " + reason));
+                host.onActionDone();
+            }
+        });
+    }
+
+    private static FeedItem toFeedItem(Post post) {
+        List<String> mediaUrls = new ArrayList<String>();
+        if (!TextUtils.isEmpty(post.getSource())) {
+            mediaUrls.add(post.getSource());
+        } else if (!TextUtils.isEmpty(post.getPicture())) {
+            mediaUrls.add(post.getPicture());
         }
+
+        // Facebook sends the creation time in seconds
+        Long createdTime = post.getCreatedTime();
+        User author = post.getFrom();
+        return new FeedItem(RefProvider, post.getId(),
+                createdTime != null ? createdTime * 1000 : 0,
+                author != null ? author.getId() : null,
+                author != null ? author.getName() : null,
+                post.getMessage(), mediaUrls);
     }
 
     /**
@@ -630,10 +805,10 @@ public class SoomlaFacebook implements ISocialProvider {
         WeakRefParentActivity = new WeakReference<Activity>(parentActivity);
 
         RefProvider = getProvider();
-        RefLoginListener = loginListener;
         Intent intent = new Intent(parentActivity, SoomlaFBActivity.class);
 
         intent.putExtra("action", ACTION_LOGIN);
+        intent.putExtra("requestId", Requests.register(loginListener));
         parentActivity.startActivity(intent);
     }
 
@@ -738,13 +913,25 @@ public class SoomlaFacebook implements ISocialProvider {
      * {@inheritDoc}
      */
     @Override
-    public void updateStatus(String status, final SocialCallbacks.SocialActionListener socialActionListener) {
+    public void updateStatus(final String status, final SocialCallbacks.SocialActionListener socialActionListener) {
         SoomlaUtils.LogDebug(TAG, "updateStatus -- " + SimpleFacebook.getInstance().toString());
 
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
+        final Activity directActivity = getDirectActivity(true);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    updateStatus(DIRECT_HOST, status, socialActionListener);
+                }
+            });
+            return;
+        }
+
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STATUS);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("status", status);
         WeakRefParentActivity.get().startActivity(intent);
     }
@@ -757,9 +944,9 @@ public class SoomlaFacebook implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "updateStatus -- " + SimpleFacebook.getInstance().toString());
 
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STATUS_DIALOG);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("link", link);
         WeakRefParentActivity.get().startActivity(intent);
     }
@@ -768,12 +955,25 @@ public class SoomlaFacebook implements ISocialProvider {
      * {@inheritDoc}
      */
     @Override
-    public void updateStory(String message, String name, String caption, String description, String link, String picture,
+    public void updateStory(final String message, final String name, final String caption, final String description,
+                            final String link, final String picture,
                             final SocialCallbacks.SocialActionListener socialActionListener) {
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
+        final Activity directActivity = getDirectActivity(true);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    updateStory(DIRECT_HOST, message, name, caption, description, link, picture, socialActionListener);
+                }
+            });
+            return;
+        }
+
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STORY);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("message", message);
         intent.putExtra("name", name);
         intent.putExtra("caption", caption);
@@ -790,9 +990,9 @@ public class SoomlaFacebook implements ISocialProvider {
     public void updateStoryDialog(String name, String caption, String description, String link, String picture,
                                   SocialCallbacks.SocialActionListener socialActionListener) {
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STORY_DIALOG);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("name", name);
         intent.putExtra("caption", caption);
         intent.putExtra("description", description);
@@ -849,21 +1049,166 @@ public class SoomlaFacebook implements ISocialProvider {
     @Override
     public void getContacts(final SocialCallbacks.ContactsListener contactsListener) {
         RefProvider = getProvider();
-        RefContactsListener = contactsListener;
+        final Activity directActivity = getDirectActivity(false);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    getContacts(DIRECT_HOST, contactsListener);
+                }
+            });
+            return;
+        }
+
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_GET_CONTACTS);
+        intent.putExtra("requestId", Requests.register(contactsListener));
         WeakRefParentActivity.get().startActivity(intent);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * SimpleFacebook decides the size of each page, so <code>pageSize</code> is ignored.
+     */
+    @Override
+    public void getContacts(final String cursor, int pageSize, final SocialCallbacks.ContactsPageListener contactsListener) {
+        RefProvider = getProvider();
+        final Activity directActivity = getDirectActivity(false);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    getContacts(DIRECT_HOST, cursor, contactsListener);
+                }
+            });
+            return;
+        }
+
+        Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
+        intent.putExtra("action", ACTION_GET_CONTACTS_PAGE);
+        intent.putExtra("requestId", Requests.register(contactsListener));
+        intent.putExtra("cursor", cursor);
+        WeakRefParentActivity.get().startActivity(intent);
+    }
+
+    /**
+     * Keeps a SimpleFacebook friends cursor alive between page requests.
+     * SimpleFacebook delivers every page to the listener which started the
+     * fetch, so the pager forwards each page to whoever requested it.
+     */
+    private static class ContactsPager extends OnFriendsListener {
+
+        private ActionHost mHost;
+        private SocialCallbacks.ContactsPageListener mContactsListener;
+
+        ContactsPager(ActionHost host, SocialCallbacks.ContactsPageListener contactsListener) {
+            attach(host, contactsListener);
+        }
+
+        void attach(ActionHost host, SocialCallbacks.ContactsPageListener contactsListener) {
+            mHost = host;
+            mContactsListener = contactsListener;
+        }
+
+        @Override
+        public void onComplete(List<Profile> response) {
+            super.onComplete(response);
+            SoomlaUtils.LogDebug(TAG, "getContacts/onComplete page " + getPageNum() + " " + response.size());
+
+            boolean hasMore = hasNext();
+            String nextCursor = null;
+            if (hasMore) {
+                synchronized (ContactsPagers) {
+                    nextCursor = "fb_contacts_" + (++ContactsPagerCounter);
+                    ContactsPagers.put(nextCursor, this);
+                }
+            }
+
+            mContactsListener.success(createUserProfiles(response), nextCursor, hasMore);
+            done();
+        }
+
+        @Override
+        public void onException(Throwable throwable) {
+            super.onException(throwable);
+            SoomlaUtils.LogWarning(TAG, "getContacts/onException:" + throwable.getLocalizedMessage() + " [" + mContactsListener + "]");
+            SocialCallbacks.fail(mContactsListener, toSocialError("onException: ", throwable));
+            done();
+        }
+
+        @Override
+        public void onFail(String reason) {
+            SoomlaUtils.LogWarning(TAG, "getContacts/onFail:" + reason + " [" + mContactsListener + "]");
+            mContactsListener.fail("onFail: " + reason);
+            done();
+        }
+
+        private void done() {
+            ActionHost host = mHost;
+            mHost = null;
+            mContactsListener = null;
+            host.onActionDone();
+        }
+    }
+
+    private static Profile.Properties createContactsProperties() {
+        return new Profile.Properties.Builder()
+                .add(Profile.Properties.ID)
+//                    .add(Profile.Properties.USER_NAME) //deprecated in v2
+                .add(Profile.Properties.NAME)
+                .add(Profile.Properties.EMAIL)
+                .add(Profile.Properties.FIRST_NAME)
+                .add(Profile.Properties.LAST_NAME)
+                .add(Profile.Properties.PICTURE)
+                .build();
+    }
+
+    private static List<UserProfile> createUserProfiles(List<Profile> profiles) {
+        List<UserProfile> userProfiles = new ArrayList<UserProfile>(profiles.size());
+        for (Profile profile : profiles) {
+            userProfiles.add(new UserProfile(
+                    RefProvider, profile.getId(), profile.getUsername(), profile.getEmail(),
+                    profile.getFirstName(), profile.getLastName()));
+        }
+        return userProfiles;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void getFeed(final SocialCallbacks.FeedListener feedListener) {
+        requestFeed(feedListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getFeedItems(final SocialCallbacks.FeedItemsListener feedItemsListener) {
+        requestFeed(feedItemsListener);
+    }
+
+    private void requestFeed(final Object feedListener) {
         RefProvider = getProvider();
-        RefFeedListener = feedListener;
+        final Activity directActivity = getDirectActivity(false);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    getFeed(DIRECT_HOST, feedListener);
+                }
+            });
+            return;
+        }
+
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_GET_FEED);
+        intent.putExtra("requestId", Requests.register(feedListener));
         WeakRefParentActivity.get().startActivity(intent);
     }
 
@@ -871,17 +1216,93 @@ public class SoomlaFacebook implements ISocialProvider {
      * {@inheritDoc}
      */
     @Override
-    public void uploadImage(String message, String filePath, final SocialCallbacks.SocialActionListener socialActionListener) {
+    public void uploadImage(final String message, final String filePath, final SocialCallbacks.SocialActionListener socialActionListener) {
         SoomlaUtils.LogDebug(TAG, "uploadImage");
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
+        final ImageLimits uploadLimits = imageLimits;
+        final Activity directActivity = getDirectActivity(true);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    uploadImage(DIRECT_HOST, message, filePath, uploadLimits, socialActionListener);
+                }
+            });
+            return;
+        }
+
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
         intent.putExtra("action", ACTION_UPLOAD_IMAGE);
-        intent.putExtra("message", message);
-        intent.putExtra("filePath", filePath);
+        intent.putExtra("requestId", Requests.register(
+                new FileUpload(message, filePath, uploadLimits, socialActionListener)));
+        WeakRefParentActivity.get().startActivity(intent);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The bitmap is handed to Facebook as is, so <code>fileName</code> and
+     * <code>jpegQuality</code> are not used.
+     */
+    @Override
+    public void uploadImage(final String message, String fileName, final Bitmap bitmap, int jpegQuality,
+                            final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "uploadImage bitmap");
+        RefProvider = getProvider();
+        final Activity directActivity = getDirectActivity(true);
+        if (directActivity != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleFacebook.getInstance(directActivity);
+                    uploadImage(DIRECT_HOST, message, bitmap, socialActionListener);
+                }
+            });
+            return;
+        }
+
+        // the bitmap is too big for an intent extra, it waits in the registry
+        Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaFBActivity.class);
+        intent.putExtra("action", ACTION_UPLOAD_BITMAP);
+        intent.putExtra("requestId", Requests.register(new BitmapUpload(message, bitmap, socialActionListener)));
         WeakRefParentActivity.get().startActivity(intent);
     }
 
+    /**
+     * An image file upload waiting for <code>SoomlaFBActivity</code>, along
+     * with the image limits it was requested with
+     */
+    private static class FileUpload {
+        final String message;
+        final String filePath;
+        final ImageLimits imageLimits;
+        final SocialCallbacks.SocialActionListener socialActionListener;
+
+        FileUpload(String message, String filePath, ImageLimits imageLimits,
+                   SocialCallbacks.SocialActionListener socialActionListener) {
+            this.message = message;
+            this.filePath = filePath;
+            this.imageLimits = imageLimits;
+            this.socialActionListener = socialActionListener;
+        }
+    }
+
+    /**
+     * A bitmap upload waiting for <code>SoomlaFBActivity</code>
+     */
+    private static class BitmapUpload {
+        final String message;
+        final Bitmap bitmap;
+        final SocialCallbacks.SocialActionListener socialActionListener;
+
+        BitmapUpload(String message, Bitmap bitmap, SocialCallbacks.SocialActionListener socialActionListener) {
+            this.message = message;
+            this.bitmap = bitmap;
+            this.socialActionListener = socialActionListener;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -893,7 +1314,79 @@ public class SoomlaFacebook implements ISocialProvider {
 
     @Override
     public void applyParams(Map<String, String> providerParams) {
-        // Nothing to do here Constructor takes needed parameters from manifest
+        // Constructor takes the app parameters from manifest, only runtime
+        // options are read here
+        if (providerParams != null) {
+            activityLessActions = Boolean.parseBoolean(providerParams.get("activityLessActions"));
+            imageLimits = new ImageLimits(
+                    parsePositiveInt(providerParams.get("maxImageDimension"), DEFAULT_MAX_IMAGE_DIMENSION),
+                    parsePositiveInt(providerParams.get("maxImageBytes"), (int) DEFAULT_MAX_IMAGE_BYTES));
+        }
+
+        SoomlaUtils.LogDebug(TAG, String.format(
+                "activityLessActions:%s maxImageDimension:%d maxImageBytes:%d",
+                activityLessActions, imageLimits.getMaxDimension(), imageLimits.getMaxBytes()));
+    }
+
+    /**
+     * Tells network failures, which are worth retrying, apart from any other
+     * failure reported by Simple Facebook
+     */
+    private static SocialError toSocialError(String prefix, Throwable throwable) {
+        SocialError.ErrorType type = SocialError.ErrorType.UNKNOWN;
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                type = SocialError.ErrorType.NETWORK;
+                break;
+            }
+        }
+        return new SocialError(type, prefix + throwable.getLocalizedMessage());
+    }
+
+    private static int parsePositiveInt(String value, int defaultValue) {
+        if (TextUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+
+        try {
+            int result = Integer.parseInt(value);
+            return result > 0 ? result : defaultValue;
+        } catch (NumberFormatException e) {
+            SoomlaUtils.LogError(TAG, "Invalid numeric param: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Checks if a non-UI action can skip SoomlaFBActivity and run directly
+     * against the current session. SimpleFacebook keeps the last activity it
+     * was given, which is usually an already finished SoomlaFBActivity, so
+     * the caller rebinds it to the returned activity before running the
+     * action.
+     *
+     * @param publish true if the action needs publish permissions
+     * @return the activity to run the action with, or null if it has to go
+     * through SoomlaFBActivity
+     */
+    private Activity getDirectActivity(boolean publish) {
+        if (!activityLessActions) {
+            return null;
+        }
+
+        SimpleFacebook simpleFacebook = SimpleFacebook.getInstance();
+        if (simpleFacebook == null || !simpleFacebook.isLogin()) {
+            return null;
+        }
+
+        // asking for missing permissions requires UI
+        if (publish) {
+            List<String> grantedPermissions = simpleFacebook.getGrantedPermissions();
+            if (grantedPermissions == null || !grantedPermissions.contains(PUBLISH_ACTIONS_PERMISSION)) {
+                return null;
+            }
+        }
+
+        return WeakRefParentActivity != null ? WeakRefParentActivity.get() : null;
     }
 
     /**
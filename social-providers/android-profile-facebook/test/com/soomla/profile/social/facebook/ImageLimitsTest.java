@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social.facebook;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards the memory uploadImage may take: whatever the size of the image,
+ * the decoded bitmap must stay within the byte budget.
+ */
+public class ImageLimitsTest {
+
+    private static final int MAX_DIMENSION = 2048;
+    private static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    // width x height of common camera and screenshot sizes
+    private static final int[][] IMAGE_SIZES = {
+            {640, 480},
+            {1080, 1920},
+            {2048, 1536},
+            {3264, 2448},     // 8 MP
+            {4032, 3024},     // 12 MP
+            {6000, 4000},     // 24 MP
+            {8000, 6000},     // 48 MP
+            {12000, 9000},    // 108 MP
+            {20000, 2000},    // panorama
+            {1, 30000},
+    };
+
+    @Test
+    public void decodedImagesStayWithinTheByteBudget() {
+        ImageLimits limits = new ImageLimits(MAX_DIMENSION, MAX_BYTES);
+        for (int[] size : IMAGE_SIZES) {
+            int sampleSize = limits.sampleSizeFor(size[0], size[1]);
+            long decodedBytes = ImageLimits.decodedBytes(size[0], size[1], sampleSize);
+
+            assertTrue(describe(size, sampleSize, decodedBytes), decodedBytes <= MAX_BYTES);
+            assertTrue(describe(size, sampleSize, decodedBytes), limits.fits(size[0], size[1], sampleSize));
+        }
+    }
+
+    @Test
+    public void fullResolutionCameraImagesWouldExceedTheBudget() {
+        // a 48 MP image decoded at full size, as uploadImage used to do
+        long fullBytes = ImageLimits.decodedBytes(8000, 6000, 1);
+        assertTrue(fullBytes > 20 * MAX_BYTES);
+
+        ImageLimits limits = new ImageLimits(MAX_DIMENSION, MAX_BYTES);
+        assertFalse(limits.fits(8000, 6000, 1));
+        assertEquals(8, limits.sampleSizeFor(8000, 6000));
+    }
+
+    @Test
+    public void sampleSizeIsTheSmallestPowerOfTwoWhichFits() {
+        ImageLimits limits = new ImageLimits(MAX_DIMENSION, MAX_BYTES);
+        for (int[] size : IMAGE_SIZES) {
+            int sampleSize = limits.sampleSizeFor(size[0], size[1]);
+
+            assertEquals("not a power of two: " + sampleSize, 0, sampleSize & (sampleSize - 1));
+            if (sampleSize > 1) {
+                assertFalse("sampled down more than needed: " + describe(size, sampleSize, 0),
+                        limits.fits(size[0], size[1], sampleSize / 2));
+            }
+        }
+    }
+
+    @Test
+    public void imagesWithinTheLimitsAreNotSampled() {
+        ImageLimits limits = new ImageLimits(MAX_DIMENSION, MAX_BYTES);
+        assertTrue(limits.fits(1024, 768, 1));
+        assertTrue(limits.fits(MAX_DIMENSION, 1024, 1));
+        assertEquals(1, limits.sampleSizeFor(1024, 768));
+    }
+
+    @Test
+    public void byteBudgetAppliesBelowTheMaxDimension() {
+        // 2000x2000 fits the dimension but takes ~15 MB decoded
+        ImageLimits limits = new ImageLimits(MAX_DIMENSION, MAX_BYTES);
+        assertFalse(limits.fits(2000, 2000, 1));
+        assertEquals(2, limits.sampleSizeFor(2000, 2000));
+
+        ImageLimits smallBudget = new ImageLimits(MAX_DIMENSION, 1024 * 1024);
+        int sampleSize = smallBudget.sampleSizeFor(4032, 3024);
+        assertTrue(ImageLimits.decodedBytes(4032, 3024, sampleSize) <= 1024 * 1024);
+    }
+
+
+    @Test
+    public void budgetsBelowOnePixelStillFindASampleSize() {
+        // maxImageBytes of 1 to 3 used to double the sample size until it overflowed
+        for (long maxBytes = 1; maxBytes < ImageLimits.BYTES_PER_PIXEL; maxBytes++) {
+            ImageLimits limits = new ImageLimits(MAX_DIMENSION, maxBytes);
+            for (int[] size : IMAGE_SIZES) {
+                int sampleSize = limits.sampleSizeFor(size[0], size[1]);
+
+                assertTrue(describe(size, sampleSize, 0), sampleSize > 0);
+                assertEquals(ImageLimits.BYTES_PER_PIXEL, ImageLimits.decodedBytes(size[0], size[1], sampleSize));
+            }
+        }
+    }
+
+    /** Private Members **/
+
+    private static String describe(int[] size, int sampleSize, long decodedBytes) {
+        return size[0] + "x" + size[1] + " sampled by " + sampleSize + " takes " + decodedBytes + " bytes";
+    }
+}
@@ -23,9 +23,11 @@ import android.content.ContentValues;
 import android.content.Intent;
 import android.content.IntentSender;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.os.AsyncTask;
@@ -46,10 +48,13 @@ import com.google.android.gms.plus.model.people.PersonBuffer;
 import com.soomla.Soomla;
 import com.soomla.SoomlaApp;
 import com.soomla.SoomlaUtils;
+import com.soomla.profile.ProfileExecutor;
 import com.soomla.profile.auth.AuthCallbacks;
 import com.soomla.profile.domain.UserProfile;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.RequestRegistry;
 import com.soomla.profile.social.SocialCallbacks;
+import com.soomla.profile.social.SocialError;
 
 import java.io.IOException;
 import java.io.File;
@@ -57,6 +62,7 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Soomla wrapper for GooglePlusAPIClient.
@@ -72,14 +78,26 @@ public class SoomlaGooglePlus implements ISocialProvider{
     private static GoogleApiClient GooglePlusAPIClient;
     private static WeakReference<Activity> WeakRefParentActivity;
     private static Provider RefProvider;
-    private static AuthCallbacks.LoginListener RefLoginListener;
-    private static SocialCallbacks.SocialActionListener RefSocialActionListener;
+
+    // listeners of requests handed over to SoomlaGooglePlusActivity, the
+    // request ID travels with the intent
+    private static final RequestRegistry Requests = new RequestRegistry("gplus");
+
+    // Google Play services caches the tokens it issues and doesn't tell how
+    // long they're still valid, so a token is only reused for a short while,
+    // which lets bursts of getUserProfile calls share one getToken call
+    private static final long TOKEN_CACHE_MILLIS = 60 * 1000;
+    private static final Object TokenLock = new Object();
+    private static String CachedToken;
+    private static String CachedTokenAccount;
+    private static long CachedTokenExpiry;
 
     public static final int ACTION_LOGIN = 0;
     public static final int ACTION_PUBLISH_STATUS = 1;
     public static final int ACTION_UPLOAD_IMAGE = 2;
     public static final int ACTION_PUBLISH_STORY = 3;
     public static final int ACTION_PUBLISH_STATUS_DIALOG = 4;
+    public static final int ACTION_UPLOAD_BITMAP = 5;
 
     /**
      * The main Soomla Google Plus activity
@@ -99,6 +117,8 @@ public class SoomlaGooglePlus implements ISocialProvider{
         private static boolean connectionInProgress;
         private static ConnectionResult connectionResult;
 
+        private String mRequestId;
+
         /**
          * {@inheritDoc}
          */
@@ -110,6 +130,7 @@ public class SoomlaGooglePlus implements ISocialProvider{
 
             Intent intent = getIntent();
             int userAction = intent.getIntExtra("action", -1);
+            mRequestId = intent.getStringExtra("requestId");
 
             switch (userAction) {
                 case ACTION_LOGIN: {
@@ -127,6 +148,12 @@ public class SoomlaGooglePlus implements ISocialProvider{
                     uploadImage(message, filePath);
                     break;
                 }
+                case ACTION_UPLOAD_BITMAP: {
+                    String message = intent.getStringExtra("message");
+                    String imageUri = intent.getStringExtra("imageuri");
+                    shareImage(message, Uri.parse(imageUri));
+                    break;
+                }
                 case ACTION_PUBLISH_STORY: {
                     String message = intent.getStringExtra("message");
                     String name = intent.getStringExtra("name");
@@ -182,7 +209,18 @@ public class SoomlaGooglePlus implements ISocialProvider{
                 File tmpFile = new File(filePath);
                 final String photoContentUri = MediaStore.Images.Media.insertImage(
                         getContentResolver(), tmpFile.getAbsolutePath(), null, null);
-                Uri uri = Uri.parse(photoContentUri);
+                shareImage(message, Uri.parse(photoContentUri));
+            }catch (Exception e){
+                SocialCallbacks.SocialActionListener socialActionListener = Requests.remove(mRequestId);
+                if (socialActionListener != null) {
+                    socialActionListener.fail("Failed uploading image with exception: " + e.getMessage());
+                }
+                finish();
+            }
+        }
+
+        private void shareImage(String message, Uri uri) {
+            try{
                 String mime = getContentResolver().getType(uri);
 
                 Intent shareIntent = new PlusShare.Builder(this)
@@ -193,7 +231,11 @@ public class SoomlaGooglePlus implements ISocialProvider{
 
                 startActivityForResult(shareIntent, REQ_SHARE);
             }catch (Exception e){
-                RefSocialActionListener.fail("Failed uploading image with exception: " + e.getMessage());
+                SocialCallbacks.SocialActionListener socialActionListener = Requests.remove(mRequestId);
+                if (socialActionListener != null) {
+                    socialActionListener.fail("Failed uploading image with exception: " + e.getMessage());
+                }
+                finish();
             }
         }
 
@@ -208,15 +250,22 @@ public class SoomlaGooglePlus implements ISocialProvider{
 
                 startActivityForResult(shareIntent, REQ_SHARE);
             }catch (Exception e){
-                RefSocialActionListener.fail("Failed sharing story with exception: " + e.getMessage());
+                SocialCallbacks.SocialActionListener socialActionListener = Requests.remove(mRequestId);
+                if (socialActionListener != null) {
+                    socialActionListener.fail("Failed sharing story with exception: " + e.getMessage());
+                }
+                finish();
             }
         }
 
         @Override
         public void onConnected(Bundle bundle) {
-            SoomlaUtils.LogDebug(TAG, "onConnected " + " [" + RefLoginListener + "]");
+            SoomlaUtils.LogDebug(TAG, "onConnected " + " [" + mRequestId + "]");
             signInRequested = false;
-            RefLoginListener.success(RefProvider);
+            AuthCallbacks.LoginListener loginListener = Requests.remove(mRequestId);
+            if (loginListener != null) {
+                loginListener.success(RefProvider);
+            }
             finish();
         }
 
@@ -238,7 +287,10 @@ public class SoomlaGooglePlus implements ISocialProvider{
                         resolveSignInError();
                 }
             } else {
-                RefLoginListener.fail("onConnectionFailed:" + result.getErrorCode() + " [" + RefLoginListener + "]");
+                AuthCallbacks.LoginListener loginListener = Requests.remove(mRequestId);
+                if (loginListener != null) {
+                    loginListener.fail("onConnectionFailed:" + result.getErrorCode() + " [" + loginListener + "]");
+                }
                 finish();
             }
         }
@@ -269,10 +321,13 @@ public class SoomlaGooglePlus implements ISocialProvider{
                 }
 
                 case REQ_SHARE: {
-                    if (resultCode == RESULT_OK)
-                        RefSocialActionListener.success();
+                    SocialCallbacks.SocialActionListener socialActionListener = Requests.remove(mRequestId);
+                    if (socialActionListener == null)
+                        SoomlaUtils.LogWarning(TAG, "no listener for request " + mRequestId);
+                    else if (resultCode == RESULT_OK)
+                        socialActionListener.success();
                     else
-                        RefSocialActionListener.fail("Failed sharing with error code: " + resultCode);
+                        socialActionListener.fail("Failed sharing with error code: " + resultCode);
                     finish();
                     break;
                 }
@@ -285,14 +340,15 @@ public class SoomlaGooglePlus implements ISocialProvider{
         SoomlaUtils.LogDebug(TAG, "login");
         WeakRefParentActivity = new WeakReference<Activity>(parentActivity);
         RefProvider = getProvider();
-        RefLoginListener = loginListener;
         Intent intent = new Intent(parentActivity, SoomlaGooglePlusActivity.class);
         intent.putExtra("action", ACTION_LOGIN);
+        intent.putExtra("requestId", Requests.register(loginListener));
         parentActivity.startActivity(intent);
     }
 
     @Override
     public void logout(AuthCallbacks.LogoutListener logoutListener) {
+        invalidateCachedToken();
         try {
             Plus.AccountApi.clearDefaultAccount(GooglePlusAPIClient);
             GooglePlusAPIClient.disconnect();
@@ -310,9 +366,9 @@ public class SoomlaGooglePlus implements ISocialProvider{
     @Override
     public void updateStatus(String status, SocialCallbacks.SocialActionListener socialActionListener) {
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaGooglePlusActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STATUS);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("status", status);
         WeakRefParentActivity.get().startActivity(intent);
     }
@@ -320,9 +376,9 @@ public class SoomlaGooglePlus implements ISocialProvider{
     @Override
     public void updateStatusDialog(String link, SocialCallbacks.SocialActionListener socialActionListener) {
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaGooglePlusActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STATUS_DIALOG);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("link", link);
         WeakRefParentActivity.get().startActivity(intent);
     }
@@ -330,9 +386,9 @@ public class SoomlaGooglePlus implements ISocialProvider{
     @Override
     public void updateStory(String message, String name, String caption, String description, String link, String picture, SocialCallbacks.SocialActionListener socialActionListener) {
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaGooglePlusActivity.class);
         intent.putExtra("action", ACTION_PUBLISH_STORY);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("message", message);
         intent.putExtra("name", name);
         intent.putExtra("caption", caption);
@@ -352,14 +408,61 @@ public class SoomlaGooglePlus implements ISocialProvider{
     public void uploadImage(String message, String filePath, SocialCallbacks.SocialActionListener socialActionListener) {
         SoomlaUtils.LogDebug(TAG, "uploadImage");
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
         Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaGooglePlusActivity.class);
         intent.putExtra("action", ACTION_UPLOAD_IMAGE);
+        intent.putExtra("requestId", Requests.register(socialActionListener));
         intent.putExtra("message", message);
         intent.putExtra("filepath", filePath);
         WeakRefParentActivity.get().startActivity(intent);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Google+ can only share images which have a content Uri, so the bitmap
+     * is inserted into the media store directly instead of going through
+     * a temporary file.
+     */
+    @Override
+    public void uploadImage(final String message, final String fileName, final Bitmap bitmap, int jpegQuality,
+                            final SocialCallbacks.SocialActionListener socialActionListener) {
+        SoomlaUtils.LogDebug(TAG, "uploadImage bitmap");
+        RefProvider = getProvider();
+        final Activity parentActivity = WeakRefParentActivity.get();
+
+        try {
+            new AsyncTask<Void, Void, String>() {
+                @Override
+                protected String doInBackground(Void... params) {
+                    try {
+                        return MediaStore.Images.Media.insertImage(
+                                parentActivity.getContentResolver(), bitmap, fileName, null);
+                    } catch (Exception e) {
+                        SoomlaUtils.LogError(TAG, "Failed inserting image " + fileName + ": " + e.getMessage());
+                        return null;
+                    }
+                }
+
+                @Override
+                protected void onPostExecute(String imageUri) {
+                    if (imageUri == null) {
+                        socialActionListener.fail("Failed uploading image " + fileName);
+                        return;
+                    }
+
+                    Intent intent = new Intent(parentActivity, SoomlaGooglePlusActivity.class);
+                    intent.putExtra("action", ACTION_UPLOAD_BITMAP);
+                    intent.putExtra("requestId", Requests.register(socialActionListener));
+                    intent.putExtra("message", message);
+                    intent.putExtra("imageuri", imageUri);
+                    parentActivity.startActivity(intent);
+                }
+            }.executeOnExecutor(ProfileExecutor.get());
+        } catch (RejectedExecutionException e) {
+            socialActionListener.fail("Failed uploading image " + fileName + ": " + e.getMessage());
+        }
+    }
+
     @Override
     public void like(Activity parentActivity, String pageName) {
         Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://plus.google.com/+" + pageName));
@@ -382,6 +485,14 @@ public class SoomlaGooglePlus implements ISocialProvider{
             userProfile.setAvatarLink(profile.getImage().getUrl());
             SoomlaUtils.LogDebug(TAG, "Lalala");
 
+            String cachedToken = getCachedToken(email);
+            if (cachedToken != null) {
+                SoomlaUtils.LogDebug(TAG, "Using cached access token");
+                userProfile.setAccessToken(cachedToken);
+                userProfileListener.success(userProfile);
+                return;
+            }
+
             AsyncTask<Void, Void, String> task = new AsyncTask<Void, Void, String>() {
                 @Override
                 protected String doInBackground(Void... params) {
@@ -390,6 +501,7 @@ public class SoomlaGooglePlus implements ISocialProvider{
                     try {
 //                        String link = "oauth2:" + Scopes.PLUS_LOGIN + " https://www.googleapis.com/auth/plus.profile.emails.read";
                         token = GoogleAuthUtil.getToken(SoomlaApp.getAppContext(), email, "oauth2:" + SCOPES);
+                        cacheToken(email, token);
                     } catch (IOException transientEx) {
                         // Network or server error, try later
                         SoomlaUtils.LogDebug(TAG, transientEx.toString());
@@ -397,6 +509,7 @@ public class SoomlaGooglePlus implements ISocialProvider{
                     } catch (UserRecoverableAuthException e) {
                         // Recover (with e.getIntent())
                         SoomlaUtils.LogDebug(TAG, e.toString());
+                        invalidateCachedToken();
                         Intent recover = e.getIntent();
                         WeakRefParentActivity.get().startActivityForResult(recover, REQUEST_CODE_TOKEN_AUTH);
                         userProfileListener.fail("Unable to get user profile with exception: " + e.getMessage());
@@ -405,6 +518,7 @@ public class SoomlaGooglePlus implements ISocialProvider{
                         // assuming you have already verified that
                         // Google Play services is installed.
                         SoomlaUtils.LogDebug(TAG, authEx.toString());
+                        invalidateCachedToken();
                         userProfileListener.fail("Unable to get user profile with exception: " + authEx.getMessage());
                     }
 
@@ -430,7 +544,7 @@ public class SoomlaGooglePlus implements ISocialProvider{
                 }
 
             };
-            task.execute();
+            task.executeOnExecutor(ProfileExecutor.get());
 //            userProfileListener.success(userProfile);
         }catch (Exception e){
             userProfileListener.fail("Unable to get user profile with exception: " + e.getMessage());
@@ -439,29 +553,63 @@ public class SoomlaGooglePlus implements ISocialProvider{
 
     @Override
     public void getContacts(final SocialCallbacks.ContactsListener contactsListener) {
+        getContacts(null, 0, new ContactsPageAdapter() {
+            @Override
+            public void success(List<UserProfile> userProfiles, String nextCursor, boolean hasMore) {
+                contactsListener.success(userProfiles);
+            }
+
+            @Override
+            public void fail(String message) {
+                contactsListener.fail(message);
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                SocialCallbacks.fail(contactsListener, error);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Google Plus decides the size of each page, so <code>pageSize</code> is ignored.
+     * The cursor is Google's page token.
+     */
+    @Override
+    public void getContacts(String cursor, int pageSize, final SocialCallbacks.ContactsPageListener contactsListener) {
         RefProvider = getProvider();
         if (GooglePlusAPIClient != null && GooglePlusAPIClient.isConnected()){
-            Plus.PeopleApi.loadVisible(GooglePlusAPIClient, null)
+            Plus.PeopleApi.loadVisible(GooglePlusAPIClient, cursor)
                     .setResultCallback(new ResultCallback<People.LoadPeopleResult>() {
                         @Override
                         public void onResult(People.LoadPeopleResult peopleData) {
                             if (peopleData.getStatus().getStatusCode() == CommonStatusCodes.SUCCESS) {
-                                List<UserProfile> userProfiles = new ArrayList<UserProfile>();
                                 PersonBuffer personBuffer = peopleData.getPersonBuffer();
                                 try {
                                     int count = personBuffer.getCount();
+                                    List<UserProfile> userProfiles = new ArrayList<UserProfile>(count);
                                     for (int i = 0; i < count; i++) {
                                         Person googleContact = personBuffer.get(i);
                                         userProfiles.add(parseGoogleContact(googleContact));
                                     }
-                                    contactsListener.success(userProfiles);
+
+                                    String nextPageToken = peopleData.getNextPageToken();
+                                    boolean hasMore = !TextUtils.isEmpty(nextPageToken);
+                                    contactsListener.success(userProfiles, hasMore ? nextPageToken : null, hasMore);
                                 } catch (Exception e){
                                     contactsListener.fail("Failed getting contacts with exception: " + e.getMessage());
                                 }finally {
                                     personBuffer.close();
                                 }
                             } else {
-                                contactsListener.fail("Contact information is not available.");
+                                int statusCode = peopleData.getStatus().getStatusCode();
+                                SocialError.ErrorType type = (statusCode == CommonStatusCodes.NETWORK_ERROR
+                                        || statusCode == CommonStatusCodes.TIMEOUT) ?
+                                        SocialError.ErrorType.NETWORK : SocialError.ErrorType.UNKNOWN;
+                                SocialCallbacks.fail(contactsListener,
+                                        new SocialError(type, "Contact information is not available (" + statusCode + ")."));
                             }
                         }
                     });
@@ -481,11 +629,110 @@ public class SoomlaGooglePlus implements ISocialProvider{
         feedsListener.fail("getFeed is not implemented");
     }
 
+    @Override
+    public void getFeedItems(SocialCallbacks.FeedItemsListener feedItemsListener) {
+        //TODO
+        feedItemsListener.fail("getFeedItems is not implemented");
+    }
+
     @Override
     public Provider getProvider() {
         return Provider.GOOGLE;
     }
 
+    /**
+     * Drops an access token which a request was rejected with (e.g. with
+     * HTTP 401), both from the local cache and from Google Play services, so
+     * the next <code>getUserProfile</code> fetches a fresh one
+     *
+     * @param accessToken the rejected token, as received in the
+     *                    <code>UserProfile</code>
+     */
+    public static void invalidateAccessToken(String accessToken) {
+        if (TextUtils.isEmpty(accessToken)) {
+            return;
+        }
+        synchronized (TokenLock) {
+            if (accessToken.equals(CachedToken)) {
+                CachedToken = null;
+                CachedTokenAccount = null;
+                CachedTokenExpiry = 0;
+            }
+        }
+        clearToken(accessToken);
+    }
+
+    /**
+     * Fetches the cached access token of the given account, as long as it
+     * was fetched recently
+     *
+     * @param account the account the token was issued for
+     * @return the cached token, or null if there's no valid token
+     */
+    private static String getCachedToken(String account) {
+        synchronized (TokenLock) {
+            if (CachedToken == null || account == null || !account.equals(CachedTokenAccount)) {
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() >= CachedTokenExpiry) {
+                return null;
+            }
+            return CachedToken;
+        }
+    }
+
+    private static void cacheToken(String account, String token) {
+        if (TextUtils.isEmpty(token)) {
+            return;
+        }
+        synchronized (TokenLock) {
+            CachedToken = token;
+            CachedTokenAccount = account;
+            CachedTokenExpiry = SystemClock.elapsedRealtime() + TOKEN_CACHE_MILLIS;
+        }
+    }
+
+    /**
+     * Drops the cached access token, and tells Google Play services to drop
+     * it too so the next fetch issues a fresh one
+     */
+    private static void invalidateCachedToken() {
+        final String token;
+        synchronized (TokenLock) {
+            token = CachedToken;
+            CachedToken = null;
+            CachedTokenAccount = null;
+            CachedTokenExpiry = 0;
+        }
+
+        if (token != null) {
+            clearToken(token);
+        }
+    }
+
+    /**
+     * Tells Google Play services to drop the given token, off the caller's
+     * thread since it's a blocking call
+     */
+    private static void clearToken(final String token) {
+        try {
+            ProfileExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        GoogleAuthUtil.clearToken(SoomlaApp.getAppContext(), token);
+                    } catch (GoogleAuthException e) {
+                        SoomlaUtils.LogWarning(TAG, "Couldn't clear access token: " + e.getMessage());
+                    } catch (IOException e) {
+                        SoomlaUtils.LogWarning(TAG, "Couldn't clear access token: " + e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            SoomlaUtils.LogWarning(TAG, "Couldn't clear access token: " + e.getMessage());
+        }
+    }
+
     private static UserProfile parseGoogleContact(Person googleContact){
         String fullName = googleContact.getDisplayName();
         String firstName = "";
@@ -516,6 +763,14 @@ public class SoomlaGooglePlus implements ISocialProvider{
         return result;
     }
 
+    /**
+     * A page listener which also receives typed errors, so the classification
+     * of a failure survives the adaptation to a plain contacts listener
+     */
+    private static abstract class ContactsPageAdapter
+            implements SocialCallbacks.ContactsPageListener, SocialCallbacks.ErrorListener {
+    }
+
     private static String parseGoogleContactInfo(Object orig){
         return (String.valueOf(orig) != null) ? String.valueOf(orig) : "";
     }
@@ -18,7 +18,12 @@ package com.soomla.profile.social.twitter;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.webkit.WebView;
@@ -26,29 +31,43 @@ import android.webkit.WebViewClient;
 
 import com.soomla.SoomlaUtils;
 import com.soomla.data.KeyValueStorage;
+import com.soomla.profile.ProfileExecutor;
 import com.soomla.profile.auth.AuthCallbacks;
+import com.soomla.profile.domain.FeedItem;
 import com.soomla.profile.domain.UserProfile;
+import com.soomla.profile.social.ISocialContactsSyncProvider;
 import com.soomla.profile.social.ISocialProvider;
+import com.soomla.profile.social.RateLimiter;
+import com.soomla.profile.social.RequestRegistry;
 import com.soomla.profile.social.SocialCallbacks;
+import com.soomla.profile.social.SocialError;
 
 import twitter4j.*;
 import twitter4j.auth.*;
 import twitter4j.conf.Configuration;
 import twitter4j.conf.ConfigurationBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Soomla wrapper for Twitter4J (unofficial SDK for Twitter API).
  *
- * This class uses the <code>SoomlaTwitterWebView</code> to authenticate.
+ * This class uses the <code>SoomlaTwitterWebView</code> to authenticate,
+ * unless there are stored credentials which Twitter still accepts.
  * All other operations are performed asynchronously via Twitter4J
  */
-public class SoomlaTwitter implements ISocialProvider {
+public class SoomlaTwitter implements ISocialContactsSyncProvider {
 
     private static final String TAG = "SOOMLA SoomlaTwitter";
 
@@ -56,6 +75,30 @@ public class SoomlaTwitter implements ISocialProvider {
     private static final String TWITTER_OAUTH_TOKEN = "oauth.token";
     private static final String TWITTER_OAUTH_SECRET = "oauth.secret";
     private static final String TWITTER_SCREEN_NAME = "oauth.screenName";
+    private static final String TWITTER_SYNC_CURSOR = "contactsSync.cursor";
+    private static final String TWITTER_SYNC_PARTIAL_IDS = "contactsSync.partialIds";
+    private static final String TWITTER_SYNC_IDS = "contactsSync.ids";
+    private static final String TWITTER_FEED = "feed.";
+
+    // the maximum number of posts Twitter returns for a timeline request
+    private static final int FEED_PAGE_SIZE = 200;
+    private static final int DEFAULT_FEED_BUFFER_SIZE = 200;
+
+    // Twitter4J's defaults, used when the matching params aren't given
+    private static final int DEFAULT_ASYNC_THREADS = 1;
+    private static final int DEFAULT_HTTP_CONNECTION_TIMEOUT = 20000;
+    private static final int DEFAULT_HTTP_READ_TIMEOUT = 120000;
+
+    // login waits for the stored credentials to be verified, so it gives up
+    // quickly and uses them as they are. It's the deadline of the whole
+    // verification, and bounds its connect and read timeouts too
+    private static final int VERIFY_CREDENTIALS_TIMEOUT = 3000;
+
+    // the maximum number of users lookupUsers accepts
+    private static final int LOOKUP_USERS_BATCH_SIZE = 100;
+
+    // how many pages a contacts sync fetches between saving its progress
+    private static final int SYNC_CHECKPOINT_PAGES = 10;
 
     private static final String OAUTH_VERIFIER = "oauth_verifier";
 
@@ -63,21 +106,41 @@ public class SoomlaTwitter implements ISocialProvider {
     // (need to be accessed by static context)
     private static WeakReference<Activity> WeakRefParentActivity;
     private static Provider RefProvider;
-    private static AuthCallbacks.LoginListener RefLoginListener;
-    private static AuthCallbacks.UserProfileListener RefUserProfileListener;
-    private static SocialCallbacks.SocialActionListener RefSocialActionListener;
-    private static SocialCallbacks.FeedListener RefFeedListener;
-    private static SocialCallbacks.ContactsListener RefContactsListener;
+
+    // listeners of in-flight requests, every request gets its own ID
+    private static final RequestRegistry Requests = new RequestRegistry("tw");
 
     private String twitterConsumerKey;
     private String twitterConsumerSecret;
     private boolean isInitialized = false;
-
+    private boolean incrementalFeed = false;
+    private int feedBufferSize = DEFAULT_FEED_BUFFER_SIZE;
+    private int asyncThreads = DEFAULT_ASYNC_THREADS;
+    private int httpConnectionTimeout = DEFAULT_HTTP_CONNECTION_TIMEOUT;
+    private int httpReadTimeout = DEFAULT_HTTP_READ_TIMEOUT;
+    private boolean gzipEnabled = true;
+
+    // the recent posts of the logged in account, for incremental feed fetching
+    private TwitterFeedBuffer feedBuffer;
+
+    private static AsyncTwitterFactory twitterFactory;
+    private static AsyncTwitterFactory verifyTwitterFactory;
     private static AsyncTwitter twitter;
     private static String twitterScreenName;
-    private static RequestToken mainRequestToken;
-    private static boolean actionsListenerAdded = false;
+    // the stored credentials, read from storage once
+    private static AccessToken accessToken;
+    private static boolean accessTokenLoaded = false;
     private static String oauthCallbackURL;
+    // syncs share their saved state, so only one runs at a time
+    private static final AtomicBoolean contactsSyncRunning = new AtomicBoolean(false);
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // warm logins use the stored credentials, cold ones go through the web
+    private static final AtomicLong warmLogins = new AtomicLong();
+    private static final AtomicLong totalWarmLoginMillis = new AtomicLong();
+    private static final AtomicLong coldLogins = new AtomicLong();
+    private static final AtomicLong totalColdLoginMillis = new AtomicLong();
 
     public static final int ACTION_LOGIN = 0;
 
@@ -89,15 +152,99 @@ public class SoomlaTwitter implements ISocialProvider {
     public static final int ACTION_PUBLISH_STATUS_DIALOG = 15;
     public static final int ACTION_PUBLISH_STORY_DIALOG = 16;
     public static final int ACTION_GET_USER_PROFILE = 17;
-
-    private int preformingAction = -1;
+    public static final int ACTION_GET_CONTACTS_PAGE = 18;
+    public static final int ACTION_SYNC_CONTACTS = 19;
 
     /**
      * Twitter4J uses an old listener model in which you provide a listener
-     * which listens to all possible operations done asynchronously.
-     * Here we define all handling of the completion of such operations.
+     * which listens to all possible operations done asynchronously on a
+     * <code>AsyncTwitter</code> instance.
+     * <p/>
+     * To let requests run in parallel, each request runs on its own
+     * <code>AsyncTwitter</code> instance (sharing the authorization and
+     * the dispatcher thread pool of the main one) with its own
+     * <code>RequestAdapter</code>, which knows which request it serves.
      */
-    private TwitterAdapter actionsListener = new TwitterAdapter() {
+    private abstract class RequestAdapter extends TwitterAdapter {
+
+        protected final int mAction;
+        protected final String mRequestId;
+
+        RequestAdapter(int action, Object listener) {
+            mAction = action;
+            mRequestId = Requests.register(listener);
+        }
+
+        /**
+         * Completes this request
+         *
+         * @return the listener of this request, or null if it was already completed
+         */
+        protected <T> T complete() {
+            SoomlaUtils.LogDebug(TAG, "Completing request " + mRequestId);
+            return Requests.remove(mRequestId);
+        }
+
+        /**
+         * Called whenever an exception has occurred while running a Twitter4J
+         * asynchronous action
+         *
+         * @param e The exception which was thrown
+         * @param twitterMethod The method which failed
+         */
+        @Override
+        public void onException(TwitterException e, TwitterMethod twitterMethod) {
+            SoomlaUtils.LogDebug(TAG, "General fail " + mRequestId + " " + e.getMessage());
+
+            reportRateLimit(e);
+            failListener(mAction, complete(), toSocialError(e));
+        }
+
+        /**
+         * Passes the quota status Twitter sent along with a response on to
+         * the rate limiter, so requests beyond the quota aren't sent
+         *
+         * @param response the response of this request
+         */
+        protected void reportRateLimit(TwitterResponse response) {
+            ISocialProvider.SocialActionType socialActionType = socialActionTypeOf(mAction);
+            RateLimitStatus rateLimitStatus = response != null ? response.getRateLimitStatus() : null;
+            if (socialActionType == null || rateLimitStatus == null) {
+                return;
+            }
+
+            RateLimiter.forProvider(getProvider()).report(socialActionType,
+                    rateLimitStatus.getRemaining(), rateLimitStatus.getSecondsUntilReset() * 1000L);
+        }
+    }
+
+    /**
+     * Holds the state of a web login while the user is in
+     * <code>SoomlaTwitterActivity</code>
+     */
+    private static class LoginRequest {
+        final AuthCallbacks.LoginListener loginListener;
+        final AsyncTwitter loginTwitter;
+        final long startedAt;
+        RequestToken requestToken;
+
+        LoginRequest(AuthCallbacks.LoginListener loginListener, AsyncTwitter loginTwitter, long startedAt) {
+            this.loginListener = loginListener;
+            this.loginTwitter = loginTwitter;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /**
+     * Handles the completion of the OAuth steps of a web login
+     */
+    private class LoginAdapter extends TwitterAdapter {
+
+        private final String mRequestId;
+
+        LoginAdapter(String requestId) {
+            mRequestId = requestId;
+        }
 
         /**
          * Called when the request token has arrived from Twitter
@@ -107,11 +254,16 @@ public class SoomlaTwitter implements ISocialProvider {
          */
         @Override
         public void gotOAuthRequestToken(RequestToken requestToken) {
-            mainRequestToken = requestToken;
+            LoginRequest loginRequest = Requests.get(mRequestId);
+            if (loginRequest == null) {
+                return;
+            }
+            loginRequest.requestToken = requestToken;
 
             Intent intent = new Intent(WeakRefParentActivity.get(), SoomlaTwitterActivity.class);
 
-            intent.putExtra("url", mainRequestToken.getAuthenticationURL());
+            intent.putExtra("url", requestToken.getAuthenticationURL());
+            intent.putExtra("requestId", mRequestId);
             WeakRefParentActivity.get().startActivity(intent);
 
             // Web browser version bad idea (take out of program)
@@ -133,6 +285,7 @@ public class SoomlaTwitter implements ISocialProvider {
             // Keep in storage for logging in without web-authentication
             KeyValueStorage.setValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN), accessToken.getToken());
             KeyValueStorage.setValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET), accessToken.getTokenSecret());
+            setAccessToken(accessToken);
 
             // Keep screen name since Twitter4J does not have it when
             // logging in using authenticated tokens
@@ -140,71 +293,11 @@ public class SoomlaTwitter implements ISocialProvider {
 
             twitterScreenName = accessToken.getScreenName();
 
-            RefLoginListener.success(RefProvider);
-
-            clearListener(ACTION_LOGIN);
-        }
-
-        /**
-         * Called when a user's information has arrived from twitter
-         *
-         * @param user The user's details
-         */
-        @Override
-        public void gotUserDetail(User user) {
-            SoomlaUtils.LogDebug(TAG, "getUserProfile/onComplete");
-            UserProfile userProfile = createUserProfile(user);
-            userProfile.setAccessToken(KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN)));
-            userProfile.setSecretKey(KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET)));
-            RefUserProfileListener.success(userProfile);
-
-            clearListener(ACTION_GET_USER_PROFILE);
-        }
-
-        /**
-         * Called when the user's timeline has arrived
-         *
-         * @param statuses The user's latest statuses
-         */
-        @Override
-        public void gotUserTimeline(ResponseList<Status> statuses) {
-            SoomlaUtils.LogDebug(TAG, "getFeed/onComplete");
-
-            List<String> feeds = new ArrayList<String>();
-            for (Status post : statuses) {
-                feeds.add(post.getText());
-            }
-            RefFeedListener.success(feeds);
-            clearListener(ACTION_GET_FEED);
-        }
-
-        /**
-         * Called when the user's friends list has arrived
-         *
-         * @param users The user's friends (by Twitter definition)
-         */
-        @Override
-        public void gotFriendsList(PagableResponseList<User> users) {
-            SoomlaUtils.LogDebug(TAG, "getContacts/onComplete " + users.size());
-
-            List<UserProfile> userProfiles = new ArrayList<UserProfile>();
-            for (User profile : users) {
-                userProfiles.add(createUserProfile(profile));
+            LoginRequest loginRequest = Requests.remove(mRequestId);
+            if (loginRequest != null) {
+                recordLoginTime(false, loginRequest.startedAt);
+                loginRequest.loginListener.success(RefProvider);
             }
-            RefContactsListener.success(userProfiles);
-            clearListener(ACTION_GET_CONTACTS);
-        }
-
-        /**
-         * Called when a tweet has finished posting
-         *
-         * @param status The status which was posted
-         */
-        @Override
-        public void updatedStatus(Status status) {
-            SoomlaUtils.LogDebug(TAG, "updateStatus/onComplete");
-            RefSocialActionListener.success();
-            clearListener(ACTION_PUBLISH_STATUS);
         }
 
         /**
@@ -216,11 +309,27 @@ public class SoomlaTwitter implements ISocialProvider {
          */
         @Override
         public void onException(TwitterException e, TwitterMethod twitterMethod) {
-            SoomlaUtils.LogDebug(TAG, "General fail " + e.getMessage());
+            SoomlaUtils.LogDebug(TAG, "Login fail " + mRequestId + " " + e.getMessage());
 
-            failListener(preformingAction, e.getMessage());
+            LoginRequest loginRequest = Requests.remove(mRequestId);
+            if (loginRequest != null) {
+                failListener(ACTION_LOGIN, loginRequest.loginListener, e.getMessage());
+            }
         }
-    };
+    }
+
+    /**
+     * Creates an <code>AsyncTwitter</code> for a single request, authorized
+     * as the logged in user
+     *
+     * @param requestAdapter the listener of the request
+     * @return the instance to run the request on
+     */
+    private AsyncTwitter newRequestTwitter(RequestAdapter requestAdapter) {
+        AsyncTwitter requestTwitter = twitterFactory.getInstance(twitter.getAuthorization());
+        requestTwitter.addListener(requestAdapter);
+        return requestTwitter;
+    }
 
     /**
      * Soomla Twitter Activity
@@ -232,6 +341,7 @@ public class SoomlaTwitter implements ISocialProvider {
         private static final String TAG = "SOOMLA SoomlaTwitter$SoomlaTwitterActivity";
         private SoomlaTwitterWebView webView = null;
         private boolean mFinishedVerifying = false;
+        private String mRequestId;
 
         /**
          * {@inheritDoc}
@@ -241,7 +351,9 @@ public class SoomlaTwitter implements ISocialProvider {
             super.onCreate(savedInstanceState);
 
             // Edge case - start activity without twitter
-            if (twitter == null) {
+            mRequestId = getIntent().getStringExtra("requestId");
+            if (twitter == null || Requests.get(mRequestId) == null) {
+                mFinishedVerifying = true;
                 finish();
                 return;
             }
@@ -278,13 +390,14 @@ public class SoomlaTwitter implements ISocialProvider {
              */
             if (uri != null && uri.toString().startsWith(oauthCallbackURL)) {
                 String verifier = uri.getQueryParameter(OAUTH_VERIFIER);
-                if (!TextUtils.isEmpty(verifier)) {
-                    twitter.getOAuthAccessTokenAsync(mainRequestToken, verifier);
+                LoginRequest loginRequest = Requests.get(mRequestId);
+                if (!TextUtils.isEmpty(verifier) && loginRequest != null) {
+                    loginRequest.loginTwitter.getOAuthAccessTokenAsync(loginRequest.requestToken, verifier);
                 }
                 else {
                     // Without a verifier an Access Token cannot be received
                     // happens when a user clicks "cancel"
-                    cancelLogin();
+                    cancelLogin(mRequestId);
                 }
             }
 
@@ -311,7 +424,7 @@ public class SoomlaTwitter implements ISocialProvider {
             super.onDestroy();
 
             if (!mFinishedVerifying) {
-                cancelLogin();
+                cancelLogin(mRequestId);
             }
 
             SoomlaUtils.LogDebug(TAG, "onDestroy");
@@ -342,28 +455,191 @@ public class SoomlaTwitter implements ISocialProvider {
         WeakRefParentActivity = new WeakReference<Activity>(parentActivity);
 
         RefProvider = getProvider();
-        RefLoginListener = loginListener;
 
-        preformingAction = ACTION_LOGIN;
-
-        mainRequestToken = null;
         twitter.setOAuthAccessToken(null);
 
+        long startedAt = SystemClock.elapsedRealtime();
+
         // Try logging in using store credentials
-        String oauthToken = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN));
-        String oauthTokenSecret = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET));
-        if (!TextUtils.isEmpty(oauthToken) && !TextUtils.isEmpty(oauthTokenSecret)) {
-            twitter.setOAuthAccessToken(new AccessToken(oauthToken, oauthTokenSecret));
-            twitterScreenName = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_SCREEN_NAME));
+        AccessToken storedAccessToken = getAccessToken();
+        if (storedAccessToken != null) {
+            AsyncTwitter verifyTwitter = verifyTwitterFactory.getInstance(storedAccessToken);
+            VerifyAdapter verifyAdapter = new VerifyAdapter(loginListener, storedAccessToken, startedAt);
+            verifyTwitter.addListener(verifyAdapter);
+            mainHandler.postDelayed(verifyAdapter, VERIFY_CREDENTIALS_TIMEOUT);
+            verifyTwitter.verifyCredentials();
+        }
+        else {
+            startWebLogin(loginListener, startedAt);
+        }
+    }
+
+    /**
+     * @return the number of logins which used the stored credentials
+     */
+    public static long getWarmLoginCount() {
+        return warmLogins.get();
+    }
+
+    /**
+     * @return the average time logins with the stored credentials took, in
+     * milliseconds
+     */
+    public static long getAverageWarmLoginMillis() {
+        long logins = warmLogins.get();
+        return logins > 0 ? totalWarmLoginMillis.get() / logins : 0;
+    }
+
+    /**
+     * @return the number of logins which went through the web
+     */
+    public static long getColdLoginCount() {
+        return coldLogins.get();
+    }
+
+    /**
+     * @return the average time logins through the web took, in milliseconds,
+     * including the time the user spent authorizing the app
+     */
+    public static long getAverageColdLoginMillis() {
+        long logins = coldLogins.get();
+        return logins > 0 ? totalColdLoginMillis.get() / logins : 0;
+    }
 
-            loginListener.success(RefProvider);
+    /**
+     * Resets the login metrics
+     */
+    public static void resetLoginMetrics() {
+        warmLogins.set(0);
+        totalWarmLoginMillis.set(0);
+        coldLogins.set(0);
+        totalColdLoginMillis.set(0);
+    }
 
-            clearListener(ACTION_LOGIN);
+    /**
+     * Starts the login process by requesting a request token, the user then
+     * authorizes it in <code>SoomlaTwitterActivity</code>
+     */
+    private void startWebLogin(AuthCallbacks.LoginListener loginListener, long startedAt) {
+        AsyncTwitter loginTwitter = twitterFactory.getInstance();
+        String requestId = Requests.register(new LoginRequest(loginListener, loginTwitter, startedAt));
+        loginTwitter.addListener(new LoginAdapter(requestId));
+        loginTwitter.getOAuthRequestTokenAsync(oauthCallbackURL);
+    }
+
+    private void completeStoredLogin(AuthCallbacks.LoginListener loginListener, AccessToken storedAccessToken,
+                                     long startedAt) {
+        twitter.setOAuthAccessToken(storedAccessToken);
+        recordLoginTime(true, startedAt);
+        loginListener.success(RefProvider);
+    }
+
+    private static void recordLoginTime(boolean warm, long startedAt) {
+        long millis = SystemClock.elapsedRealtime() - startedAt;
+        if (warm) {
+            warmLogins.incrementAndGet();
+            totalWarmLoginMillis.addAndGet(millis);
+        } else {
+            coldLogins.incrementAndGet();
+            totalColdLoginMillis.addAndGet(millis);
         }
-        else {
-            // If no stored credentials start login process by requesting
-            // a request token
-            twitter.getOAuthRequestTokenAsync(oauthCallbackURL);
+        SoomlaUtils.LogDebug(TAG, "login (" + (warm ? "warm" : "cold") + ") took " + millis + "ms");
+    }
+
+    /**
+     * Checks that Twitter still accepts the stored credentials before
+     * logging in with them, without showing any UI. Runs as the deadline of
+     * the check: if Twitter didn't answer by then the stored credentials are
+     * used as they are, and a later answer doesn't complete the login again.
+     */
+    private class VerifyAdapter extends TwitterAdapter implements Runnable {
+
+        private final AuthCallbacks.LoginListener mLoginListener;
+        private final AccessToken mAccessToken;
+        private final long mStartedAt;
+        private final AtomicBoolean mDone = new AtomicBoolean(false);
+
+        VerifyAdapter(AuthCallbacks.LoginListener loginListener, AccessToken accessToken, long startedAt) {
+            mLoginListener = loginListener;
+            mAccessToken = accessToken;
+            mStartedAt = startedAt;
+        }
+
+        /**
+         * Called when Twitter accepted the stored credentials
+         *
+         * @param user The logged in user
+         */
+        @Override
+        public void verifiedCredentials(User user) {
+            SoomlaUtils.LogDebug(TAG, "login/verifiedCredentials");
+
+            // The screen name may have changed since the credentials were stored
+            twitterScreenName = user.getScreenName();
+            KeyValueStorage.setValue(getTwitterStorageKey(TWITTER_SCREEN_NAME), twitterScreenName);
+
+            if (done()) {
+                completeStoredLogin(mLoginListener, mAccessToken, mStartedAt);
+            }
+        }
+
+        /**
+         * Called when the credentials couldn't be verified. Rejected
+         * credentials are dropped and the user logs in again through the
+         * web (or, if the login already went ahead with them, the next
+         * time), otherwise (e.g. when offline) the stored credentials are
+         * used as they are.
+         *
+         * @param e The exception which was thrown
+         * @param twitterMethod The method which failed
+         */
+        @Override
+        public void onException(TwitterException e, TwitterMethod twitterMethod) {
+            if (e.getStatusCode() == 401) {
+                SoomlaUtils.LogWarning(TAG, "Stored credentials were rejected, logging in through the web");
+                KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN));
+                KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET));
+                setAccessToken(null);
+                if (done()) {
+                    startWebLogin(mLoginListener, mStartedAt);
+                }
+                return;
+            }
+
+            if (done()) {
+                SoomlaUtils.LogWarning(TAG, "Couldn't verify stored credentials, using them as they are: " + e.getMessage());
+                useStoredCredentials();
+            }
+        }
+
+        /**
+         * Called when <code>VERIFY_CREDENTIALS_TIMEOUT</code> passed since
+         * the check started
+         */
+        @Override
+        public void run() {
+            if (mDone.compareAndSet(false, true)) {
+                SoomlaUtils.LogWarning(TAG, "Verifying stored credentials timed out, using them as they are");
+                useStoredCredentials();
+            }
+        }
+
+        private void useStoredCredentials() {
+            twitterScreenName = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_SCREEN_NAME));
+            completeStoredLogin(mLoginListener, mAccessToken, mStartedAt);
+        }
+
+        /**
+         * Marks the check as answered before its deadline
+         *
+         * @return false if the deadline already completed the login
+         */
+        private boolean done() {
+            if (!mDone.compareAndSet(false, true)) {
+                return false;
+            }
+            mainHandler.removeCallbacks(this);
+            return true;
         }
     }
 
@@ -376,8 +652,12 @@ public class SoomlaTwitter implements ISocialProvider {
 
         KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN));
         KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET));
-
-        mainRequestToken = null;
+        setAccessToken(null);
+        resetContactsSync();
+        if (twitterScreenName != null) {
+            KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_FEED + twitterScreenName));
+        }
+        feedBuffer = null;
 
         twitter.setOAuthAccessToken(null);
         twitter.shutdown();
@@ -412,14 +692,34 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "getUserProfile");
 
         RefProvider = getProvider();
-        RefUserProfileListener = userProfileListener;
 
-        preformingAction = ACTION_GET_USER_PROFILE;
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_GET_USER_PROFILE, userProfileListener) {
+
+            /**
+             * Called when a user's information has arrived from twitter
+             *
+             * @param user The user's details
+             */
+            @Override
+            public void gotUserDetail(User user) {
+                SoomlaUtils.LogDebug(TAG, "getUserProfile/onComplete");
+                UserProfile userProfile = createUserProfile(user);
+                AccessToken userAccessToken = getAccessToken();
+                if (userAccessToken != null) {
+                    userProfile.setAccessToken(userAccessToken.getToken());
+                    userProfile.setSecretKey(userAccessToken.getTokenSecret());
+                }
+                AuthCallbacks.UserProfileListener listener = complete();
+                if (listener != null) {
+                    listener.success(userProfile);
+                }
+            }
+        };
 
         try {
-            twitter.showUser(twitterScreenName);
+            newRequestTwitter(requestAdapter).showUser(twitterScreenName);
         } catch (Exception e) {
-            failListener(ACTION_GET_USER_PROFILE, e.getMessage());
+            failListener(ACTION_GET_USER_PROFILE, requestAdapter.complete(), e.getMessage());
         }
     }
 
@@ -435,14 +735,29 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "updateStatus");
 
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
 
-        preformingAction = ACTION_PUBLISH_STATUS;
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_PUBLISH_STATUS, socialActionListener) {
+
+            /**
+             * Called when a tweet has finished posting
+             *
+             * @param status The status which was posted
+             */
+            @Override
+            public void updatedStatus(Status status) {
+                SoomlaUtils.LogDebug(TAG, "updateStatus/onComplete");
+                reportRateLimit(status);
+                SocialCallbacks.SocialActionListener listener = complete();
+                if (listener != null) {
+                    listener.success();
+                }
+            }
+        };
 
         try {
-            twitter.updateStatus(status);
+            newRequestTwitter(requestAdapter).updateStatus(status);
         } catch (Exception e) {
-            failListener(ACTION_PUBLISH_STATUS, e.getMessage());
+            failListener(ACTION_PUBLISH_STATUS, requestAdapter.complete(), e.getMessage());
         }
     }
 
@@ -472,14 +787,29 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "updateStory");
 
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
 
-        preformingAction = ACTION_PUBLISH_STORY;
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_PUBLISH_STORY, socialActionListener) {
+
+            /**
+             * Called when a tweet has finished posting
+             *
+             * @param status The status which was posted
+             */
+            @Override
+            public void updatedStatus(Status status) {
+                SoomlaUtils.LogDebug(TAG, "updateStory/onComplete");
+                reportRateLimit(status);
+                SocialCallbacks.SocialActionListener listener = complete();
+                if (listener != null) {
+                    listener.success();
+                }
+            }
+        };
 
         try {
-            twitter.updateStatus(message + " " + link);
+            newRequestTwitter(requestAdapter).updateStatus(message + " " + link);
         } catch (Exception e) {
-            failListener(ACTION_PUBLISH_STORY, e.getMessage());
+            failListener(ACTION_PUBLISH_STORY, requestAdapter.complete(), e.getMessage());
         }
     }
 
@@ -510,22 +840,497 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "getContacts");
 
         RefProvider = getProvider();
-        RefContactsListener = contactsListener;
 
-        preformingAction = ACTION_GET_USER_PROFILE;
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_GET_CONTACTS, contactsListener) {
+
+            /**
+             * Called when the user's friends list has arrived
+             *
+             * @param users The user's friends (by Twitter definition)
+             */
+            @Override
+            public void gotFriendsList(PagableResponseList<User> users) {
+                SoomlaUtils.LogDebug(TAG, "getContacts/onComplete " + users.size());
+                reportRateLimit(users);
+                SocialCallbacks.ContactsListener listener = complete();
+                if (listener != null) {
+                    listener.success(createUserProfiles(users));
+                }
+            }
+        };
+
+        try {
+            newRequestTwitter(requestAdapter).getFriendsList(twitterScreenName, -1);
+        } catch (Exception e) {
+            failListener(ACTION_GET_CONTACTS, requestAdapter.complete(), e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Twitter4J's asynchronous API does not support setting the page size,
+     * so pages are of Twitter's default size (20 contacts)
+     */
+    @Override
+    public void getContacts(String cursor, int pageSize, final SocialCallbacks.ContactsPageListener contactsListener) {
+        if (!isInitialized) {
+            return;
+        }
+
+        SoomlaUtils.LogDebug(TAG, "getContacts page " + cursor);
+
+        RefProvider = getProvider();
+
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_GET_CONTACTS_PAGE, contactsListener) {
+
+            /**
+             * Called when a page of the user's friends list has arrived
+             *
+             * @param users The user's friends (by Twitter definition)
+             */
+            @Override
+            public void gotFriendsList(PagableResponseList<User> users) {
+                SoomlaUtils.LogDebug(TAG, "getContacts/onComplete " + users.size());
+                reportRateLimit(users);
+                SocialCallbacks.ContactsPageListener listener = complete();
+                if (listener != null) {
+                    String nextCursor = users.hasNext() ? String.valueOf(users.getNextCursor()) : null;
+                    listener.success(createUserProfiles(users), nextCursor, users.hasNext());
+                }
+            }
+        };
 
         try {
-            twitter.getFriendsList(twitterScreenName, -1);
+            long twitterCursor = TextUtils.isEmpty(cursor) ? -1 : Long.parseLong(cursor);
+            newRequestTwitter(requestAdapter).getFriendsList(twitterScreenName, twitterCursor);
         } catch (Exception e) {
-            failListener(ACTION_GET_USER_PROFILE, e.getMessage());
+            failListener(ACTION_GET_CONTACTS_PAGE, requestAdapter.complete(), e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A full sync follows the cursors of the friends list, 20 friends a page.
+     * An incremental sync fetches only the IDs of the user's friends (5000 a
+     * page) and looks up just the new ones, 100 a request. Every request
+     * takes from the <code>GET_CONTACTS</code> rate limit. An interrupted
+     * full sync is resumed by the next full sync, not by an incremental one.
+     * A sync requested while another one is running fails.
+     */
+    @Override
+    public void syncContacts(boolean incremental, SocialCallbacks.ContactsSyncListener contactsSyncListener) {
+        if (!isInitialized) {
+            return;
+        }
+
+        SoomlaUtils.LogDebug(TAG, "syncContacts incremental:" + incremental);
+
+        if (!contactsSyncRunning.compareAndSet(false, true)) {
+            failListener(ACTION_SYNC_CONTACTS, contactsSyncListener, "Contacts sync already running");
+            return;
+        }
+
+        RefProvider = getProvider();
+
+        new ContactsSync(contactsSyncListener).start(incremental);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetContactsSync() {
+        KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_CURSOR));
+        KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_PARTIAL_IDS));
+        KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_IDS));
+    }
+
+    /**
+     * Runs a contacts sync as a chain of requests, each started when the
+     * previous one completes. The state needed to resume is saved every
+     * <code>SYNC_CHECKPOINT_PAGES</code> pages: the next cursor and the IDs
+     * seen so far for a full sync, and the IDs of the friends looked up so far
+     * for an incremental one. Saving rewrites all the IDs, so saving after
+     * every page would cost time quadratic in the number of friends; an
+     * interrupted sync repeats at most the pages since the last checkpoint.
+     */
+    private class ContactsSync {
+
+        ContactsSync(SocialCallbacks.ContactsSyncListener listener) {
+            mListener = new SyncListener(listener);
+        }
+
+        void start(boolean incremental) {
+            mKnownIds = loadIds(TWITTER_SYNC_IDS);
+
+            boolean runIncremental = incremental && !mKnownIds.isEmpty();
+            long savedCursor = runIncremental ? CursorSupport.START : loadSavedCursor();
+            if (savedCursor != CursorSupport.START) {
+                // resume the interrupted full sync
+                SoomlaUtils.LogDebug(TAG, "Resuming contacts sync at cursor " + savedCursor);
+                mSeenIds = loadIds(TWITTER_SYNC_PARTIAL_IDS);
+                fetchFriendsPage(savedCursor);
+            } else if (runIncremental) {
+                mSeenIds = new LinkedHashSet<Long>();
+                fetchFriendIds(CursorSupport.START);
+            } else {
+                mSeenIds = new LinkedHashSet<Long>();
+                fetchFriendsPage(CursorSupport.START);
+            }
+        }
+
+        /**
+         * @return the cursor an interrupted full sync stopped at, or
+         * <code>CursorSupport.START</code> if there's none (or it's corrupt)
+         */
+        private long loadSavedCursor() {
+            String savedCursor = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_SYNC_CURSOR));
+            if (TextUtils.isEmpty(savedCursor)) {
+                return CursorSupport.START;
+            }
+
+            try {
+                return Long.parseLong(savedCursor);
+            } catch (NumberFormatException e) {
+                SoomlaUtils.LogWarning(TAG, "Ignoring corrupt contacts sync cursor: " + savedCursor);
+                KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_CURSOR));
+                KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_PARTIAL_IDS));
+                return CursorSupport.START;
+            }
+        }
+
+        private void fetchFriendsPage(long cursor) {
+            if (!acquire()) {
+                return;
+            }
+
+            RequestAdapter requestAdapter = new RequestAdapter(ACTION_SYNC_CONTACTS, mListener) {
+                @Override
+                public void gotFriendsList(PagableResponseList<User> users) {
+                    reportRateLimit(users);
+                    if (complete() == null) {
+                        return;
+                    }
+
+                    for (User user : users) {
+                        mSeenIds.add(user.getId());
+                    }
+                    mListener.page(createUserProfiles(users));
+
+                    if (users.hasNext()) {
+                        if (++mPagesSinceCheckpoint >= SYNC_CHECKPOINT_PAGES) {
+                            mPagesSinceCheckpoint = 0;
+                            KeyValueStorage.setValue(getTwitterStorageKey(TWITTER_SYNC_CURSOR),
+                                    String.valueOf(users.getNextCursor()));
+                            saveIds(TWITTER_SYNC_PARTIAL_IDS, mSeenIds);
+                        }
+                        fetchFriendsPage(users.getNextCursor());
+                    } else {
+                        finish(mSeenIds);
+                    }
+                }
+            };
+
+            try {
+                newRequestTwitter(requestAdapter).getFriendsList(twitterScreenName, cursor);
+            } catch (Exception e) {
+                failListener(ACTION_SYNC_CONTACTS, requestAdapter.complete(), e.getMessage());
+            }
+        }
+
+        private void fetchFriendIds(long cursor) {
+            if (!acquire()) {
+                return;
+            }
+
+            RequestAdapter requestAdapter = new RequestAdapter(ACTION_SYNC_CONTACTS, mListener) {
+                @Override
+                public void gotFriendsIDs(IDs ids) {
+                    reportRateLimit(ids);
+                    if (complete() == null) {
+                        return;
+                    }
+
+                    for (long id : ids.getIDs()) {
+                        mSeenIds.add(id);
+                    }
+
+                    if (ids.hasNext()) {
+                        fetchFriendIds(ids.getNextCursor());
+                    } else {
+                        mNewIds = new ArrayList<Long>();
+                        for (Long id : mSeenIds) {
+                            if (!mKnownIds.contains(id)) {
+                                mNewIds.add(id);
+                            }
+                        }
+                        SoomlaUtils.LogDebug(TAG, "syncContacts " + mSeenIds.size() + " friends, " +
+                                mNewIds.size() + " new");
+                        lookupNewFriends(0);
+                    }
+                }
+            };
+
+            try {
+                newRequestTwitter(requestAdapter).getFriendsIDs(twitterScreenName, cursor);
+            } catch (Exception e) {
+                failListener(ACTION_SYNC_CONTACTS, requestAdapter.complete(), e.getMessage());
+            }
+        }
+
+        private void lookupNewFriends(final int offset) {
+            if (offset >= mNewIds.size()) {
+                finish(mSeenIds);
+                return;
+            }
+            if (!acquire()) {
+                return;
+            }
+
+            final int end = Math.min(offset + LOOKUP_USERS_BATCH_SIZE, mNewIds.size());
+            long[] batch = new long[end - offset];
+            for (int i = offset; i < end; i++) {
+                batch[i - offset] = mNewIds.get(i);
+            }
+
+            RequestAdapter requestAdapter = new RequestAdapter(ACTION_SYNC_CONTACTS, mListener) {
+                @Override
+                public void lookedupUsers(ResponseList<User> users) {
+                    reportRateLimit(users);
+                    if (complete() == null) {
+                        return;
+                    }
+
+                    List<UserProfile> userProfiles = new ArrayList<UserProfile>(users.size());
+                    for (User user : users) {
+                        userProfiles.add(createUserProfile(user));
+                    }
+                    mListener.page(userProfiles);
+
+                    // friends looked up so far won't be looked up again if the sync is interrupted
+                    mKnownIds.addAll(mNewIds.subList(offset, end));
+                    if (++mPagesSinceCheckpoint >= SYNC_CHECKPOINT_PAGES) {
+                        mPagesSinceCheckpoint = 0;
+                        saveIds(TWITTER_SYNC_IDS, mKnownIds);
+                    }
+                    lookupNewFriends(end);
+                }
+            };
+
+            try {
+                newRequestTwitter(requestAdapter).lookupUsers(batch);
+            } catch (Exception e) {
+                failListener(ACTION_SYNC_CONTACTS, requestAdapter.complete(), e.getMessage());
+            }
+        }
+
+        /**
+         * Takes quota for the next request of the sync from the rate limiter,
+         * and fails the sync if there's none left. The saved state lets the
+         * next sync resume from here.
+         *
+         * @return true if the request may be sent
+         */
+        private boolean acquire() {
+            long waitMillis = RateLimiter.forProvider(getProvider())
+                    .tryAcquire(ISocialProvider.SocialActionType.GET_CONTACTS);
+            if (waitMillis <= 0) {
+                return true;
+            }
+
+            long waitSeconds = (waitMillis + 999) / 1000;
+            SoomlaUtils.LogDebug(TAG, "syncContacts is rate limited for " + waitSeconds + "s");
+            failListener(ACTION_SYNC_CONTACTS, mListener, new SocialError(SocialError.ErrorType.RATE_LIMITED,
+                    "Rate limited, retry after " + waitSeconds + "s", waitMillis));
+            return false;
+        }
+
+        private void finish(Set<Long> currentIds) {
+            List<String> removedProfileIds = new ArrayList<String>();
+            for (Long id : mKnownIds) {
+                if (!currentIds.contains(id)) {
+                    removedProfileIds.add(String.valueOf(id));
+                }
+            }
+
+            saveIds(TWITTER_SYNC_IDS, currentIds);
+            KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_CURSOR));
+            KeyValueStorage.deleteKeyValue(getTwitterStorageKey(TWITTER_SYNC_PARTIAL_IDS));
+
+            SoomlaUtils.LogDebug(TAG, "syncContacts/onComplete " + currentIds.size() + " friends, " +
+                    removedProfileIds.size() + " removed");
+            mListener.success(removedProfileIds);
         }
+
+        /**
+         * Passes the outcome of the sync on to the caller's listener, letting
+         * the next sync start once this one is over
+         */
+        private class SyncListener implements SocialCallbacks.ContactsSyncListener, SocialCallbacks.ErrorListener {
+
+            SyncListener(SocialCallbacks.ContactsSyncListener listener) {
+                mListener = listener;
+            }
+
+            @Override
+            public void page(List<UserProfile> contacts) {
+                mListener.page(contacts);
+            }
+
+            @Override
+            public void success(List<String> removedProfileIds) {
+                contactsSyncRunning.set(false);
+                mListener.success(removedProfileIds);
+            }
+
+            @Override
+            public void fail(String message) {
+                fail(new SocialError(SocialError.ErrorType.UNKNOWN, message));
+            }
+
+            @Override
+            public void fail(SocialError error) {
+                contactsSyncRunning.set(false);
+                SocialCallbacks.fail(mListener, error);
+            }
+
+            private final SocialCallbacks.ContactsSyncListener mListener;
+        }
+
+        private final SocialCallbacks.ContactsSyncListener mListener;
+        private Set<Long> mKnownIds;
+        private Set<Long> mSeenIds;
+        private List<Long> mNewIds;
+        private int mPagesSinceCheckpoint;
+    }
+
+    /**
+     * Fetches the posts kept in the local feed buffer, which is filled by
+     * <code>getFeed</code> when the <code>incrementalFeed</code> param is set
+     *
+     * @return the recent posts of the logged in user, newest first
+     */
+    public List<FeedItem> getRecentFeed() {
+        return getFeedBuffer().getItems();
+    }
+
+    private synchronized TwitterFeedBuffer getFeedBuffer() {
+        if (feedBuffer == null || !String.valueOf(twitterScreenName).equals(feedBuffer.getAccount()) ||
+                feedBuffer.getCapacity() != feedBufferSize) {
+            String saved = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_FEED + twitterScreenName));
+            feedBuffer = TwitterFeedBuffer.fromJSONString(twitterScreenName, feedBufferSize, saved);
+        }
+        return feedBuffer;
+    }
+
+    /**
+     * Fetches the posts newer than the newest buffered one. If there are more
+     * new posts than fit in one response, older pages are fetched with
+     * <code>maxId</code> until the gap is closed or the buffer is full.
+     */
+    private class FeedFetch {
+
+        FeedFetch(Object listener, TwitterFeedBuffer buffer) {
+            mListener = listener;
+            mBuffer = buffer;
+            mSinceId = buffer.getNewestId();
+        }
+
+        void fetch(long maxId) {
+            Paging paging = new Paging(1, Math.min(FEED_PAGE_SIZE, mBuffer.getCapacity()));
+            if (mSinceId > 0) {
+                paging.sinceId(mSinceId);
+            }
+            if (maxId > 0) {
+                paging.maxId(maxId);
+            }
+
+            RequestAdapter requestAdapter = new RequestAdapter(ACTION_GET_FEED, mListener) {
+                @Override
+                public void gotUserTimeline(ResponseList<Status> statuses) {
+                    reportRateLimit(statuses);
+                    if (complete() == null) {
+                        return;
+                    }
+
+                    for (Status status : statuses) {
+                        mItems.add(toFeedItem(status));
+                    }
+                    boolean fullPage = statuses.size() >= Math.min(FEED_PAGE_SIZE, mBuffer.getCapacity());
+                    if (mSinceId > 0 && fullPage && mItems.size() < mBuffer.getCapacity()) {
+                        // there may be more new posts between this page and the buffered ones
+                        fetch(statuses.get(statuses.size() - 1).getId() - 1);
+                        return;
+                    }
+
+                    List<FeedItem> delta = mBuffer.addNewer(mItems);
+                    KeyValueStorage.setValue(getTwitterStorageKey(TWITTER_FEED + mBuffer.getAccount()),
+                            mBuffer.toJSONString());
+                    SoomlaUtils.LogDebug(TAG, "getFeed/onComplete " + delta.size() + " new posts");
+                    deliverFeed(mListener, delta);
+                }
+            };
+
+            try {
+                newRequestTwitter(requestAdapter).getUserTimeline(twitterScreenName, paging);
+            } catch (Exception e) {
+                failListener(ACTION_GET_FEED, requestAdapter.complete(), e.getMessage());
+            }
+        }
+
+        private final Object mListener;
+        private final TwitterFeedBuffer mBuffer;
+        private final long mSinceId;
+        private final List<FeedItem> mItems = new ArrayList<FeedItem>();
+    }
+
+    private Set<Long> loadIds(String key) {
+        Set<Long> ids = new LinkedHashSet<Long>();
+        String value = KeyValueStorage.getValue(getTwitterStorageKey(key));
+        if (TextUtils.isEmpty(value)) {
+            return ids;
+        }
+
+        for (String id : value.split(",")) {
+            try {
+                ids.add(Long.parseLong(id));
+            } catch (NumberFormatException e) {
+                SoomlaUtils.LogWarning(TAG, "Ignoring corrupt friend ID: " + id);
+            }
+        }
+        return ids;
+    }
+
+    private void saveIds(String key, Set<Long> ids) {
+        KeyValueStorage.setValue(getTwitterStorageKey(key), TextUtils.join(",", ids));
     }
 
     /**
      * {@inheritDoc}
+     *
+     * When the <code>incrementalFeed</code> param is set, only posts newer
+     * than the ones fetched before are requested, and only they are passed to
+     * the listener. The recent posts are kept in a local buffer (of
+     * <code>feedBufferSize</code> posts), see <code>getRecentFeed</code>.
      */
     @Override
     public void getFeed(final SocialCallbacks.FeedListener feedListener) {
+        fetchFeed(feedListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The <code>incrementalFeed</code> param applies here as in <code>getFeed</code>.
+     */
+    @Override
+    public void getFeedItems(final SocialCallbacks.FeedItemsListener feedItemsListener) {
+        fetchFeed(feedItemsListener);
+    }
+
+    private void fetchFeed(final Object feedListener) {
         if (!isInitialized) {
             return;
         }
@@ -533,15 +1338,70 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "getFeed");
 
         RefProvider = getProvider();
-        RefFeedListener = feedListener;
 
-        preformingAction = ACTION_GET_FEED;
+        if (incrementalFeed) {
+            new FeedFetch(feedListener, getFeedBuffer()).fetch(-1);
+            return;
+        }
+
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_GET_FEED, feedListener) {
+
+            /**
+             * Called when the user's timeline has arrived
+             *
+             * @param statuses The user's latest statuses
+             */
+            @Override
+            public void gotUserTimeline(ResponseList<Status> statuses) {
+                SoomlaUtils.LogDebug(TAG, "getFeed/onComplete");
+                reportRateLimit(statuses);
+
+                List<FeedItem> feedItems = new ArrayList<FeedItem>();
+                for (Status post : statuses) {
+                    feedItems.add(toFeedItem(post));
+                }
+                Object listener = complete();
+                if (listener != null) {
+                    deliverFeed(listener, feedItems);
+                }
+            }
+        };
 
         try {
-            twitter.getUserTimeline(twitterScreenName);
+            newRequestTwitter(requestAdapter).getUserTimeline(twitterScreenName);
         } catch (Exception e) {
-            failListener(ACTION_GET_FEED, e.getMessage());
+            failListener(ACTION_GET_FEED, requestAdapter.complete(), e.getMessage());
+        }
+    }
+
+    private static void deliverFeed(Object listener, List<FeedItem> feedItems) {
+        if (listener instanceof SocialCallbacks.FeedItemsListener) {
+            ((SocialCallbacks.FeedItemsListener) listener).success(feedItems);
+            return;
+        }
+
+        List<String> feeds = new ArrayList<String>(feedItems.size());
+        for (FeedItem feedItem : feedItems) {
+            feeds.add(feedItem.getText());
         }
+        ((SocialCallbacks.FeedListener) listener).success(feeds);
+    }
+
+    private FeedItem toFeedItem(Status status) {
+        List<String> mediaUrls = new ArrayList<String>();
+        MediaEntity[] mediaEntities = status.getMediaEntities();
+        if (mediaEntities != null) {
+            for (MediaEntity mediaEntity : mediaEntities) {
+                mediaUrls.add(mediaEntity.getMediaURL());
+            }
+        }
+
+        User author = status.getUser();
+        return new FeedItem(getProvider(), String.valueOf(status.getId()),
+                status.getCreatedAt() != null ? status.getCreatedAt().getTime() : 0,
+                author != null ? String.valueOf(author.getId()) : null,
+                author != null ? author.getName() : null,
+                status.getText(), mediaUrls);
     }
 
     /**
@@ -556,16 +1416,104 @@ public class SoomlaTwitter implements ISocialProvider {
         SoomlaUtils.LogDebug(TAG, "uploadImage");
 
         RefProvider = getProvider();
-        RefSocialActionListener = socialActionListener;
 
-        preformingAction = ACTION_UPLOAD_IMAGE;
+        RequestAdapter requestAdapter = new RequestAdapter(ACTION_UPLOAD_IMAGE, socialActionListener) {
+
+            /**
+             * Called when a tweet has finished posting
+             *
+             * @param status The status which was posted
+             */
+            @Override
+            public void updatedStatus(Status status) {
+                SoomlaUtils.LogDebug(TAG, "uploadImage/onComplete");
+                reportRateLimit(status);
+                SocialCallbacks.SocialActionListener listener = complete();
+                if (listener != null) {
+                    listener.success();
+                }
+            }
+        };
 
         try {
             StatusUpdate updateImage = new StatusUpdate(message);
             updateImage.media(new File(filePath));
-            twitter.updateStatus(updateImage);
+            newRequestTwitter(requestAdapter).updateStatus(updateImage);
         } catch (Exception e) {
-            failListener(ACTION_UPLOAD_IMAGE, e.getMessage());
+            failListener(ACTION_UPLOAD_IMAGE, requestAdapter.complete(), e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The bitmap is encoded once into memory and streamed into the media
+     * upload, no file is written.
+     */
+    @Override
+    public void uploadImage(final String message, final String fileName, final Bitmap bitmap, final int jpegQuality,
+                            final SocialCallbacks.SocialActionListener socialActionListener) {
+        if (!isInitialized) {
+            return;
+        }
+
+        SoomlaUtils.LogDebug(TAG, "uploadImage bitmap");
+
+        RefProvider = getProvider();
+
+        final RequestAdapter requestAdapter = new RequestAdapter(ACTION_UPLOAD_IMAGE, socialActionListener) {
+
+            /**
+             * Called when a tweet has finished posting
+             *
+             * @param status The status which was posted
+             */
+            @Override
+            public void updatedStatus(Status status) {
+                SoomlaUtils.LogDebug(TAG, "uploadImage/onComplete");
+                reportRateLimit(status);
+                SocialCallbacks.SocialActionListener listener = complete();
+                if (listener != null) {
+                    listener.success();
+                }
+            }
+        };
+
+        // encoding may take a while for big images, keep it off the caller's thread
+        try {
+            new AsyncTask<Void, Void, byte[]>() {
+                @Override
+                protected byte[] doInBackground(Void... params) {
+                    String lowerFileName = fileName != null ? fileName.toLowerCase() : "";
+                    Bitmap.CompressFormat format = lowerFileName.endsWith(".png") ?
+                            Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+
+                    ByteArrayOutputStream imageBytes = new ByteArrayOutputStream();
+                    if (!bitmap.compress(format, jpegQuality, imageBytes)) {
+                        return null;
+                    }
+                    return imageBytes.toByteArray();
+                }
+
+                @Override
+                protected void onPostExecute(byte[] imageBytes) {
+                    if (imageBytes == null) {
+                        failListener(ACTION_UPLOAD_IMAGE, requestAdapter.complete(), "Couldn't encode image " + fileName);
+                        return;
+                    }
+
+                    try {
+                        StatusUpdate updateImage = new StatusUpdate(message);
+                        updateImage.media(TextUtils.isEmpty(fileName) ? "image.jpg" : fileName,
+                                new ByteArrayInputStream(imageBytes));
+                        newRequestTwitter(requestAdapter).updateStatus(updateImage);
+                    } catch (Exception e) {
+                        failListener(ACTION_UPLOAD_IMAGE, requestAdapter.complete(), e.getMessage());
+                    }
+                }
+            }.executeOnExecutor(ProfileExecutor.get());
+        } catch (RejectedExecutionException e) {
+            failListener(ACTION_UPLOAD_IMAGE, requestAdapter.complete(), e.getMessage());
         }
     }
 
@@ -588,6 +1536,13 @@ public class SoomlaTwitter implements ISocialProvider {
         if (providerParams != null) {
             twitterConsumerKey = providerParams.get("consumerKey");
             twitterConsumerSecret = providerParams.get("consumerSecret");
+            incrementalFeed = "true".equalsIgnoreCase(providerParams.get("incrementalFeed"));
+            feedBufferSize = parsePositiveInt(providerParams.get("feedBufferSize"), DEFAULT_FEED_BUFFER_SIZE);
+            asyncThreads = parsePositiveInt(providerParams.get("asyncThreads"), DEFAULT_ASYNC_THREADS);
+            httpConnectionTimeout = parsePositiveInt(providerParams.get("httpConnectionTimeout"),
+                    DEFAULT_HTTP_CONNECTION_TIMEOUT);
+            httpReadTimeout = parsePositiveInt(providerParams.get("httpReadTimeout"), DEFAULT_HTTP_READ_TIMEOUT);
+            gzipEnabled = !"false".equalsIgnoreCase(providerParams.get("gzipEnabled"));
         }
 
         SoomlaUtils.LogDebug(TAG, String.format(
@@ -604,17 +1559,12 @@ public class SoomlaTwitter implements ISocialProvider {
 
         oauthCallbackURL = "oauth://soomla_twitter" + twitterConsumerKey;
 
-        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
-        configurationBuilder.setOAuthConsumerKey(twitterConsumerKey);
-        configurationBuilder.setOAuthConsumerSecret(twitterConsumerSecret);
-        Configuration configuration = configurationBuilder.build();
-        twitter = new AsyncTwitterFactory(configuration).getInstance();
+        Configuration configuration = buildConfiguration(httpConnectionTimeout, httpReadTimeout);
+        twitterFactory = new AsyncTwitterFactory(configuration);
+        twitter = twitterFactory.getInstance();
 
-        if (!actionsListenerAdded) {
-            SoomlaUtils.LogWarning(TAG, "added action listener");
-            twitter.addListener(actionsListener);
-            actionsListenerAdded = true;
-        }
+        verifyTwitterFactory = new AsyncTwitterFactory(
+                buildConfiguration(VERIFY_CREDENTIALS_TIMEOUT, VERIFY_CREDENTIALS_TIMEOUT));
     }
 
     /**
@@ -625,10 +1575,61 @@ public class SoomlaTwitter implements ISocialProvider {
         return Provider.TWITTER;
     }
 
+    private Configuration buildConfiguration(int connectionTimeout, int readTimeout) {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.setOAuthConsumerKey(twitterConsumerKey);
+        configurationBuilder.setOAuthConsumerSecret(twitterConsumerSecret);
+        configurationBuilder.setAsyncNumThreads(asyncThreads);
+        configurationBuilder.setHttpConnectionTimeout(connectionTimeout);
+        configurationBuilder.setHttpReadTimeout(readTimeout);
+        configurationBuilder.setGZIPEnabled(gzipEnabled);
+        // failed requests are retried by the SocialController's retry policy
+        configurationBuilder.setHttpRetryCount(0);
+        // connections are reused through HttpURLConnection's keep-alive pool, whose
+        // http.keepAlive and http.maxConnections system properties are left to the app
+        return configurationBuilder.build();
+    }
+
     private String getTwitterStorageKey(String postfix) {
         return DB_KEY_PREFIX + postfix;
     }
 
+    /**
+     * Fetches the stored credentials, reading them from storage only the
+     * first time
+     *
+     * @return the stored credentials, or null if there are none
+     */
+    private synchronized AccessToken getAccessToken() {
+        if (!accessTokenLoaded) {
+            String oauthToken = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_TOKEN));
+            String oauthTokenSecret = KeyValueStorage.getValue(getTwitterStorageKey(TWITTER_OAUTH_SECRET));
+            accessToken = !TextUtils.isEmpty(oauthToken) && !TextUtils.isEmpty(oauthTokenSecret) ?
+                    new AccessToken(oauthToken, oauthTokenSecret) : null;
+            accessTokenLoaded = true;
+        }
+        return accessToken;
+    }
+
+    private synchronized void setAccessToken(AccessToken newAccessToken) {
+        accessToken = newAccessToken;
+        accessTokenLoaded = true;
+    }
+
+    private static int parsePositiveInt(String value, int defaultValue) {
+        if (TextUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+
+        try {
+            int result = Integer.parseInt(value);
+            return result > 0 ? result : defaultValue;
+        } catch (NumberFormatException e) {
+            SoomlaUtils.LogError(TAG, "Invalid numeric param: " + value);
+            return defaultValue;
+        }
+    }
+
     private UserProfile createUserProfile(User user) {
         String fullName = user.getName();
         String firstName = "";
@@ -663,49 +1664,71 @@ public class SoomlaTwitter implements ISocialProvider {
         return result;
     }
 
-    private static void cancelLogin() {
-        if (RefLoginListener != null) {
-            RefLoginListener.cancel();
-            clearListener(ACTION_LOGIN);
+    private List<UserProfile> createUserProfiles(PagableResponseList<User> users) {
+        List<UserProfile> userProfiles = new ArrayList<UserProfile>(users.size());
+        for (User profile : users) {
+            userProfiles.add(createUserProfile(profile));
+        }
+        return userProfiles;
+    }
+
+    private static void cancelLogin(String requestId) {
+        LoginRequest loginRequest = Requests.remove(requestId);
+        if (loginRequest != null) {
+            loginRequest.loginListener.cancel();
         }
     }
 
-    private static void failListener(int requestedAction, String message) {
+    private static void failListener(int requestedAction, Object listener, String message) {
+        failListener(requestedAction, listener, new SocialError(SocialError.ErrorType.UNKNOWN, message));
+    }
+
+    private static void failListener(int requestedAction, Object listener, SocialError error) {
+        if (listener == null) {
+            SoomlaUtils.LogWarning(TAG, "no listener to fail for action:" + requestedAction);
+            return;
+        }
+
         switch (requestedAction) {
             case ACTION_LOGIN: {
-                RefLoginListener.fail("Login failed: " + message);
+                ((AuthCallbacks.LoginListener) listener).fail("Login failed: " + error.Message);
                 break;
             }
             case ACTION_PUBLISH_STATUS: {
-                RefSocialActionListener.fail("Publish status failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Publish status failed: ", error));
                 break;
             }
             case ACTION_PUBLISH_STATUS_DIALOG: {
-                RefSocialActionListener.fail("Publish status dialog failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Publish status dialog failed: ", error));
                 break;
             }
             case ACTION_PUBLISH_STORY: {
-                RefSocialActionListener.fail("Publish story failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Publish story failed: ", error));
                 break;
             }
             case ACTION_PUBLISH_STORY_DIALOG: {
-                RefSocialActionListener.fail("Publish story dialog failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Publish story dialog failed: ", error));
                 break;
             }
             case ACTION_UPLOAD_IMAGE: {
-                RefSocialActionListener.fail("Upload Image failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Upload Image failed: ", error));
                 break;
             }
             case ACTION_GET_FEED: {
-                RefFeedListener.fail("Get feed failed: " + message);
+                SocialCallbacks.fail(listener, withPrefix("Get feed failed: ", error));
+                break;
+            }
+            case ACTION_GET_CONTACTS:
+            case ACTION_GET_CONTACTS_PAGE: {
+                SocialCallbacks.fail(listener, withPrefix("Get contacts failed: ", error));
                 break;
             }
-            case ACTION_GET_CONTACTS: {
-                RefContactsListener.fail("Get contacts failed: " + message);
+            case ACTION_SYNC_CONTACTS: {
+                SocialCallbacks.fail(listener, withPrefix("Sync contacts failed: ", error));
                 break;
             }
             case ACTION_GET_USER_PROFILE: {
-                RefUserProfileListener.fail("Get user profile failed: " + message);
+                ((AuthCallbacks.UserProfileListener) listener).fail("Get user profile failed: " + error.Message);
                 break;
             }
             default: {
@@ -713,54 +1736,52 @@ public class SoomlaTwitter implements ISocialProvider {
                 break;
             }
         }
+    }
 
-        clearListener(requestedAction);
+    private static ISocialProvider.SocialActionType socialActionTypeOf(int action) {
+        switch (action) {
+            case ACTION_PUBLISH_STATUS:
+            case ACTION_PUBLISH_STATUS_DIALOG:
+                return ISocialProvider.SocialActionType.UPDATE_STATUS;
+            case ACTION_PUBLISH_STORY:
+            case ACTION_PUBLISH_STORY_DIALOG:
+                return ISocialProvider.SocialActionType.UPDATE_STORY;
+            case ACTION_UPLOAD_IMAGE:
+                return ISocialProvider.SocialActionType.UPLOAD_IMAGE;
+            case ACTION_GET_FEED:
+                return ISocialProvider.SocialActionType.GET_FEED;
+            case ACTION_GET_CONTACTS:
+            case ACTION_GET_CONTACTS_PAGE:
+            case ACTION_SYNC_CONTACTS:
+                return ISocialProvider.SocialActionType.GET_CONTACTS;
+            default:
+                return null;
+        }
     }
 
-    private static void clearListener(int requestedAction) {
-        SoomlaUtils.LogDebug(TAG, "Clearing Listeners " + requestedAction);
+    private static SocialError withPrefix(String prefix, SocialError error) {
+        return new SocialError(error.Type, prefix + error.Message, error.RetryAfterMillis);
+    }
 
-        switch (requestedAction) {
-            case ACTION_LOGIN: {
-                RefLoginListener = null;
-                break;
-            }
-            case ACTION_PUBLISH_STATUS: {
-                RefSocialActionListener = null;
-                break;
-            }
-            case ACTION_PUBLISH_STATUS_DIALOG: {
-                RefSocialActionListener = null;
-                break;
-            }
-            case ACTION_PUBLISH_STORY: {
-                RefSocialActionListener = null;
-                break;
-            }
-            case ACTION_PUBLISH_STORY_DIALOG: {
-                RefSocialActionListener = null;
-                break;
-            }
-            case ACTION_UPLOAD_IMAGE: {
-                RefSocialActionListener = null;
-                break;
-            }
-            case ACTION_GET_FEED: {
-                RefFeedListener = null;
-                break;
-            }
-            case ACTION_GET_CONTACTS: {
-                RefContactsListener = null;
-                break;
-            }
-            case ACTION_GET_USER_PROFILE: {
-                RefUserProfileListener = null;
-                break;
-            }
-            default: {
-                SoomlaUtils.LogWarning(TAG, "action unknown clear listener:" + requestedAction);
-                break;
-            }
+    /**
+     * Tells transient Twitter failures (network issues, server errors, rate
+     * limits) apart from permanent ones
+     */
+    private static SocialError toSocialError(TwitterException e) {
+        if (e.exceededRateLimitation()) {
+            int retryAfter = e.getRetryAfter();
+            return new SocialError(SocialError.ErrorType.RATE_LIMITED, e.getMessage(),
+                    retryAfter > 0 ? retryAfter * 1000L : 0);
+        }
+        if (e.isCausedByNetworkIssue() || e.getStatusCode() >= 500) {
+            return new SocialError(SocialError.ErrorType.NETWORK, e.getMessage());
+        }
+        if (e.getStatusCode() == 401) {
+            return new SocialError(SocialError.ErrorType.AUTH, e.getMessage());
+        }
+        if (e.getStatusCode() == 403) {
+            return new SocialError(SocialError.ErrorType.PERMISSION, e.getMessage());
         }
+        return new SocialError(SocialError.ErrorType.UNKNOWN, e.getMessage());
     }
 }
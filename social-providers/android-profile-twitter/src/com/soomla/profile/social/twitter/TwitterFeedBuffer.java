@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012-2014 Soomla Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.soomla.profile.social.twitter;
+
+import android.text.TextUtils;
+
+import com.soomla.SoomlaUtils;
+import com.soomla.profile.domain.FeedItem;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded ring buffer of the most recent posts of a Twitter account,
+ * newest first.
+ * <p/>
+ * The buffer remembers the ID of the newest post it holds, so only posts
+ * newer than it have to be fetched. When new posts are added beyond the
+ * capacity, the oldest ones are dropped.
+ */
+class TwitterFeedBuffer {
+
+    /**
+     * Constructor
+     *
+     * @param account the screen name of the account the posts belong to
+     * @param capacity the maximum number of posts kept
+     */
+    TwitterFeedBuffer(String account, int capacity) {
+        mAccount = account;
+        mCapacity = Math.max(1, capacity);
+        mItems = new ArrayDeque<FeedItem>(mCapacity);
+    }
+
+    /**
+     * @return the screen name of the account the posts belong to
+     */
+    String getAccount() {
+        return mAccount;
+    }
+
+    /**
+     * @return the maximum number of posts kept
+     */
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the ID of the newest post, or -1 if the buffer is empty
+     */
+    synchronized long getNewestId() {
+        FeedItem newest = mItems.peekFirst();
+        return newest != null ? idOf(newest) : -1;
+    }
+
+    /**
+     * Adds posts which are newer than the ones in the buffer
+     *
+     * @param items the new posts, newest first, as Twitter returns them
+     * @return the posts which weren't in the buffer yet, newest first
+     */
+    synchronized List<FeedItem> addNewer(List<FeedItem> items) {
+        long newestId = getNewestId();
+        List<FeedItem> added = new ArrayList<FeedItem>(items.size());
+
+        // add the oldest first, so the newest ends up at the front
+        for (int i = items.size() - 1; i >= 0; i--) {
+            FeedItem item = items.get(i);
+            long id = idOf(item);
+            if (id <= newestId) {
+                continue;
+            }
+            mItems.addFirst(item);
+            newestId = id;
+            added.add(0, item);
+
+            if (mItems.size() > mCapacity) {
+                mItems.pollLast();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return all posts in the buffer, newest first
+     */
+    synchronized List<FeedItem> getItems() {
+        return new ArrayList<FeedItem>(mItems);
+    }
+
+    /**
+     * @return the buffer as a string which can be kept in <code>KeyValueStorage</code>
+     */
+    synchronized String toJSONString() {
+        JSONArray items = new JSONArray();
+        for (FeedItem item : mItems) {
+            items.put(item.toJSONObject());
+        }
+        return items.toString();
+    }
+
+    /**
+     * Restores a buffer saved with <code>toJSONString</code>
+     *
+     * @param account the screen name of the account the posts belong to
+     * @param capacity the maximum number of posts kept
+     * @param value the saved buffer, or null
+     * @return the restored buffer, empty if there's nothing (valid) to restore
+     */
+    static TwitterFeedBuffer fromJSONString(String account, int capacity, String value) {
+        TwitterFeedBuffer buffer = new TwitterFeedBuffer(account, capacity);
+        if (TextUtils.isEmpty(value)) {
+            return buffer;
+        }
+
+        try {
+            JSONArray items = new JSONArray(value);
+            for (int i = 0; i < items.length() && i < buffer.mCapacity; i++) {
+                FeedItem item = new FeedItem(items.getJSONObject(i));
+                idOf(item); // Twitter post IDs are numeric, anything else is corrupt
+                buffer.mItems.addLast(item);
+            }
+        } catch (JSONException e) {
+            SoomlaUtils.LogError(TAG, "Couldn't decode feed buffer, starting over: " + e.getMessage());
+            buffer.mItems.clear();
+        } catch (NumberFormatException e) {
+            SoomlaUtils.LogError(TAG, "Corrupt post ID in feed buffer, starting over: " + e.getMessage());
+            buffer.mItems.clear();
+        }
+        return buffer;
+    }
+
+
+    /** Private Members **/
+
+    private static long idOf(FeedItem item) {
+        return Long.parseLong(item.getId());
+    }
+
+    private static final String TAG = "SOOMLA TwitterFeedBuffer";
+
+    private final String mAccount;
+    private final int mCapacity;
+    private final ArrayDeque<FeedItem> mItems;
+}